@@ -0,0 +1,86 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Predicción por lotes: el recorrido fila por fila de CompiledTree frente a BlockPredictor, que baja
+ * bloques de filas un nivel a la vez, en su versión escalar y con la Vector API. Los tiempos son por fila.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "--add-modules=jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BlockPredictBenchmark {
+    static final int ROWS = 100_000;
+
+    @Param({"10"})
+    int attributes;
+
+    @Param({"100"})
+    int cardinality;
+
+    @Param({"2"})
+    int classes;
+
+    // Con poda el árbol es más pequeño y los caminos más cortos
+    @Param({"0", "0.25"})
+    double confidenceFactor;
+
+    // Sin NaN solo se mide el descenso; con NaN también las filas que se repiten con CompiledTree
+    @Param({"false", "true"})
+    boolean missing;
+
+    private Object compiled;
+    private Object dataset;
+    private Object scalar;
+    private Object vector;
+    private int[] out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        SyntheticData data = new SyntheticData(ROWS, attributes, cardinality, classes, 42);
+        if (!missing) {
+            for (double[] column : data.columns) {
+                for (int r = 0; r < ROWS; r++) if (Double.isNaN(column[r])) column[r] = 0;
+            }
+        }
+        dataset = data.dataset();
+        Object tree = (Object) C45.NEW_TREE.invokeExact();
+        C45.SET_CONFIDENCE_FACTOR.invokeExact(tree, confidenceFactor);
+        C45.TRAIN.invokeExact(tree, dataset);
+        compiled = (Object) C45.COMPILE.invokeExact(tree);
+
+        scalar = (Object) C45.NEW_BLOCK_PREDICTOR.invokeExact(compiled);
+        vector = (Object) C45.BLOCK_PREDICTOR_VECTORIZED.invokeExact(compiled);
+        if (!(boolean) C45.BLOCK_IS_VECTORIZED.invokeExact(vector)) {
+            throw new IllegalStateException("La Vector API no está disponible en esta JVM");
+        }
+        out = new int[ROWS];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void compiledTree(Blackhole bh) throws Throwable {
+        C45.PREDICT_BATCH.invokeExact(compiled, dataset, out);
+        bh.consume(out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void blockScalar(Blackhole bh) throws Throwable {
+        C45.BLOCK_PREDICT_BATCH.invokeExact(scalar, dataset, out);
+        bh.consume(out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void blockVector(Blackhole bh) throws Throwable {
+        C45.BLOCK_PREDICT_BATCH.invokeExact(vector, dataset, out);
+        bh.consume(out);
+    }
+}
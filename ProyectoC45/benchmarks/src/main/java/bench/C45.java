@@ -0,0 +1,120 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/*
+ * Las clases del proyecto viven en el paquete por defecto, que no se puede importar desde un paquete
+ * con nombre, y JMH no admite benchmarks en el paquete por defecto. Este puente las alcanza con
+ * MethodHandles constantes, que el JIT enlaza igual que una llamada directa.
+ */
+final class C45 {
+    static final Class<?> TREE = load("C45DecisionTree");
+    static final Class<?> DATASET = load("ColumnarDataset");
+    static final Class<?> COMPILED = load("CompiledTree");
+    static final Class<?> INDEX_SORT = load("IndexSort");
+    static final Class<?> SPLIT_STATS = load("SplitStats");
+    static final Class<?> FOREST = load("C45RandomForest");
+    static final Class<?> CROSS_VALIDATION = load("CrossValidation");
+    static final Class<?> BLOCK_PREDICTOR = load("BlockPredictor");
+
+    static final MethodHandle NEW_DATASET = constructor(DATASET,
+            methodType(void.class, String[].class, double[][].class, int[].class, double[].class));
+    static final MethodHandle NEW_TREE = constructor(TREE, methodType(void.class));
+    static final MethodHandle SET_PARALLELISM = virtual(TREE, "setParallelism", methodType(void.class, int.class));
+    static final MethodHandle SET_HISTOGRAM_BINS = virtual(TREE, "setHistogramBins", methodType(void.class, int.class));
+    static final MethodHandle SET_CONFIDENCE_FACTOR = virtual(TREE, "setConfidenceFactor", methodType(void.class, double.class));
+    static final MethodHandle SET_MAX_DEPTH = virtual(TREE, "setMaxDepth", methodType(void.class, int.class));
+    static final MethodHandle SET_MIN_SAMPLES_LEAF = virtual(TREE, "setMinSamplesLeaf", methodType(void.class, int.class));
+    static final MethodHandle SET_REUSE_NUMERIC_ATTRIBUTES = virtual(TREE, "setReuseNumericAttributes", methodType(void.class, boolean.class));
+    static final MethodHandle TRAIN = virtual(TREE, "train", methodType(void.class, DATASET));
+    static final MethodHandle TRAIN_ROWS = virtual(TREE, "train",
+            methodType(void.class, List.class, List.class, String.class));
+    static final MethodHandle COMPILE = virtual(TREE, "compile", methodType(COMPILED));
+    static final MethodHandle PREDICT_MAP = virtual(TREE, "predict", methodType(String.class, Map.class));
+    static final MethodHandle GAIN_RATIO = virtual(TREE, "gainRatio",
+            methodType(double[].class, DATASET, int.class, int[].class, double[].class, int.class, double.class));
+    static final MethodHandle ENTROPY = statik(SPLIT_STATS, "entropy", methodType(double.class, int[].class));
+    static final MethodHandle SORTED_KNOWN_ROWS = statik(INDEX_SORT, "sortedKnownRows",
+            methodType(int[].class, double[].class, int[].class));
+    static final MethodHandle COMPILED_ATTRIBUTES = virtual(COMPILED, "attributes", methodType(List.class));
+    static final MethodHandle PREDICT_ROW = virtual(COMPILED, "predict", methodType(int.class, double[].class));
+    static final MethodHandle PREDICT_BATCH = virtual(COMPILED, "predictBatch", methodType(void.class, DATASET, int[].class));
+    static final MethodHandle PREDICT_BATCH_ROWS = virtual(COMPILED, "predictBatch",
+            methodType(void.class, double[][].class, int[].class));
+    static final MethodHandle NEW_BLOCK_PREDICTOR = constructor(BLOCK_PREDICTOR, methodType(void.class, COMPILED));
+    static final MethodHandle BLOCK_PREDICTOR_VECTORIZED = statik(BLOCK_PREDICTOR, "vectorized",
+            methodType(BLOCK_PREDICTOR, COMPILED));
+    static final MethodHandle BLOCK_IS_VECTORIZED = virtual(BLOCK_PREDICTOR, "isVectorized", methodType(boolean.class));
+    static final MethodHandle BLOCK_PREDICT_BATCH = virtual(BLOCK_PREDICTOR, "predictBatch",
+            methodType(void.class, DATASET, int[].class));
+    static final MethodHandle NEW_FOREST = constructor(FOREST, methodType(void.class));
+    static final MethodHandle FOREST_SET_NUM_TREES = virtual(FOREST, "setNumTrees", methodType(void.class, int.class));
+    static final MethodHandle FOREST_SET_PARALLELISM = virtual(FOREST, "setParallelism", methodType(void.class, int.class));
+    static final MethodHandle FOREST_SET_HISTOGRAM_BINS = virtual(FOREST, "setHistogramBins", methodType(void.class, int.class));
+    static final MethodHandle FOREST_TRAIN = virtual(FOREST, "train", methodType(void.class, DATASET));
+    static final MethodHandle FOREST_PREDICT_BATCH = virtual(FOREST, "predictBatch", methodType(void.class, DATASET, int[].class));
+
+    static final MethodHandle NEW_CROSS_VALIDATION = constructor(CROSS_VALIDATION, methodType(void.class));
+    static final MethodHandle CV_SET_FOLDS = virtual(CROSS_VALIDATION, "setFolds", methodType(void.class, int.class));
+    static final MethodHandle CV_SET_PARALLELISM = virtual(CROSS_VALIDATION, "setParallelism", methodType(void.class, int.class));
+    static final MethodHandle CV_GRID_SEARCH = virtual(CROSS_VALIDATION, "gridSearch",
+            methodType(List.class, DATASET, List.class, List.class));
+
+    private C45() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Las clases del proyecto aparecen como Object en las firmas, para poder usar invokeExact
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            type = type.changeParameterType(i, erase(type.parameterType(i)));
+        }
+        return handle.asType(type.changeReturnType(erase(type.returnType())));
+    }
+
+    private static Class<?> erase(Class<?> type) {
+        return type.getPackageName().isEmpty() && !type.isPrimitive() && !type.isArray() ? Object.class : type;
+    }
+
+    private static MethodHandle constructor(Class<?> owner, MethodType type) {
+        try {
+            return erase(lookup(owner).findConstructor(owner, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, MethodType type) {
+        try {
+            return erase(lookup(owner).findVirtual(owner, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle statik(Class<?> owner, String name, MethodType type) {
+        try {
+            return erase(lookup(owner).findStatic(owner, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> owner) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+    }
+}
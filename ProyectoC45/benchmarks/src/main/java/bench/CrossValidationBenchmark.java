@@ -0,0 +1,117 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Rejilla de 20 configuraciones (profundidad x hoja mínima x factor de confianza) con validación
+ * cruzada de 10 pliegues, frente a los 200 entrenamientos independientes que haría un bucle sobre
+ * copias de los pliegues. Las copias se preparan en el setup, así que independentTrainings solo mide
+ * los entrenamientos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class CrossValidationBenchmark {
+    private static final int FOLDS = 10;
+    private static final int[] MAX_DEPTHS = {0, 8};
+    private static final int[] MIN_SAMPLES_LEAF = {1, 5};
+    private static final double[] CONFIDENCE_FACTORS = {0, 0.1, 0.25, 0.4, 0.5};
+
+    @Param({"20000"})
+    int rows;
+
+    @Param({"10"})
+    int attributes;
+
+    @Param({"100"})
+    int cardinality;
+
+    @Param({"2"})
+    int classes;
+
+    // Igual para los dos métodos: gridSearch reparte pliegues y configuraciones, el bucle no
+    @Param({"1"})
+    int parallelism;
+
+    private Object dataset;
+    private List<String> attributeNames;
+    private Object[] foldDatasets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        SyntheticData data = new SyntheticData(rows, attributes, cardinality, classes, 42);
+        dataset = data.dataset();
+        attributeNames = List.of(data.attributes);
+
+        // Pliegues al azar, sin estratificar: solo importa el tamaño de cada copia
+        SplittableRandom random = new SplittableRandom(42);
+        int[] fold = new int[rows];
+        for (int r = 0; r < rows; r++) fold[r] = random.nextInt(FOLDS);
+        foldDatasets = new Object[FOLDS];
+        for (int f = 0; f < FOLDS; f++) {
+            int[] keep = new int[rows];
+            int n = 0;
+            for (int r = 0; r < rows; r++) if (fold[r] != f) keep[n++] = r;
+            double[][] columns = new double[attributes][n];
+            int[] labels = new int[n];
+            for (int i = 0; i < n; i++) {
+                for (int a = 0; a < attributes; a++) columns[a][i] = data.columns[a][keep[i]];
+                labels[i] = data.labels[keep[i]];
+            }
+            foldDatasets[f] = (Object) C45.NEW_DATASET.invokeExact(data.attributes, columns, labels, data.classValues);
+        }
+    }
+
+    private static List<Object> configs() throws Throwable {
+        List<Object> configs = new ArrayList<>();
+        for (int depth : MAX_DEPTHS) {
+            for (int leaf : MIN_SAMPLES_LEAF) {
+                for (double cf : CONFIDENCE_FACTORS) {
+                    Object tree = (Object) C45.NEW_TREE.invokeExact();
+                    C45.SET_MAX_DEPTH.invokeExact(tree, depth);
+                    C45.SET_MIN_SAMPLES_LEAF.invokeExact(tree, leaf);
+                    C45.SET_CONFIDENCE_FACTOR.invokeExact(tree, cf);
+                    configs.add(tree);
+                }
+            }
+        }
+        return configs;
+    }
+
+    @Benchmark
+    public Object gridSearch() throws Throwable {
+        Object cv = (Object) C45.NEW_CROSS_VALIDATION.invokeExact();
+        C45.CV_SET_FOLDS.invokeExact(cv, FOLDS);
+        C45.CV_SET_PARALLELISM.invokeExact(cv, parallelism);
+        return (List<?>) C45.CV_GRID_SEARCH.invokeExact(cv, dataset, attributeNames, configs());
+    }
+
+    @Benchmark
+    public Object independentTrainings() throws Throwable {
+        List<Object> trees = new ArrayList<>();
+        for (int depth : MAX_DEPTHS) {
+            for (int leaf : MIN_SAMPLES_LEAF) {
+                for (double cf : CONFIDENCE_FACTORS) {
+                    for (Object foldDataset : foldDatasets) {
+                        Object tree = (Object) C45.NEW_TREE.invokeExact();
+                        C45.SET_PARALLELISM.invokeExact(tree, parallelism);
+                        C45.SET_MAX_DEPTH.invokeExact(tree, depth);
+                        C45.SET_MIN_SAMPLES_LEAF.invokeExact(tree, leaf);
+                        C45.SET_CONFIDENCE_FACTOR.invokeExact(tree, cf);
+                        C45.TRAIN.invokeExact(tree, foldDataset);
+                        trees.add(tree);
+                    }
+                }
+            }
+        }
+        return trees;
+    }
+}
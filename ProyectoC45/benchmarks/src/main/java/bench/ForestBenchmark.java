@@ -0,0 +1,69 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Entrenamiento de un bosque completo y predicción por lotes; compárese con TrainBenchmark.trainColumnar
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class ForestBenchmark {
+    @Param({"100000"})
+    int rows;
+
+    @Param({"10"})
+    int attributes;
+
+    @Param({"100"})
+    int cardinality;
+
+    @Param({"2"})
+    int classes;
+
+    @Param({"200"})
+    int trees;
+
+    // 0 = todos los procesadores disponibles
+    @Param({"0"})
+    int parallelism;
+
+    @Param({"0", "256"})
+    int histogramBins;
+
+    private Object dataset;
+    private Object forest;
+    private int[] out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dataset = new SyntheticData(rows, attributes, cardinality, classes, 42).dataset();
+        forest = newForest();
+        C45.FOREST_TRAIN.invokeExact(forest, dataset);
+        out = new int[rows];
+    }
+
+    private Object newForest() throws Throwable {
+        Object f = (Object) C45.NEW_FOREST.invokeExact();
+        C45.FOREST_SET_NUM_TREES.invokeExact(f, trees);
+        C45.FOREST_SET_PARALLELISM.invokeExact(f, parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        C45.FOREST_SET_HISTOGRAM_BINS.invokeExact(f, histogramBins);
+        return f;
+    }
+
+    @Benchmark
+    public Object train() throws Throwable {
+        Object f = newForest();
+        C45.FOREST_TRAIN.invokeExact(f, dataset);
+        return f;
+    }
+
+    @Benchmark
+    public int[] predictBatch() throws Throwable {
+        C45.FOREST_PREDICT_BATCH.invokeExact(forest, dataset, out);
+        return out;
+    }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Los tiempos de lote se reportan por fila gracias a OperationsPerInvocation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PredictBenchmark {
+    static final int ROWS = 100_000;
+
+    @Param({"10"})
+    int attributes;
+
+    @Param({"100"})
+    int cardinality;
+
+    @Param({"2"})
+    int classes;
+
+    // Con poda el árbol es más pequeño y los caminos más cortos
+    @Param({"0", "0.25"})
+    double confidenceFactor;
+
+    private Object tree;
+    private Object compiled;
+    private Object dataset;
+    private double[][] rowMajor;
+    private List<Map<String, Double>> instances;
+    private int[] out;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        // Sin NaN en las consultas, para medir el recorrido directo y no el reparto de valores desconocidos
+        SyntheticData data = new SyntheticData(ROWS, attributes, cardinality, classes, 42);
+        for (double[] column : data.columns) {
+            for (int r = 0; r < ROWS; r++) if (Double.isNaN(column[r])) column[r] = 0;
+        }
+        dataset = data.dataset();
+        tree = (Object) C45.NEW_TREE.invokeExact();
+        C45.SET_CONFIDENCE_FACTOR.invokeExact(tree, confidenceFactor);
+        C45.TRAIN.invokeExact(tree, dataset);
+        compiled = (Object) C45.COMPILE.invokeExact(tree);
+
+        List<String> features = (List<String>) C45.COMPILED_ATTRIBUTES.invokeExact(compiled);
+        instances = data.rowMaps("diagnostico");
+        rowMajor = new double[ROWS][features.size()];
+        for (int r = 0; r < ROWS; r++) {
+            for (int f = 0; f < features.size(); f++) rowMajor[r][f] = instances.get(r).get(features.get(f));
+        }
+        out = new int[ROWS];
+    }
+
+    private int nextRow() {
+        int r = next;
+        next = (r + 1 == ROWS) ? 0 : r + 1;
+        return r;
+    }
+
+    @Benchmark
+    public String predictMap() throws Throwable {
+        return (String) C45.PREDICT_MAP.invokeExact(tree, instances.get(nextRow()));
+    }
+
+    @Benchmark
+    public int predictCompiled() throws Throwable {
+        return (int) C45.PREDICT_ROW.invokeExact(compiled, rowMajor[nextRow()]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void predictBatchColumnar(Blackhole bh) throws Throwable {
+        C45.PREDICT_BATCH.invokeExact(compiled, dataset, out);
+        bh.consume(out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void predictBatchRows(Blackhole bh) throws Throwable {
+        C45.PREDICT_BATCH_ROWS.invokeExact(compiled, rowMajor, out);
+        bh.consume(out);
+    }
+}
@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Búsqueda del umbral sobre un atributo en el nodo raíz, y entropía de un histograma de clases
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SplitBenchmark {
+    @Param({"10000", "100000"})
+    int rows;
+
+    @Param({"10"})
+    int attributes;
+
+    @Param({"2", "100", "10000"})
+    int cardinality;
+
+    @Param({"2", "8"})
+    int classes;
+
+    private Object tree;
+    private Object dataset;
+    private int attribute;
+    private int[] sorted;
+    private int[] classCounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        SyntheticData data = new SyntheticData(rows, attributes, cardinality, classes, 42);
+        dataset = data.dataset();
+        tree = (Object) C45.NEW_TREE.invokeExact();
+
+        attribute = attributes - 1; // atributo de laboratorio, con la cardinalidad pedida
+        int[] all = new int[rows];
+        for (int r = 0; r < rows; r++) all[r] = r;
+        sorted = (int[]) C45.SORTED_KNOWN_ROWS.invokeExact(data.columns[attribute], all);
+
+        classCounts = new int[classes];
+        for (int label : data.labels) classCounts[label]++;
+    }
+
+    @Benchmark
+    public double[] gainRatio() throws Throwable {
+        return (double[]) C45.GAIN_RATIO.invokeExact(tree, dataset, attribute, sorted, (double[]) null, rows, (double) rows);
+    }
+
+    @Benchmark
+    public double entropy() throws Throwable {
+        return (double) C45.ENTROPY.invokeExact(classCounts);
+    }
+}
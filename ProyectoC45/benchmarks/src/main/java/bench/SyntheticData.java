@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/*
+ * Datos con la forma de Diagnostico_Leucemia: la primera mitad de los atributos son síntomas Sí/No
+ * (0/1), el resto son valores de laboratorio con la cardinalidad pedida, y la clase depende de unos
+ * pocos atributos más ruido. Un 2% de celdas quedan en NaN, como los valores vacíos del DW.
+ */
+final class SyntheticData {
+    final String[] attributes;
+    final double[][] columns;
+    final int[] labels;
+    final double[] classValues;
+
+    SyntheticData(int rows, int numAttributes, int cardinality, int numClasses, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        attributes = new String[numAttributes];
+        columns = new double[numAttributes][rows];
+        labels = new int[rows];
+        classValues = new double[numClasses];
+        for (int c = 0; c < numClasses; c++) classValues[c] = c;
+
+        int binary = numAttributes / 2;
+        for (int a = 0; a < numAttributes; a++) {
+            attributes[a] = a < binary ? "sintoma_" + a : "laboratorio_" + a;
+        }
+        for (int r = 0; r < rows; r++) {
+            double score = 0;
+            for (int a = 0; a < numAttributes; a++) {
+                int levels = a < binary ? 2 : cardinality;
+                int level = random.nextInt(levels);
+                columns[a][r] = random.nextInt(50) == 0 ? Double.NaN : level;
+                if (a < 3) score += level / (double) (levels - 1 == 0 ? 1 : levels - 1);
+            }
+            int label = (int) Math.min(numClasses - 1, score / 3.0 * numClasses);
+            if (random.nextInt(10) == 0) label = random.nextInt(numClasses);
+            labels[r] = label;
+        }
+    }
+
+    Object dataset() throws Throwable {
+        return (Object) C45.NEW_DATASET.invokeExact(attributes, columns, labels, classValues);
+    }
+
+    double[][] rowMajor() {
+        double[][] rows = new double[labels.length][attributes.length];
+        for (int a = 0; a < attributes.length; a++) {
+            for (int r = 0; r < labels.length; r++) rows[r][a] = columns[a][r];
+        }
+        return rows;
+    }
+
+    List<Map<String, Double>> rowMaps(String target) {
+        List<Map<String, Double>> data = new ArrayList<>(labels.length);
+        for (int r = 0; r < labels.length; r++) {
+            Map<String, Double> row = new HashMap<>();
+            for (int a = 0; a < attributes.length; a++) row.put(attributes[a], columns[a][r]);
+            row.put(target, classValues[labels[r]]);
+            data.add(row);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TrainBenchmark {
+    @Param({"10000", "100000"})
+    int rows;
+
+    @Param({"10"})
+    int attributes;
+
+    @Param({"100"})
+    int cardinality;
+
+    @Param({"2"})
+    int classes;
+
+    @Param({"1"})
+    int parallelism;
+
+    // 0 = búsqueda exacta; otro valor activa el modo aproximado por histogramas
+    @Param({"0", "256"})
+    int histogramBins;
+
+    // 0 = sin poda; 0.25 añade la pasada de poda pesimista
+    @Param({"0", "0.25"})
+    double confidenceFactor;
+
+    // true = los atributos numéricos se pueden volver a cortar más abajo en el mismo camino
+    @Param({"false", "true"})
+    boolean reuseNumericAttributes;
+
+    private Object dataset;
+    private List<Map<String, Double>> rowMaps;
+    private List<String> attributeNames;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        SyntheticData data = new SyntheticData(rows, attributes, cardinality, classes, 42);
+        dataset = data.dataset();
+        attributeNames = List.of(data.attributes);
+        rowMaps = data.rowMaps("diagnostico");
+    }
+
+    @Benchmark
+    public Object trainColumnar() throws Throwable {
+        Object tree = (Object) C45.NEW_TREE.invokeExact();
+        C45.SET_PARALLELISM.invokeExact(tree, parallelism);
+        C45.SET_HISTOGRAM_BINS.invokeExact(tree, histogramBins);
+        C45.SET_CONFIDENCE_FACTOR.invokeExact(tree, confidenceFactor);
+        C45.SET_REUSE_NUMERIC_ATTRIBUTES.invokeExact(tree, reuseNumericAttributes);
+        C45.TRAIN.invokeExact(tree, dataset);
+        return tree;
+    }
+
+    // Incluye la conversión desde List<Map<String, Double>> que hace el adaptador
+    @Benchmark
+    public Object trainFromRowMaps() throws Throwable {
+        Object tree = (Object) C45.NEW_TREE.invokeExact();
+        C45.SET_PARALLELISM.invokeExact(tree, parallelism);
+        C45.SET_HISTOGRAM_BINS.invokeExact(tree, histogramBins);
+        C45.SET_CONFIDENCE_FACTOR.invokeExact(tree, confidenceFactor);
+        C45.SET_REUSE_NUMERIC_ATTRIBUTES.invokeExact(tree, reuseNumericAttributes);
+        C45.TRAIN_ROWS.invokeExact(tree, rowMaps, attributeNames, "diagnostico");
+        return tree;
+    }
+}
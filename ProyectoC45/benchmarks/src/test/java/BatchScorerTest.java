@@ -0,0 +1,219 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * BatchScorer.score de principio a fin contra H2: una tabla de varios lotes con el último a medias,
+ * varios hilos y los dos destinos. Cada fila de salida tiene que ser la de CompiledTree.predict, en el
+ * orden en que el cursor lee la tabla.
+ */
+class BatchScorerTest {
+    private static final String H2_URL = "jdbc:h2:mem:batchscorer;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+    private static final SpyDriver SPY = new SpyDriver("jdbc:espia-lotes:", H2_URL);
+    private static final String[] COLORS = {"rojo", "verde", "azul"};
+    // Las etiquetas con coma y comillas obligan a escapar el CSV
+    private static final String[] CLASSES = {"bajo", "medio, raro", "alto \"A\""};
+    private static final int ROWS = 2637;
+    private static final int BATCH = 100;
+    private static final int THREADS = 3;
+
+    // Valores de cada fila de la tabla por Id: x, color e y, con null donde la tabla tiene NULL
+    private static final Map<Long, Object[]> TABLE = new HashMap<>();
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void createTables() throws SQLException {
+        DriverManager.registerDriver(SPY);
+        Random random = new Random(1);
+        try (Connection conn = DriverManager.getConnection(H2_URL);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE [Puntuar] ([Id] BIGINT PRIMARY KEY, [x] DOUBLE, [color] VARCHAR(10), [y] INT)");
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO [Puntuar] VALUES (?, ?, ?, ?)")) {
+                for (int r = 0; r < ROWS; r++) {
+                    long id = 7L * r + 3;
+                    Double x = random.nextInt(20) == 0 ? null : Math.round(random.nextGaussian() * 300) / 100.0;
+                    // "negro" no está en el diccionario del modelo
+                    String color = random.nextInt(20) == 0 ? null : random.nextInt(10) == 0 ? "negro"
+                            : COLORS[random.nextInt(COLORS.length)];
+                    Integer y = random.nextInt(20) == 0 ? null : random.nextInt(5);
+                    TABLE.put(id, new Object[]{x, color, y});
+                    insert.setLong(1, id);
+                    if (x == null) insert.setNull(2, Types.DOUBLE);
+                    else insert.setDouble(2, x);
+                    insert.setString(3, color);
+                    if (y == null) insert.setNull(4, Types.INTEGER);
+                    else insert.setInt(4, y);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            stmt.execute("CREATE TABLE [Salida] ([Orden] INT IDENTITY PRIMARY KEY, [Id] BIGINT,"
+                    + " [prediccion] VARCHAR(40))");
+        }
+    }
+
+    @AfterAll
+    static void dropTables() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(H2_URL);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE [Puntuar]");
+            stmt.execute("DROP TABLE [Salida]");
+        }
+        DriverManager.deregisterDriver(SPY);
+    }
+
+    @Test
+    void tableSinkInsertsEveryRowInReadOrderWithOneCommitPerBatch() throws Exception {
+        CompiledTree model = model(new Random(2), false);
+        try (SQLLoader loader = new SQLLoader(SPY.url, "", "")) {
+            loader.setFetchSize(64);
+            List<Long> order = readOrder(loader);
+            int batches = SPY.batchSizes.size();
+            int commits = SPY.commits;
+
+            long scored;
+            try (BatchScorer.Sink sink = BatchScorer.tableSink(loader, "Salida", "Id", "prediccion")) {
+                scored = scorer(model).score(loader, "Puntuar", "Id", sink);
+            }
+            assertEquals(ROWS, scored);
+
+            // 26 lotes llenos y uno de 37 filas, cada uno con su executeBatch y su commit
+            List<Integer> sizes = SPY.batchSizes.subList(batches, SPY.batchSizes.size());
+            assertEquals(ROWS / BATCH + 1, sizes.size());
+            for (int b = 0; b < sizes.size() - 1; b++) assertEquals(BATCH, sizes.get(b), "lote " + b);
+            assertEquals(ROWS % BATCH, sizes.get(sizes.size() - 1));
+            assertEquals(sizes.size(), SPY.commits - commits);
+
+            List<String> written = new ArrayList<>();
+            try (Connection conn = DriverManager.getConnection(H2_URL);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT [Id], [prediccion] FROM [Salida] ORDER BY [Orden]")) {
+                while (rs.next()) written.add(rs.getLong(1) + "|" + rs.getString(2));
+            }
+            assertEquals(ROWS, written.size());
+            for (int i = 0; i < ROWS; i++) {
+                long id = order.get(i);
+                assertEquals(id + "|" + model.classLabel(expected(model, id)), written.get(i), "fila " + i);
+            }
+        }
+    }
+
+    @Test
+    void csvSinkWritesEveryRowInReadOrder() throws Exception {
+        CompiledTree model = model(new Random(3), false);
+        Path file = dir.resolve("predicciones.csv");
+        try (SQLLoader loader = new SQLLoader(SPY.url, "", "")) {
+            List<Long> order = readOrder(loader);
+            try (BatchScorer.Sink sink = BatchScorer.csvSink(file, "Id", "prediccion")) {
+                assertEquals(ROWS, scorer(model).score(loader, "Puntuar", "Id", sink));
+            }
+
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(ROWS + 1, lines.size());
+            assertEquals("Id,prediccion", lines.get(0));
+            for (int i = 0; i < ROWS; i++) {
+                long id = order.get(i);
+                String label = model.classLabel(expected(model, id));
+                String quoted = label.contains(",") || label.contains("\"")
+                        ? '"' + label.replace("\"", "\"\"") + '"' : label;
+                assertEquals(id + "," + quoted, lines.get(i + 1), "fila " + i);
+            }
+        }
+    }
+
+    @Test
+    void categoricalAttributeOnANumericColumnIsRejected() throws IOException, SQLException {
+        CompiledTree model = model(new Random(4), true);
+        assertNotNull(model.categories(model.attributes().indexOf("y")), "El modelo no usa y como categórico");
+        Path file = dir.resolve("nada.csv");
+        try (SQLLoader loader = new SQLLoader(SPY.url, "", "");
+             BatchScorer.Sink sink = BatchScorer.csvSink(file, "Id", "prediccion")) {
+            int closed = SPY.closedStatements;
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> scorer(model).score(loader, "Puntuar", "Id", sink));
+            assertTrue(e.getMessage().contains("'y'"), e.getMessage());
+            // El cursor se cerró aunque no se leyera ninguna fila
+            assertEquals(closed + 1, SPY.closedStatements);
+        }
+    }
+
+    private static BatchScorer scorer(CompiledTree model) {
+        BatchScorer scorer = new BatchScorer(model);
+        scorer.setBatchSize(BATCH);
+        scorer.setThreads(THREADS);
+        return scorer;
+    }
+
+    // Ids en el orden en que el cursor de SQLLoader recorre la tabla
+    private static List<Long> readOrder(SQLLoader loader) throws SQLException {
+        List<Long> order = new ArrayList<>();
+        try (SQLLoader.RowCursor cursor = loader.openCursor("Puntuar", List.of("Id"))) {
+            while (cursor.next()) order.add(cursor.getLong(0));
+        }
+        return order;
+    }
+
+    // Fila en el orden de model.attributes(); los nulos y las categorías que el modelo no conoce son NaN
+    private static int expected(CompiledTree model, long id) {
+        Object[] values = TABLE.get(id);
+        List<String> attributes = model.attributes();
+        double[] row = new double[attributes.size()];
+        for (int f = 0; f < row.length; f++) {
+            Object value = values[List.of("x", "color", "y").indexOf(attributes.get(f))];
+            String[] categories = model.categories(f);
+            if (value == null) {
+                row[f] = Double.NaN;
+            } else if (categories != null) {
+                int code = List.of(categories).indexOf(value.toString());
+                row[f] = code < 0 ? Double.NaN : code;
+            } else {
+                row[f] = ((Number) value).doubleValue();
+            }
+        }
+        return model.predict(row);
+    }
+
+    // Árbol sobre x, color e y; con yCategorical, y se entrena como categórico con los códigos "0".."4"
+    private static CompiledTree model(Random random, boolean yCategorical) {
+        int rows = 3000;
+        double[] x = new double[rows];
+        double[] color = new double[rows];
+        double[] y = new double[rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            x[r] = random.nextGaussian() * 3;
+            color[r] = random.nextInt(COLORS.length);
+            y[r] = random.nextInt(5);
+            int label = yCategorical ? (int) y[r] % 3 : (x[r] > 0 ? 1 : 0) + (color[r] == 0 ? 1 : 0);
+            labels[r] = random.nextInt(10) == 0 ? random.nextInt(CLASSES.length) : label;
+        }
+        String[] yCodes = yCategorical ? new String[]{"0", "1", "2", "3", "4"} : null;
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.setConfidenceFactor(0.25);
+        tree.train(new ColumnarDataset(new String[]{"x", "color", "y"}, new double[][]{x, color, y}, labels,
+                new double[]{0, 1, 2}, new String[][]{null, COLORS, yCodes}, CLASSES));
+        return tree.compile();
+    }
+}
@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * BlockPredictor tiene que dar siempre lo mismo que CompiledTree.predictBatch, también con valores
+ * desconocidos, categorías y lotes que no llenan el último bloque. vectorized solo se compara con la
+ * Vector API si la JVM de las pruebas tiene el módulo; si no, devuelve la versión escalar.
+ */
+class BlockPredictorTest {
+
+    @Test
+    void ofReturnsTheScalarKernel() {
+        assertFalse(BlockPredictor.of(model(new Random(1), 500)).isVectorized());
+    }
+
+    @Test
+    void samePredictionsAsCompiledTree() {
+        for (int seed = 1; seed <= 6; seed++) {
+            CompiledTree model = model(new Random(seed), 3000);
+            ColumnarDataset data = data(new Random(seed + 100), 2 * BlockPredictor.BLOCK + 37);
+            int[] expected = new int[data.numRows()];
+            model.predictBatch(data, expected);
+
+            // Las filas sueltas van en el orden de model.attributes()
+            int numFeatures = model.attributes().size();
+            double[][] rows = new double[data.numRows()][numFeatures];
+            for (int f = 0; f < numFeatures; f++) {
+                double[] column = data.column(data.attributeIndex(model.attributes().get(f)));
+                for (int r = 0; r < rows.length; r++) rows[r][f] = column[r];
+            }
+            for (BlockPredictor predictor : new BlockPredictor[]{BlockPredictor.of(model), BlockPredictor.vectorized(model)}) {
+                String where = "semilla " + seed + (predictor.isVectorized() ? ", vectorial" : ", escalar");
+                int[] actual = new int[data.numRows()];
+                predictor.predictBatch(data, actual);
+                assertArrayEquals(expected, actual, where);
+
+                int[] fromRows = new int[rows.length];
+                predictor.predictBatch(rows, fromRows);
+                assertArrayEquals(expected, fromRows, where + ", filas");
+
+                // Un lote que empieza a mitad del dataset
+                int[] part = new int[300];
+                predictor.predictBatch(data, 100, 400, part);
+                for (int i = 0; i < part.length; i++) assertEquals(expected[100 + i], part[i], where + ", fila " + (100 + i));
+            }
+        }
+    }
+
+    // Las filas con valores desconocidos usan el arreglo de trabajo del lote, no uno nuevo por fila
+    @Test
+    void batchesWithMissingValuesDoNotAllocatePerRow() {
+        CompiledTree model = model(new Random(7), 3000);
+        ColumnarDataset data = data(new Random(107), 20000);
+        int[] out = new int[data.numRows()];
+        BlockPredictor[] predictors = {BlockPredictor.of(model), BlockPredictor.vectorized(model)};
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            model.predictBatch(data, out);
+            long tree = threads.getThreadAllocatedBytes(thread) - before;
+            before = threads.getThreadAllocatedBytes(thread);
+            for (BlockPredictor predictor : predictors) predictor.predictBatch(data, out);
+            long blocks = threads.getThreadAllocatedBytes(thread) - before;
+            // Casi una fila de cada cuatro tiene algún desconocido; 64 bytes por fila serían más de 300 KB
+            if (round == 2) {
+                assertTrue(tree < 16 * 1024, "CompiledTree reservó " + tree + " bytes");
+                assertTrue(blocks < 64 * 1024, "BlockPredictor reservó " + blocks + " bytes");
+            }
+        }
+    }
+
+    private static CompiledTree model(Random random, int rows) {
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.train(data(random, rows));
+        return tree.compile();
+    }
+
+    // Cuatro atributos numéricos y uno categórico, con un 5 % de valores desconocidos
+    private static ColumnarDataset data(Random random, int rows) {
+        String[] names = {"a", "b", "c", "d", "color"};
+        double[][] columns = new double[names.length][rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            for (int a = 0; a < 4; a++) columns[a][r] = Math.round(random.nextGaussian() * 20) / 10.0;
+            columns[4][r] = random.nextInt(4);
+            int label = (columns[0][r] > 0 ? 1 : 0) + (columns[1][r] > 0.5 ? 1 : 0) + (columns[4][r] == 2 ? 1 : 0);
+            labels[r] = random.nextInt(10) == 0 ? random.nextInt(4) : label;
+            for (int a = 0; a < names.length; a++) {
+                if (random.nextInt(20) == 0) columns[a][r] = Double.NaN;
+            }
+        }
+        return new ColumnarDataset(names, columns, labels, new double[]{0, 1, 2, 3},
+                new String[][]{null, null, null, null, {"azul", "gris", "rojo", "verde"}}, null);
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Límite de memoria de DatasetCache: expulsión LRU, entradas mayores que el límite y tamaño estimado
+class DatasetCacheTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void entryLargerThanTheLimitIsNotKeptInMemory() {
+        ColumnarDataset small = dataset(10, null);
+        ColumnarDataset large = dataset(1000, null);
+        DatasetCache cache = new DatasetCache(DatasetCache.sizeOf(large) - 1, null);
+
+        cache.put("Pequeña", "clase", "t1", small);
+        cache.put("Grande", "clase", "t1", large);
+        assertNull(cache.get("Grande", List.of("x"), "clase", "t1"));
+        assertSame(small, cache.get("Pequeña", List.of("x"), "clase", "t1"));
+        assertEquals(DatasetCache.sizeOf(small), cache.sizeInBytes());
+    }
+
+    @Test
+    void entryLargerThanTheLimitIsStillServedFromDisk() {
+        ColumnarDataset large = dataset(1000, null);
+        DatasetCache cache = new DatasetCache(1024, dir);
+
+        cache.put("Grande", "clase", "t1", large);
+        assertEquals(0, cache.sizeInBytes());
+        ColumnarDataset loaded = cache.get("Grande", List.of("x"), "clase", "t1");
+        assertNotNull(loaded);
+        assertEquals(large.numRows(), loaded.numRows());
+        assertEquals(0, cache.sizeInBytes());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        ColumnarDataset a = dataset(100, null);
+        ColumnarDataset b = dataset(100, null);
+        ColumnarDataset c = dataset(100, null);
+        DatasetCache cache = new DatasetCache(2 * DatasetCache.sizeOf(a), null);
+
+        cache.put("A", "clase", "t1", a);
+        cache.put("B", "clase", "t1", b);
+        cache.get("A", List.of("x"), "clase", "t1");
+        cache.put("C", "clase", "t1", c);
+        assertSame(a, cache.get("A", List.of("x"), "clase", "t1"));
+        assertNull(cache.get("B", List.of("x"), "clase", "t1"));
+        assertSame(c, cache.get("C", List.of("x"), "clase", "t1"));
+    }
+
+    @Test
+    void sizeCountsDictionariesAndRowIds() {
+        ColumnarDataset plain = dataset(100, null);
+        ColumnarDataset withDictionary = dataset(100, new String[]{"Sí", "No", "Tal vez"});
+        assertTrue(DatasetCache.sizeOf(withDictionary) > DatasetCache.sizeOf(plain));
+
+        ColumnarDataset.Builder builder = new ColumnarDataset.Builder(List.of("x"));
+        for (int r = 0; r < 100; r++) {
+            builder.set(0, r);
+            builder.endRow(r % 2 == 0 ? "a" : "b", r);
+        }
+        ColumnarDataset withIds = builder.build();
+        assertNotNull(withIds.rowIds());
+        assertTrue(DatasetCache.sizeOf(withIds) >= DatasetCache.sizeOf(plain) + 8 * 100);
+    }
+
+    // Una columna x, numérica o con el diccionario indicado, y dos clases
+    private static ColumnarDataset dataset(int rows, String[] dictionary) {
+        double[] x = new double[rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            x[r] = dictionary == null ? r : r % dictionary.length;
+            labels[r] = r % 2;
+        }
+        return new ColumnarDataset(new String[]{"x"}, new double[][]{x}, labels, new double[]{0, 1},
+                new String[][]{dictionary}, null);
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Modo por histogramas (setHistogramBins) frente a la búsqueda exacta. Con al menos tantos bins como
+ * valores distintos los cortes son los del modo exacto y el árbol tiene que ser el mismo; con columnas
+ * continuas solo se pide que la exactitud no caiga más de ACCURACY_TOLERANCE.
+ */
+class HistogramModeTest {
+    // Diferencia máxima de exactitud sobre las filas de prueba entre los dos modos
+    static final double ACCURACY_TOLERANCE = 0.02;
+
+    @Test
+    void sameTreeWhenBinsCoverEveryDistinctValue() {
+        for (int seed = 1; seed <= 12; seed++) {
+            Random random = new Random(seed);
+            int levels = 2 + random.nextInt(14);
+            ColumnarDataset data = discreteData(random, 200 + random.nextInt(3000), levels, 3);
+
+            C45DecisionTree exact = new C45DecisionTree();
+            exact.train(data);
+            for (int bins : new int[]{Math.max(2, levels), 256}) {
+                C45DecisionTree histogram = new C45DecisionTree();
+                histogram.setHistogramBins(bins);
+                histogram.train(data);
+                TreeAssertions.assertSameTree("semilla " + seed + ", " + bins + " bins", exact.getRoot(), histogram.getRoot());
+            }
+        }
+    }
+
+    @Test
+    void accuracyWithinToleranceOnContinuousColumns() {
+        for (int seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            ColumnarDataset train = continuousData(random, 20_000);
+            ColumnarDataset test = continuousData(random, 5_000);
+
+            C45DecisionTree exact = new C45DecisionTree();
+            exact.setConfidenceFactor(0.25);
+            exact.train(train);
+            double exactAccuracy = accuracy(exact, test);
+            for (int bins : new int[]{32, 256}) {
+                C45DecisionTree histogram = new C45DecisionTree();
+                histogram.setConfidenceFactor(0.25);
+                histogram.setHistogramBins(bins);
+                histogram.train(train);
+                double histogramAccuracy = accuracy(histogram, test);
+                assertTrue(histogramAccuracy >= exactAccuracy - ACCURACY_TOLERANCE,
+                        "semilla " + seed + ", " + bins + " bins: exactitud " + histogramAccuracy
+                                + " frente a " + exactAccuracy + " en modo exacto");
+            }
+        }
+    }
+
+    // Columnas enteras 0..levels-1 sin NaN; la clase depende de las dos primeras más ruido
+    private static ColumnarDataset discreteData(Random random, int rows, int levels, int numClasses) {
+        String[] names = {"a", "b", "c", "d"};
+        double[][] columns = new double[names.length][rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            for (int a = 0; a < names.length; a++) columns[a][r] = random.nextInt(levels);
+            double score = (columns[0][r] + columns[1][r]) / (2.0 * levels);
+            labels[r] = random.nextInt(6) == 0 ? random.nextInt(numClasses) : (int) (score * numClasses);
+        }
+        return new ColumnarDataset(names, columns, labels, classValues(numClasses));
+    }
+
+    // Columnas continuas con un 2% de NaN; la clase sale de umbrales sobre tres de ellas más ruido
+    private static ColumnarDataset continuousData(Random random, int rows) {
+        String[] names = {"x0", "x1", "x2", "x3", "x4", "x5"};
+        double[][] columns = new double[names.length][rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            for (int a = 0; a < names.length; a++) columns[a][r] = random.nextGaussian();
+            int label = columns[0][r] > 0.3 ? (columns[1][r] > -0.5 ? 2 : 1) : (columns[2][r] * columns[0][r] > 0.2 ? 1 : 0);
+            labels[r] = random.nextInt(10) == 0 ? random.nextInt(3) : label;
+            for (int a = 0; a < names.length; a++) {
+                if (random.nextInt(50) == 0) columns[a][r] = Double.NaN;
+            }
+        }
+        return new ColumnarDataset(names, columns, labels, classValues(3));
+    }
+
+    private static double[] classValues(int numClasses) {
+        double[] values = new double[numClasses];
+        for (int c = 0; c < numClasses; c++) values[c] = c;
+        return values;
+    }
+
+    private static double accuracy(C45DecisionTree tree, ColumnarDataset data) {
+        int hits = 0;
+        Map<String, Double> row = new HashMap<>();
+        for (int r = 0; r < data.numRows(); r++) {
+            for (int a = 0; a < data.numAttributes(); a++) row.put(data.attributeName(a), data.column(a)[r]);
+            if (tree.predict(row).equals(data.classLabel(data.labels()[r]))) hits++;
+        }
+        return hits / (double) data.numRows();
+    }
+}
@@ -0,0 +1,155 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Guardar y leer un modelo con ModelIO: las predicciones no cambian, el archivo se reemplaza entero y
+ * un archivo truncado o corrupto se rechaza con IOException.
+ */
+class ModelIOTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void samePredictionsAfterSaveAndLoad() throws IOException {
+        ColumnarDataset data = randomData(new Random(7), 2000);
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.train(data);
+        CompiledTree model = tree.compile();
+
+        Path file = dir.resolve("modelo.c45");
+        ModelIO.save(model, file);
+        CompiledTree loaded = ModelIO.load(file);
+
+        assertEquals(model.numNodes(), loaded.numNodes());
+        assertEquals(model.attributes(), loaded.attributes());
+        for (int c = 0; c < model.numClassLabels(); c++) assertEquals(model.classLabel(c), loaded.classLabel(c));
+        for (int a = 0; a < data.numAttributes(); a++) assertArrayEquals(model.categories(a), loaded.categories(a));
+
+        int[] expected = new int[data.numRows()];
+        int[] actual = new int[data.numRows()];
+        model.predictBatch(data, expected);
+        loaded.predictBatch(data, actual);
+        assertArrayEquals(expected, actual);
+
+        // Filas con valores desconocidos: recorren varias ramas y suman las distribuciones de las hojas
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            double[] row = {random.nextInt(4) == 0 ? Double.NaN : random.nextGaussian() * 3,
+                    random.nextInt(4) == 0 ? Double.NaN : random.nextInt(3),
+                    random.nextInt(4) == 0 ? Double.NaN : random.nextInt(10)};
+            assertEquals(model.predict(row), loaded.predict(row));
+            assertArrayEquals(model.predictDistribution(row), loaded.predictDistribution(row), 0);
+        }
+    }
+
+    @Test
+    void saveReplacesTheFileWithoutLeavingTemporaries() throws IOException {
+        Path file = dir.resolve("modelo.c45");
+        C45DecisionTree small = new C45DecisionTree();
+        small.train(randomData(new Random(1), 50));
+        C45DecisionTree large = new C45DecisionTree();
+        large.train(randomData(new Random(2), 3000));
+
+        ModelIO.save(large.compile(), file);
+        ModelIO.save(small.compile(), file);
+
+        assertEquals(small.compile().numNodes(), ModelIO.load(file).numNodes());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count(), "Quedaron archivos temporales en el directorio");
+        }
+    }
+
+    // El árbol cargado lee del archivo mapeado; save pone otro archivo en su lugar y el mapeo no cambia
+    @Test
+    void loadedModelKeepsPredictingAfterTheFileIsReplaced() throws IOException {
+        ColumnarDataset data = randomData(new Random(4), 2000);
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.train(data);
+        CompiledTree model = tree.compile();
+        C45DecisionTree other = new C45DecisionTree();
+        other.train(randomData(new Random(5), 100));
+
+        Path file = dir.resolve("modelo.c45");
+        ModelIO.save(model, file);
+        CompiledTree loaded = ModelIO.load(file);
+        ModelIO.save(other.compile(), file);
+
+        int[] expected = new int[data.numRows()];
+        int[] actual = new int[data.numRows()];
+        model.predictBatch(data, expected);
+        loaded.predictBatch(data, actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(other.compile().numNodes(), ModelIO.load(file).numNodes());
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.train(randomData(new Random(3), 300));
+        Path file = dir.resolve("modelo.c45");
+        ModelIO.save(tree.compile(), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Path truncated = dir.resolve("truncado.c45");
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> ModelIO.load(truncated), "Se aceptó un modelo de " + length
+                    + " de " + bytes.length + " bytes");
+        }
+    }
+
+    @Test
+    void corruptFilesAreRejected() throws IOException {
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.train(randomData(new Random(4), 300));
+        CompiledTree model = tree.compile();
+        assertTrue(model.numNodes() > 1, "La raíz debería ser un nodo interno");
+        Path file = dir.resolve("modelo.c45");
+        ModelIO.save(model, file);
+        byte[] bytes = Files.readAllBytes(file);
+        int nodes = model.numNodes();
+
+        assertRejected(bytes, 0, 0x12345678);              // magic
+        assertRejected(bytes, 4, 99);                      // versión
+        assertRejected(bytes, 24, 50);                     // feature de la raíz fuera de rango
+        assertRejected(bytes, 24 + 4 * nodes, 0);          // la raíz como su propio hijo izquierdo
+        assertRejected(bytes, 24 + 8 * nodes, nodes);      // hijo derecho fuera de rango
+    }
+
+    private void assertRejected(byte[] bytes, int offset, int value) throws IOException {
+        byte[] corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putInt(offset, value);
+        Path file = dir.resolve("corrupto.c45");
+        Files.write(file, corrupt);
+        assertThrows(IOException.class, () -> ModelIO.load(file), "Se aceptó el int " + value + " en el byte " + offset);
+    }
+
+    // Un atributo numérico, uno categórico con nombres y uno entero, con un 10 % de valores desconocidos
+    private static ColumnarDataset randomData(Random random, int rows) {
+        String[] names = {"presion", "color", "conteo"};
+        double[][] columns = new double[3][rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            double x = random.nextGaussian() * 3;
+            int color = random.nextInt(3);
+            int count = random.nextInt(10);
+            columns[0][r] = random.nextInt(10) == 0 ? Double.NaN : x;
+            columns[1][r] = random.nextInt(10) == 0 ? Double.NaN : color;
+            columns[2][r] = random.nextInt(10) == 0 ? Double.NaN : count;
+            labels[r] = random.nextInt(10) == 0 ? random.nextInt(3) : (x > 1 ? 2 : color == 1 || count > 6 ? 1 : 0);
+        }
+        String[][] categories = {null, {"azul", "rojo", "verde"}, null};
+        return new ColumnarDataset(names, columns, labels, new double[]{0, 1, 2}, categories,
+                new String[]{"baja", "media", "alta"});
+    }
+}
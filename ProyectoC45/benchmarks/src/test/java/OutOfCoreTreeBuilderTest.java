@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * OutOfCoreTreeBuilder frente a HistogramTreeBuilder con los mismos cortes. Con un histogramBytes
+ * minúsculo cada nivel se recorre en varias tandas de nodos, y el árbol tiene que ser el mismo que con
+ * una sola tanda y que el del modo por histogramas en memoria.
+ */
+class OutOfCoreTreeBuilderTest {
+    private static final List<String> ATTRIBUTES = List.of("a", "b", "color", "codigo", "e", "f");
+    private static final String[] COLORS = {"rojo", "verde", "azul", "gris", "negro"};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sameTreeAsInMemoryHistogramsWithSeveralBatchesPerLevel() throws IOException {
+        int[] attributes = {0, 1, 2, 3, 4, 5};
+        // {maxDepth, minSamplesSplit, minSamplesLeaf, reutilizar atributos numéricos}
+        int[][] options = {{0, 2, 1, 0}, {0, 2, 5, 1}, {4, 10, 2, 0}};
+        int widestLevel = 0;
+        for (int seed = 1; seed <= 3; seed++) {
+            for (int bins : new int[]{4, 32, 255}) {
+                ColumnarDataset.Builder builder = new ColumnarDataset.Builder(ATTRIBUTES).trackQuantiles(bins);
+                try (OutOfCoreDataset.Writer writer = new OutOfCoreDataset.Writer(ATTRIBUTES, bins, dir)) {
+                    fill(new Random(seed), 3000, builder, writer);
+                    ColumnarDataset data = builder.build();
+                    try (OutOfCoreDataset onDisk = writer.finish()) {
+                        // Bytes del histograma de un nodo con todos los atributos: las tandas de 2 1/2 nodos parten niveles a medias
+                        long nodeBytes = 0;
+                        for (int a : attributes) nodeBytes += 4L * onDisk.numBins(a) * (onDisk.numClasses() + 1);
+
+                        for (int[] o : options) {
+                            String where = "semilla " + seed + ", " + bins + " bins, opciones " + Arrays.toString(o);
+                            TreeNode expected = new HistogramTreeBuilder(BinnedDataset.of(data, attributes, bins),
+                                    null, null, o[0], o[1], o[2], 0, o[3] == 1).build(attributes);
+                            widestLevel = Math.max(widestLevel, widestLevel(expected));
+                            for (long budget : new long[]{1, nodeBytes * 5 / 2, OutOfCoreTreeBuilder.DEFAULT_HISTOGRAM_BYTES}) {
+                                TreeNode actual = new OutOfCoreTreeBuilder(onDisk, null, o[0], o[1], o[2], 0, o[3] == 1,
+                                        budget).build(attributes);
+                                TreeAssertions.assertSameTree(where + ", " + budget + " bytes", expected, actual);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        // Con un byte cada nodo abierto es su propia tanda
+        assertTrue(widestLevel >= 4, "Ningún nivel tuvo varios nodos abiertos: " + widestLevel);
+    }
+
+    // Numéricas con NaN, categóricas con nulos, números escritos como texto y etiquetas faltantes
+    private static void fill(Random random, int rows, ColumnarDataset.Builder builder, OutOfCoreDataset.Writer writer)
+            throws IOException {
+        for (int r = 0; r < rows; r++) {
+            double a = random.nextInt(10) == 0 ? Double.NaN : random.nextGaussian();
+            double b = random.nextInt(20);
+            double e = random.nextDouble();
+            String color = random.nextInt(15) == 0 ? null : COLORS[random.nextInt(COLORS.length)];
+            String code = Integer.toString(random.nextInt(50));
+            String f = random.nextInt(3) == 0 ? "x" : "y";
+            builder.set(0, a);
+            writer.set(0, a);
+            builder.set(1, b);
+            writer.set(1, b);
+            builder.set(4, e);
+            writer.set(4, e);
+            builder.setCategory(2, color);
+            writer.setCategory(2, color);
+            builder.setCategory(3, code);
+            writer.setCategory(3, code);
+            builder.setCategory(5, f);
+            writer.setCategory(5, f);
+
+            String label = (a > 0.3 ? "A" : "B") + (b > 10 ? "1" : "2");
+            if ("rojo".equals(color)) label = "C";
+            if (random.nextInt(8) == 0) label = "N" + random.nextInt(3);
+            if (random.nextInt(40) == 0) label = null;
+            builder.endRow(label);
+            writer.endRow(label);
+        }
+    }
+
+    // Máximo de nodos internos en un mismo nivel
+    private static int widestLevel(TreeNode root) {
+        int widest = 0;
+        List<TreeNode> level = List.of(root);
+        while (!level.isEmpty()) {
+            List<TreeNode> next = new ArrayList<>();
+            int internal = 0;
+            for (TreeNode node : level) {
+                if (node == null || node.isLeaf()) continue;
+                internal++;
+                if (node.isCategorical()) next.addAll(Arrays.asList(node.children));
+                else {
+                    next.add(node.left);
+                    next.add(node.right);
+                }
+            }
+            widest = Math.max(widest, internal);
+            level = next;
+        }
+        return widest;
+    }
+}
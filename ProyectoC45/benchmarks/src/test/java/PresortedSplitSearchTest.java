@@ -0,0 +1,371 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * La búsqueda de umbrales sobre filas preordenadas frente a la búsqueda original: en cada nodo se
+ * vuelven a ordenar las filas conocidas y cada umbral cuenta sus clases desde cero. Las sumas se hacen
+ * en el mismo orden, así que umbrales y gain ratios tienen que coincidir bit a bit.
+ */
+class PresortedSplitSearchTest {
+
+    @Test
+    void sameThresholdsAndGainRatiosAsResortingEachNode() {
+        int weightedNodes = 0;
+        for (int seed = 1; seed <= 24; seed++) {
+            ColumnarDataset data = randomData(new Random(seed), seed % 2 == 0 ? 3 : 10);
+            boolean reuse = seed % 3 == 0;
+            C45DecisionTree tree = new C45DecisionTree();
+            tree.setReuseNumericAttributes(reuse);
+            tree.train(data);
+
+            int[] attrs = new int[data.numAttributes()];
+            for (int a = 0; a < attrs.length; a++) attrs[a] = a;
+            int[] rows = new int[data.numRows()];
+            for (int r = 0; r < rows.length; r++) rows[r] = r;
+            double[] weights = new double[rows.length];
+            Arrays.fill(weights, 1);
+            Node expected = build(data, rows, weights, attrs, reuse);
+
+            weightedNodes += compare("semilla " + seed, data, tree, expected, tree.getRoot());
+
+            // El árbol en paralelo reparte los nodos entre tareas pero tiene que quedar igual
+            C45DecisionTree parallel = new C45DecisionTree();
+            parallel.setReuseNumericAttributes(reuse);
+            parallel.setParallelism(4);
+            parallel.setForkThreshold(16);
+            parallel.train(data);
+            compare("semilla " + seed + " en paralelo", data, parallel, expected, parallel.getRoot());
+        }
+        assertTrue(weightedNodes > 0, "Ningún nodo recibió filas con pesos fraccionarios");
+    }
+
+    /*
+     * Con más de 8 clases bestSplit descarta umbrales con gain ratios aproximados por sumas
+     * incrementales. En nodos de cientos de miles de filas el error de esas sumas crece, y en los
+     * cortes que dejan unas pocas filas a un lado la información de la división es casi 0 y lo
+     * amplifica; el resultado tiene que seguir siendo el de evaluar cada umbral con sus histogramas.
+     */
+    @Test
+    void manyClassesOnLargeNodesKeepTheBestLopsidedThreshold() {
+        int rows = 300_000;
+        int numClasses = 12;
+        for (int seed = 1; seed <= 3; seed++) {
+            Random random = new Random(seed);
+            double[][] columns = new double[3][rows];
+            int[] labels = new int[rows];
+            double[] weights = new double[rows];
+            for (int r = 0; r < rows; r++) {
+                labels[r] = random.nextInt(numClasses - 2);
+                columns[0][r] = random.nextInt(2000);
+                columns[1][r] = random.nextGaussian();
+                columns[2][r] = random.nextInt(40);
+                // Pesos múltiplos de 1/4: las sumas son exactas en cualquier orden
+                weights[r] = (1 + random.nextInt(8)) / 4.0;
+            }
+            // Unas pocas filas puras en los extremos dan los cortes desequilibrados con mejor gain ratio
+            for (int k = 0; k < 2 + seed; k++) {
+                int low = random.nextInt(rows);
+                int high = random.nextInt(rows);
+                labels[low] = numClasses - 2;
+                labels[high] = numClasses - 1;
+                for (double[] column : columns) {
+                    column[low] = -1000 - random.nextInt(3);
+                    column[high] = 1e6 + random.nextInt(3);
+                }
+            }
+            double[] classValues = new double[numClasses];
+            for (int c = 0; c < numClasses; c++) classValues[c] = c;
+            ColumnarDataset data = new ColumnarDataset(new String[]{"entero", "continuo", "empates"}, columns, labels,
+                    classValues);
+            int[] all = new int[rows];
+            for (int r = 0; r < rows; r++) all[r] = r;
+
+            C45DecisionTree tree = new C45DecisionTree();
+            for (int attr = 0; attr < columns.length; attr++) {
+                for (double[] w : new double[][]{null, weights}) {
+                    String at = "semilla " + seed + ", " + data.attributeName(attr) + (w == null ? "" : " con pesos");
+                    double[] expected = everyThreshold(data, attr, all, w);
+                    double[] actual = tree.bestSplit(data, attr, all, w);
+                    assertEquals(expected[0], actual[0], 0, at + ": gain ratio");
+                    assertEquals(expected[1], actual[1], 0, at + ": umbral");
+                }
+            }
+        }
+    }
+
+    // Cada umbral con los histogramas de clase de sus dos lados, sin descartar ninguno
+    private static double[] everyThreshold(ColumnarDataset data, int attr, int[] rows, double[] weights) {
+        double[] column = data.column(attr);
+        int[] labels = data.labels();
+        int numClasses = data.numClasses();
+        int[] sorted = IndexSort.sortedKnownRows(column, rows);
+        double[] known = new double[numClasses];
+        double knownWeight = 0;
+        for (int r : sorted) {
+            double w = weights == null ? 1 : weights[r];
+            known[labels[r]] += w;
+            knownWeight += w;
+        }
+        double knownEntropy = SplitStats.entropy(known);
+
+        double[] leftCounts = new double[numClasses];
+        double[] rightCounts = new double[numClasses];
+        double leftWeight = 0;
+        double bestRatio = -1;
+        double bestThreshold = 0;
+        for (int j = 0; j + 1 < sorted.length; j++) {
+            double w = weights == null ? 1 : weights[sorted[j]];
+            leftCounts[labels[sorted[j]]] += w;
+            leftWeight += w;
+            double value = column[sorted[j]];
+            double next = column[sorted[j + 1]];
+            if (value == next) continue;
+            for (int c = 0; c < numClasses; c++) rightCounts[c] = known[c] - leftCounts[c];
+            double ratio = SplitStats.gainRatio(knownEntropy, knownWeight, knownWeight,
+                    leftWeight, leftCounts, knownWeight - leftWeight, rightCounts);
+            if (ratio > bestRatio) {
+                bestRatio = ratio;
+                bestThreshold = (value + next) / 2;
+            }
+        }
+        return new double[]{bestRatio, bestThreshold};
+    }
+
+    /*
+     * Columnas con muchos empates, NaN, un solo valor, un solo valor más NaN y todo NaN. La clase
+     * depende de las tres primeras más ruido.
+     */
+    private static ColumnarDataset randomData(Random random, int numClasses) {
+        String[] names = {"continuo", "entero", "con_nan", "constante", "constante_nan", "todo_nan"};
+        int rows = 30 + random.nextInt(600);
+        double[][] columns = new double[names.length][rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            double continuous = Math.round(random.nextDouble() * 50) / 10.0;
+            int integer = random.nextInt(6);
+            int withNaN = random.nextInt(20);
+            columns[0][r] = continuous;
+            columns[1][r] = integer;
+            columns[2][r] = random.nextInt(5) == 0 ? Double.NaN : withNaN;
+            columns[3][r] = 3;
+            columns[4][r] = random.nextInt(3) == 0 ? Double.NaN : 7;
+            columns[5][r] = Double.NaN;
+            double score = continuous / 5 + integer / 5.0 + withNaN / 19.0;
+            labels[r] = random.nextInt(8) == 0 ? random.nextInt(numClasses) : (int) Math.min(numClasses - 1, score / 3 * numClasses);
+        }
+        double[] classValues = new double[numClasses];
+        for (int c = 0; c < numClasses; c++) classValues[c] = c;
+        return new ColumnarDataset(names, columns, labels, classValues);
+    }
+
+    // Nodo del árbol de referencia, con las filas y pesos que le llegaron
+    private static final class Node {
+        int attribute = -1;
+        double threshold;
+        int classId = -1;
+        Node left;
+        Node right;
+        int[] rows;
+        double[] weights;
+        int[] attributes;
+    }
+
+    // Misma construcción que C45DecisionTree.buildTree, pero buscando cada umbral con naiveSplit
+    private static Node build(ColumnarDataset data, int[] rows, double[] weights, int[] attrs, boolean reuse) {
+        if (rows.length == 0) return null;
+        int[] labels = data.labels();
+        Node node = new Node();
+        node.rows = rows;
+        node.weights = weights;
+        node.attributes = attrs;
+
+        double[] counts = new double[data.numClasses()];
+        double nodeWeight = 0;
+        boolean sameClass = true;
+        for (int j = 0; j < rows.length; j++) {
+            counts[labels[rows[j]]] += weights[j];
+            nodeWeight += weights[j];
+            sameClass &= labels[rows[j]] == labels[rows[0]];
+        }
+        if (sameClass) {
+            node.classId = labels[rows[0]];
+            return node;
+        }
+        node.classId = SplitStats.majority(counts);
+        if (attrs.length == 0 || rows.length < 2) return node;
+
+        int best = -1;
+        double bestRatio = -1;
+        double bestThreshold = 0;
+        for (int i = 0; i < attrs.length; i++) {
+            double[] split = naiveSplit(data, attrs[i], rows, weights, nodeWeight);
+            if (split == null) continue;
+            if (split[0] > bestRatio) {
+                bestRatio = split[0];
+                bestThreshold = split[1];
+                best = i;
+            }
+        }
+        if (best < 0 || bestRatio <= 0) return node;
+
+        // Peso a la izquierda sobre el peso conocido, sumados en el orden de las filas ordenadas
+        double[] column = data.column(attrs[best]);
+        Integer[] known = knownSorted(column, rows);
+        double knownWeight = 0;
+        double leftWeight = 0;
+        for (int j : known) {
+            knownWeight += weights[j];
+            if (column[rows[j]] <= bestThreshold) leftWeight += weights[j];
+        }
+        double leftFraction = leftWeight / knownWeight;
+
+        List<Integer> leftRows = new ArrayList<>();
+        List<Integer> rightRows = new ArrayList<>();
+        List<Double> leftWeights = new ArrayList<>();
+        List<Double> rightWeights = new ArrayList<>();
+        for (int j = 0; j < rows.length; j++) {
+            double v = column[rows[j]];
+            if (Double.isNaN(v)) {
+                leftRows.add(rows[j]);
+                leftWeights.add(weights[j] * leftFraction);
+                rightRows.add(rows[j]);
+                rightWeights.add(weights[j] * (1 - leftFraction));
+            } else if (v <= bestThreshold) {
+                leftRows.add(rows[j]);
+                leftWeights.add(weights[j]);
+            } else {
+                rightRows.add(rows[j]);
+                rightWeights.add(weights[j]);
+            }
+        }
+        int[] childAttrs = attrs;
+        if (!reuse) {
+            childAttrs = new int[attrs.length - 1];
+            for (int i = 0, k = 0; i < attrs.length; i++) {
+                if (i != best) childAttrs[k++] = attrs[i];
+            }
+        }
+        node.attribute = attrs[best];
+        node.threshold = bestThreshold;
+        node.classId = -1;
+        node.left = build(data, ints(leftRows), doubles(leftWeights), childAttrs, reuse);
+        node.right = build(data, ints(rightRows), doubles(rightWeights), childAttrs, reuse);
+        return node;
+    }
+
+    /*
+     * Búsqueda sin preordenar: ordena las filas conocidas del nodo y para cada punto medio entre dos
+     * valores distintos cuenta desde cero las clases de la izquierda. {gain ratio, umbral}, o null si
+     * el atributo no tiene valores conocidos en el nodo.
+     */
+    private static double[] naiveSplit(ColumnarDataset data, int attr, int[] rows, double[] weights, double nodeWeight) {
+        double[] column = data.column(attr);
+        int[] labels = data.labels();
+        int numClasses = data.numClasses();
+        Integer[] known = knownSorted(column, rows);
+        if (known.length == 0) return null;
+
+        double[] knownCounts = new double[numClasses];
+        double sortedWeight = 0;
+        for (int j : known) {
+            knownCounts[labels[rows[j]]] += weights[j];
+            sortedWeight += weights[j];
+        }
+        double knownWeight = known.length == rows.length ? nodeWeight : sortedWeight;
+        double knownEntropy = SplitStats.entropy(knownCounts);
+
+        double bestRatio = -1;
+        double bestThreshold = 0;
+        for (int k = 0; k + 1 < known.length; k++) {
+            double value = column[rows[known[k]]];
+            double next = column[rows[known[k + 1]]];
+            if (value == next) continue;
+            double threshold = (value + next) / 2;
+
+            double[] leftCounts = new double[numClasses];
+            double leftWeight = 0;
+            for (int j : known) {
+                if (column[rows[j]] > threshold) break;
+                leftCounts[labels[rows[j]]] += weights[j];
+                leftWeight += weights[j];
+            }
+            double[] rightCounts = new double[numClasses];
+            for (int c = 0; c < numClasses; c++) rightCounts[c] = knownCounts[c] - leftCounts[c];
+            double ratio = SplitStats.gainRatio(knownEntropy, nodeWeight, knownWeight,
+                    leftWeight, leftCounts, knownWeight - leftWeight, rightCounts);
+            if (ratio > bestRatio) {
+                bestRatio = ratio;
+                bestThreshold = threshold;
+            }
+        }
+        return new double[]{bestRatio, bestThreshold};
+    }
+
+    // Posiciones en rows de las filas con valor conocido, ordenadas de forma estable por el valor
+    private static Integer[] knownSorted(double[] column, int[] rows) {
+        List<Integer> known = new ArrayList<>();
+        for (int j = 0; j < rows.length; j++) {
+            if (!Double.isNaN(column[rows[j]])) known.add(j);
+        }
+        known.sort((x, y) -> Double.compare(column[rows[x]], column[rows[y]]));
+        return known.toArray(new Integer[0]);
+    }
+
+    // Devuelve cuántos nodos internos tenían filas con peso fraccionario
+    private static int compare(String where, ColumnarDataset data, C45DecisionTree tree, Node expected, TreeNode actual) {
+        if (expected == null) {
+            assertNull(actual, where);
+            return 0;
+        }
+        assertNotNull(actual, where);
+        if (expected.attribute < 0) {
+            assertTrue(actual.isLeaf(), where + ": se esperaba una hoja");
+            assertEquals(expected.classId, actual.classId, where + ": clase de la hoja");
+            return 0;
+        }
+        assertFalse(actual.isLeaf(), where + ": se esperaba una división por " + data.attributeName(expected.attribute));
+
+        // Cada atributo del nodo da el mismo mejor umbral y gain ratio con las dos búsquedas
+        double nodeWeight = 0;
+        boolean weighted = false;
+        for (double w : expected.weights) {
+            nodeWeight += w;
+            weighted |= w != 1;
+        }
+        for (int attr : expected.attributes) {
+            double[] naive = naiveSplit(data, attr, expected.rows, expected.weights, nodeWeight);
+            double[] presorted = tree.bestSplit(data, attr, expected.rows, weighted ? expected.weights : null);
+            String at = where + ", " + data.attributeName(attr) + " con " + expected.rows.length + " filas";
+            if (naive == null) {
+                assertEquals(-1, presorted[0], at);
+                continue;
+            }
+            assertEquals(naive[0], presorted[0], 0, at + ": gain ratio");
+            if (naive[0] >= 0) assertEquals(naive[1], presorted[1], 0, at + ": umbral");
+        }
+
+        assertEquals(data.attributeName(expected.attribute), actual.attribute, where + ": atributo");
+        assertEquals(expected.threshold, actual.threshold, 0, where + ": umbral");
+        return (weighted ? 1 : 0)
+                + compare(where + " <= " + expected.threshold, data, tree, expected.left, actual.left)
+                + compare(where + " > " + expected.threshold, data, tree, expected.right, actual.right);
+    }
+
+    private static int[] ints(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) array[i] = values.get(i);
+        return array;
+    }
+
+    private static double[] doubles(List<Double> values) {
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) array[i] = values.get(i);
+        return array;
+    }
+}
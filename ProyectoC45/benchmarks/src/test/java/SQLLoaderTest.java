@@ -0,0 +1,137 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SQLLoader contra una base H2 en memoria en modo MSSQLServer. Un SpyDriver delante de H2 cuenta las
+ * conexiones físicas y anota el fetch size y los cierres de sentencias y ResultSet.
+ */
+class SQLLoaderTest {
+    private static final String H2_URL = "jdbc:h2:mem:sqlloader;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+    private static final SpyDriver SPY = new SpyDriver("jdbc:espia:", H2_URL);
+
+    @BeforeAll
+    static void createTable() throws SQLException {
+        DriverManager.registerDriver(SPY);
+        try (Connection conn = DriverManager.getConnection(H2_URL);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE [Pacientes] ([Id] INT PRIMARY KEY, [edad] INT, [sexo] VARCHAR(10),"
+                    + " [saldo] DECIMAL(10, 2), [peso] DOUBLE, [diagnostico] VARCHAR(10))");
+            for (int id = 1; id <= 50; id++) {
+                stmt.execute(String.format(Locale.ROOT, "INSERT INTO [Pacientes] VALUES (%d, %s, %s, %s, %s, '%s')",
+                        id, id % 7 == 0 ? "NULL" : String.valueOf(20 + id),
+                        id % 5 == 0 ? "NULL" : id % 2 == 0 ? "'F'" : "'M'",
+                        id % 9 == 0 ? "NULL" : String.format(Locale.ROOT, "%d.%02d", id * 3, id % 100),
+                        id % 11 == 0 ? "NULL" : String.valueOf(50 + id / 4.0),
+                        id % 3 == 0 ? "Positivo" : "Negativo"));
+            }
+        }
+    }
+
+    @AfterAll
+    static void dropDriver() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(H2_URL);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE [Pacientes]");
+        }
+        DriverManager.deregisterDriver(SPY);
+    }
+
+    @Test
+    void cursorDecodesNumericTextNullAndDecimalColumns() throws SQLException {
+        try (SQLLoader loader = new SQLLoader(SPY.url, "", "")) {
+            loader.setFetchSize(7);
+            int statements = SPY.fetchSizes.size();
+            try (SQLLoader.RowCursor cursor = loader.openCursor("Pacientes",
+                    List.of("edad", "sexo", "saldo", "peso", "diagnostico", "Id"))) {
+                assertEquals(List.of(7), SPY.fetchSizes.subList(statements, SPY.fetchSizes.size()));
+                assertFalse(cursor.isText(0));
+                assertTrue(cursor.isText(1));
+                assertFalse(cursor.isText(2));
+                assertFalse(cursor.isText(3));
+                assertTrue(cursor.isText(4));
+
+                int rows = 0;
+                while (cursor.next()) {
+                    long id = cursor.getLong(5);
+                    assertEquals(++rows, id);
+                    String at = "fila " + id;
+                    if (id % 7 == 0) assertTrue(Double.isNaN(cursor.getNumber(0)), at);
+                    else assertEquals(20 + id, cursor.getNumber(0), at);
+                    assertEquals(id % 5 == 0 ? null : id % 2 == 0 ? "F" : "M", cursor.getText(1), at);
+                    if (id % 9 == 0) assertTrue(Double.isNaN(cursor.getNumber(2)), at);
+                    else assertEquals(id * 3 + (id % 100) / 100.0, cursor.getNumber(2), 1e-9, at);
+                    if (id % 11 == 0) assertTrue(Double.isNaN(cursor.getNumber(3)), at);
+                    else assertEquals(50 + id / 4.0, cursor.getNumber(3), at);
+                    assertEquals(id % 3 == 0 ? "Positivo" : "Negativo", cursor.getText(4), at);
+                }
+                assertEquals(50, rows);
+            }
+        }
+    }
+
+    @Test
+    void closingAnUndrainedCursorReleasesEverything() throws SQLException {
+        try (SQLLoader loader = new SQLLoader(SPY.url, "", "")) {
+            loader.setFetchSize(2);
+            int physical = SPY.connections;
+            int closedStatements = SPY.closedStatements;
+            int closedResults = SPY.closedResultSets;
+
+            SQLLoader.RowCursor cursor = loader.openCursor("Pacientes", List.of("edad", "sexo"));
+            assertTrue(cursor.next());
+            assertTrue(cursor.next());
+            cursor.close();
+            assertEquals(closedStatements + 1, SPY.closedStatements);
+            assertEquals(closedResults + 1, SPY.closedResultSets);
+
+            // La conexión volvió al pool: el siguiente cursor la reutiliza y empieza desde la primera fila
+            try (SQLLoader.RowCursor again = loader.openCursor("Pacientes", List.of("Id"))) {
+                assertTrue(again.next());
+                assertEquals(1, again.getLong(0));
+            }
+            assertEquals(physical + 1, SPY.connections);
+        }
+    }
+
+    @Test
+    void openCursorOnAMissingTableThrowsAndReturnsTheConnection() throws SQLException {
+        try (SQLLoader loader = new SQLLoader(SPY.url, "", "")) {
+            int physical = SPY.connections;
+            assertThrows(SQLException.class, () -> loader.openCursor("NoExiste", List.of("edad")));
+            try (SQLLoader.RowCursor cursor = loader.openCursor("Pacientes", List.of("edad"))) {
+                assertTrue(cursor.next());
+            }
+            assertEquals(physical + 1, SPY.connections);
+        }
+    }
+
+    @Test
+    void legacyLoaderKeepsTheFixedYesNoCodes() {
+        Map<String, Double> dictionary = new HashMap<>();
+        assertEquals(2.0, SQLLoader.mapValue(dictionary, "Quizá"));
+        assertEquals(1.0, SQLLoader.mapValue(dictionary, "Sí"));
+        assertEquals(1.0, SQLLoader.mapValue(dictionary, " SI "));
+        assertEquals(1.0, SQLLoader.mapValue(dictionary, "sí"));
+        assertEquals(0.0, SQLLoader.mapValue(dictionary, "No"));
+        assertEquals(0.0, SQLLoader.mapValue(dictionary, "NO"));
+        assertEquals(1.0, SQLLoader.mapValue(dictionary, "Positivo"));
+        assertEquals(0.0, SQLLoader.mapValue(dictionary, "negativo"));
+        assertEquals(3.0, SQLLoader.mapValue(dictionary, "Tal vez"));
+        assertEquals(2.0, SQLLoader.mapValue(dictionary, "Quizá"));
+        assertEquals(4.5, SQLLoader.mapValue(dictionary, "4.5"));
+        assertTrue(Double.isNaN(SQLLoader.mapValue(dictionary, null)));
+        assertTrue(Double.isNaN(SQLLoader.mapValue(dictionary, "  ")));
+    }
+}
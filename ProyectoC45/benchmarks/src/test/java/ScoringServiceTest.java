@@ -0,0 +1,288 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * ScoringService con varios hilos prediciendo mientras el modelo cambia. Los dos modelos tienen clases
+ * distintas y los diccionarios de color en otro orden, así que una predicción que mezcle los dos (las
+ * clases de uno con los códigos del otro) no coincide con ninguna de las esperadas.
+ */
+class ScoringServiceTest {
+    private static final int THREADS = 6;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void predictionsDuringSwapsComeFromOneWholeModel() throws Exception {
+        CompiledTree first = model(new Random(1), new String[]{"azul", "rojo"}, "A", 3);
+        CompiledTree second = model(new Random(2), new String[]{"rojo", "verde", "azul"}, "B", 2);
+        List<Map<String, String>> rows = rows(new Random(3), 64);
+        List<Prediction> expected = expected(first, second, rows);
+
+        try (ScoringService service = new ScoringService(first)) {
+            int swaps = 2000;
+            run(service, rows, expected, () -> {
+                for (int i = 0; i < swaps; i++) service.swapModel(i % 2 == 0 ? second : first);
+                return null;
+            });
+            assertSame(first, service.model());
+            assertTrue(service.metrics().contains("cambios_de_modelo " + swaps + "\n"), service.metrics());
+        }
+    }
+
+    @Test
+    void reloadWhileTheFileIsOverwrittenNeverSeesAPartialModel() throws Exception {
+        CompiledTree first = model(new Random(4), new String[]{"azul", "rojo"}, "A", 3);
+        CompiledTree second = model(new Random(5), new String[]{"rojo", "verde", "azul"}, "B", 2);
+        List<Map<String, String>> rows = rows(new Random(6), 64);
+        List<Prediction> expected = expected(first, second, rows);
+        Path file = dir.resolve("modelo.c45model");
+        ModelIO.save(first, file);
+
+        try (ScoringService service = new ScoringService(file)) {
+            AtomicBoolean saving = new AtomicBoolean(true);
+            ExecutorService saver = Executors.newSingleThreadExecutor();
+            Future<?> saves = saver.submit(() -> {
+                for (int i = 0; i < 300; i++) ModelIO.save(i % 2 == 0 ? second : first, file);
+                saving.set(false);
+                return null;
+            });
+            run(service, rows, expected, () -> {
+                int reloads = 0;
+                while (saving.get() || reloads < 10) {
+                    service.reload();
+                    reloads++;
+                }
+                return null;
+            });
+            saves.get();
+            saver.shutdown();
+            service.reload();
+            assertEquals(first.numNodes(), service.model().numNodes());
+        }
+    }
+
+    @Test
+    void httpPredictionMatchesPredictAndReloadSwapsTheModel() throws Exception {
+        CompiledTree first = model(new Random(7), new String[]{"azul", "rojo"}, "A", 3);
+        CompiledTree second = model(new Random(8), new String[]{"rojo", "verde", "azul"}, "B", 2);
+        Path file = dir.resolve("modelo.c45model");
+        ModelIO.save(first, file);
+
+        try (ScoringService service = new ScoringService(file)) {
+            service.start(0);
+            String base = "http://127.0.0.1:" + service.port();
+            Map<String, String> row = Map.of("x", "1.5", "color", "rojo");
+
+            assertEquals(service.predict(row).toJson(), request("GET", base + "/predecir?x=1.5&color=rojo"));
+            ModelIO.save(second, file);
+            assertTrue(request("POST", base + "/recargar").startsWith("Modelo recargado"));
+            assertEquals(service.predict(row).toJson(), request("GET", base + "/predecir?x=1.5&color=rojo"));
+            assertTrue(service.predict(row).label().startsWith("B"));
+            assertTrue(request("GET", base + "/metricas").contains("peticiones 2\n"));
+        }
+    }
+
+    // Un fallo dentro de la predicción responde 500 y cuenta como error; el servicio sigue atendiendo
+    @Test
+    void failuresInsideAPredictionGetAnErrorResponse() throws Exception {
+        // La raíz pregunta por el atributo 3 de un modelo que solo tiene x
+        CompiledTree broken = new CompiledTree(new String[]{"x"}, new String[]{"A", "B"}, new int[]{3, -1, -1},
+                new double[3], new int[]{1, 0, 0}, new int[]{2, 0, 0}, new int[]{-1, 0, 1}, new String[][]{null},
+                new double[]{0.5, 0, 0}, null);
+        try (ScoringService service = new ScoringService(broken)) {
+            service.start(0);
+            String base = "http://127.0.0.1:" + service.port();
+            assertEquals(500, status(base + "/predecir?x=1.5", null));
+            // El HttpServer ya rechaza una consulta mal codificada; en el cuerpo llega hasta parseForm
+            assertEquals(400, status(base + "/predecir", "x=%G1"));
+            assertEquals(400, status(base + "/predecir?z=1", null));
+            assertTrue(service.metrics().contains("errores 3\n"), service.metrics());
+
+            service.swapModel(model(new Random(9), new String[]{"azul", "rojo"}, "A", 3));
+            assertEquals(service.predict(Map.of("x", "1.5")).toJson(), request("GET", base + "/predecir?x=1.5"));
+            assertTrue(service.metrics().contains("peticiones 4\n"), service.metrics());
+        }
+    }
+
+    /*
+     * THREADS hilos predicen las filas en bucle mientras changer cambia el modelo; cada predicción tiene
+     * que ser la de uno de los dos modelos. Los errores de cualquier hilo se relanzan aquí.
+     */
+    private static void run(ScoringService service, List<Map<String, String>> rows, List<Prediction> expected,
+                            Callable<Void> changer) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean changing = new AtomicBoolean(true);
+            List<Future<?>> predictors = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t;
+                predictors.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = offset; changing.get(); i++) {
+                        int r = i % rows.size();
+                        ScoringService.Prediction p = service.predict(rows.get(r));
+                        Prediction actual = new Prediction(p.label(), p.probabilities());
+                        Prediction e = expected.get(r);
+                        if (!actual.equals(e.first) && !actual.equals(e.second)) {
+                            fail("Fila " + rows.get(r) + ": " + actual + " no es de ningún modelo (" + e.first
+                                    + " o " + e.second + ")");
+                        }
+                    }
+                    return null;
+                }));
+            }
+            Future<Void> changes = pool.submit(() -> {
+                start.await();
+                try {
+                    return changer.call();
+                } finally {
+                    changing.set(false);
+                }
+            });
+            start.countDown();
+            changes.get(60, TimeUnit.SECONDS);
+            for (Future<?> f : predictors) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static final class Prediction {
+        final String label;
+        final Map<String, Double> probabilities;
+        Prediction first;
+        Prediction second;
+
+        Prediction(String label, Map<String, Double> probabilities) {
+            this.label = label;
+            this.probabilities = probabilities;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Prediction && label.equals(((Prediction) o).label)
+                    && probabilities.equals(((Prediction) o).probabilities);
+        }
+
+        @Override
+        public int hashCode() {
+            return label.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return label + " " + probabilities;
+        }
+    }
+
+    // Predicción de cada fila con cada modelo, calculada antes de empezar sin concurrencia
+    private static List<Prediction> expected(CompiledTree first, CompiledTree second, List<Map<String, String>> rows) {
+        ScoringService a = new ScoringService(first);
+        ScoringService b = new ScoringService(second);
+        List<Prediction> expected = new ArrayList<>();
+        for (Map<String, String> row : rows) {
+            ScoringService.Prediction pa = a.predict(row);
+            ScoringService.Prediction pb = b.predict(row);
+            Prediction e = new Prediction(null, null);
+            e.first = new Prediction(pa.label(), pa.probabilities());
+            e.second = new Prediction(pb.label(), pb.probabilities());
+            assertNotEquals(e.first, e.second);
+            expected.add(e);
+        }
+        return expected;
+    }
+
+    // Filas con x numérico y color categórico; a veces falta alguno de los dos
+    private static List<Map<String, String>> rows(Random random, int count) {
+        String[] colors = {"azul", "rojo", "verde", "negro"};
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String x = random.nextInt(8) == 0 ? "" : Double.toString(Math.round(random.nextGaussian() * 300) / 100.0);
+            String color = random.nextInt(8) == 0 ? "" : colors[random.nextInt(colors.length)];
+            rows.add(Map.of("x", x, "color", color));
+        }
+        return rows;
+    }
+
+    // Árbol sobre x y color con clases prefix0..prefix(n-1); la clase depende de los dos más ruido
+    private static CompiledTree model(Random random, String[] colors, String prefix, int numClasses) {
+        int rows = 2000;
+        double[] x = new double[rows];
+        double[] color = new double[rows];
+        int[] labels = new int[rows];
+        for (int r = 0; r < rows; r++) {
+            x[r] = random.nextGaussian() * 2;
+            color[r] = random.nextInt(colors.length);
+            int label = (x[r] > 0 ? 1 : 0) + (colors[(int) color[r]].equals("rojo") ? 1 : 0);
+            labels[r] = random.nextInt(10) == 0 ? random.nextInt(numClasses) : Math.min(label, numClasses - 1);
+        }
+        String[] classNames = new String[numClasses];
+        double[] classValues = new double[numClasses];
+        for (int c = 0; c < numClasses; c++) {
+            classNames[c] = prefix + c;
+            classValues[c] = c;
+        }
+        C45DecisionTree tree = new C45DecisionTree();
+        tree.setConfidenceFactor(0.25);
+        tree.train(new ColumnarDataset(new String[]{"x", "color"}, new double[][]{x, color}, labels, classValues,
+                new String[][]{null, colors}, classNames));
+        return tree.compile();
+    }
+
+    // Código de estado de un GET, o de un POST si hay cuerpo; los timeouts hacen fallar la prueba si el servidor no responde
+    private static int status(String url, String body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(10_000);
+        conn.setReadTimeout(10_000);
+        try {
+            if (body != null) {
+                conn.setRequestMethod("POST");
+                conn.setDoOutput(true);
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String request(String method, String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        if (method.equals("POST")) {
+            conn.setDoOutput(true);
+            conn.getOutputStream().close();
+        }
+        assertEquals(200, conn.getResponseCode(), url);
+        try (InputStream in = conn.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
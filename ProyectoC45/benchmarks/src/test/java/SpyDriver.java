@@ -0,0 +1,117 @@
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/*
+ * Driver para las pruebas con H2: las URL que empiezan por url abren la base target y envuelven
+ * conexión, sentencias y ResultSet. Cuenta las conexiones físicas, los cierres y los commits, y anota
+ * el fetch size de cada sentencia y las filas de cada executeBatch.
+ */
+final class SpyDriver implements Driver {
+    final String url;
+    private final String target;
+
+    volatile int connections;
+    volatile int closedStatements;
+    volatile int closedResultSets;
+    volatile int commits;
+    final List<Integer> fetchSizes = new ArrayList<>();
+    final List<Integer> batchSizes = new ArrayList<>();
+
+    SpyDriver(String url, String target) {
+        this.url = url;
+        this.target = target;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) return null;
+        connections++;
+        Connection conn = DriverManager.getConnection(target);
+        return wrap(Connection.class, conn, (name, args, result) -> {
+            if (name.equals("commit")) commits++;
+            if (result instanceof PreparedStatement) {
+                return wrapStatement(PreparedStatement.class, (PreparedStatement) result);
+            }
+            if (result instanceof Statement) return wrapStatement(Statement.class, (Statement) result);
+            return result;
+        });
+    }
+
+    private <T extends Statement> T wrapStatement(Class<T> type, T stmt) {
+        int[] added = new int[1];
+        return wrap(type, stmt, (name, args, result) -> {
+            if (name.equals("setFetchSize")) fetchSizes.add((Integer) args[0]);
+            if (name.equals("addBatch")) added[0]++;
+            if (name.equals("executeBatch")) {
+                batchSizes.add(added[0]);
+                added[0] = 0;
+            }
+            if (name.equals("close")) closedStatements++;
+            if (result instanceof ResultSet) {
+                return wrap(ResultSet.class, (ResultSet) result, (n, a, r) -> {
+                    if (n.equals("close")) closedResultSets++;
+                    return r;
+                });
+            }
+            return result;
+        });
+    }
+
+    private interface After {
+        Object apply(String method, Object[] args, Object result);
+    }
+
+    private static <T> T wrap(Class<T> type, T target, After after) {
+        return type.cast(Proxy.newProxyInstance(SpyDriver.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    try {
+                        return after.apply(method.getName(), args, method.invoke(target, args));
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url.startsWith(this.url);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
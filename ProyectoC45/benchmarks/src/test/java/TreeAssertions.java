@@ -0,0 +1,37 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Comparación nodo a nodo de dos árboles de TreeNode: clase, id de clase, peso y distribución en todos
+ * los nodos, y atributo, categorías o umbral en los internos. where dice en qué nodo falló.
+ */
+final class TreeAssertions {
+    private TreeAssertions() {
+    }
+
+    static void assertSameTree(String where, TreeNode expected, TreeNode actual) {
+        if (expected == null) {
+            assertNull(actual, where);
+            return;
+        }
+        assertNotNull(actual, where);
+        assertEquals(expected.isLeaf(), actual.isLeaf(), where + ": hoja");
+        assertEquals(expected.label, actual.label, where + ": clase");
+        assertEquals(expected.classId, actual.classId, where + ": id de clase");
+        assertEquals(expected.weight, actual.weight, 0, where + ": peso");
+        assertArrayEquals(expected.distribution, actual.distribution, 0, where + ": distribución");
+        if (expected.isLeaf()) return;
+        assertEquals(expected.attribute, actual.attribute, where + ": atributo");
+        assertEquals(expected.isCategorical(), actual.isCategorical(), where + ": categórico");
+        if (expected.isCategorical()) {
+            assertArrayEquals(expected.categories, actual.categories, where + ": categorías");
+            assertEquals(expected.children.length, actual.children.length, where + ": hijos");
+            for (int v = 0; v < expected.children.length; v++) {
+                assertSameTree(where + " = " + expected.categories[v], expected.children[v], actual.children[v]);
+            }
+            return;
+        }
+        assertEquals(expected.threshold, actual.threshold, 0, where + ": umbral");
+        assertSameTree(where + " <= " + expected.threshold, expected.left, actual.left);
+        assertSameTree(where + " > " + expected.threshold, expected.right, actual.right);
+    }
+}
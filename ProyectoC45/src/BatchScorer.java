@@ -0,0 +1,308 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Puntuación por lotes sin interfaz gráfica: lee una tabla con el cursor de SQLLoader, predice con un
+ * modelo de ModelIO en lotes de tamaño fijo repartidos en un pool de hilos y escribe (Id, clase) en
+ * otra tabla con inserciones por lotes o en un CSV. El hilo lector llena un lote mientras los
+ * trabajadores predicen los anteriores; como mucho hay 2 x hilos lotes en vuelo y sus arreglos se
+ * reutilizan, así que la memoria no depende del tamaño de la tabla. La salida sale en el orden de
+ * lectura.
+ */
+public class BatchScorer {
+    private final CompiledTree model;
+    private int batchSize = 10000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public BatchScorer(CompiledTree model) {
+        this.model = model;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser al menos 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("El número de hilos debe ser al menos 1");
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    // Destino de las predicciones; recibe los lotes en el orden de lectura, siempre desde el mismo hilo
+    public interface Sink extends AutoCloseable {
+        void write(long[] ids, String[] labels, int count) throws IOException, SQLException;
+
+        @Override
+        void close() throws IOException, SQLException;
+    }
+
+    private static final class Batch {
+        final long[] ids;
+        final double[][] rows;
+        final String[] labels;
+        int count;
+
+        Batch(int size, int features) {
+            ids = new long[size];
+            rows = new double[size][features];
+            labels = new String[size];
+        }
+    }
+
+    /*
+     * Puntúa todas las filas de tabla; las columnas con los nombres de model.attributes() son los
+     * atributos y columnaId identifica cada fila en la salida. Devuelve el número de filas puntuadas.
+     */
+    public long score(SQLLoader loader, String tabla, String columnaId, Sink sink)
+            throws SQLException, IOException, InterruptedException {
+        List<String> features = model.attributes();
+        List<String> columnas = new ArrayList<>(features);
+        columnas.add(columnaId);
+        int idColumn = features.size();
+
+        // Código de cada categoría del modelo, por atributo; null en los numéricos
+        List<Map<String, Integer>> codes = new ArrayList<>();
+        for (int f = 0; f < features.size(); f++) {
+            String[] categories = model.categories(f);
+            Map<String, Integer> code = null;
+            if (categories != null) {
+                code = new HashMap<>();
+                for (int v = 0; v < categories.length; v++) code.put(categories[v], v);
+            }
+            codes.add(code);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Batch>> pending = new ArrayDeque<>();
+        ArrayDeque<Batch> free = new ArrayDeque<>();
+        int maxPending = 2 * threads;
+        long scored = 0;
+        try (SQLLoader.RowCursor cursor = loader.openCursor(tabla, columnas)) {
+            for (int f = 0; f < features.size(); f++) {
+                if (codes.get(f) != null && !cursor.isText(f)) {
+                    throw new IllegalArgumentException("El atributo '" + features.get(f)
+                            + "' es categórico en el modelo y numérico en la tabla '" + tabla + "'");
+                }
+            }
+
+            Batch batch = new Batch(batchSize, features.size());
+            while (cursor.next()) {
+                double[] row = batch.rows[batch.count];
+                for (int f = 0; f < row.length; f++) {
+                    row[f] = cursor.isText(f) ? encode(cursor.getText(f), codes.get(f)) : cursor.getNumber(f);
+                }
+                batch.ids[batch.count++] = cursor.getLong(idColumn);
+                if (batch.count == batchSize) {
+                    if (pending.size() == maxPending) scored += write(pending.poll(), sink, free);
+                    pending.add(submit(pool, batch));
+                    batch = free.isEmpty() ? new Batch(batchSize, features.size()) : free.poll();
+                }
+            }
+            if (batch.count > 0) pending.add(submit(pool, batch));
+            while (!pending.isEmpty()) scored += write(pending.poll(), sink, free);
+        } finally {
+            pool.shutdownNow();
+        }
+        return scored;
+    }
+
+    private Future<Batch> submit(ExecutorService pool, Batch batch) {
+        return pool.submit(() -> {
+            double[] scratch = new double[model.numClassLabels()];
+            for (int i = 0; i < batch.count; i++) batch.labels[i] = model.classLabel(model.predict(batch.rows[i], scratch));
+            return batch;
+        });
+    }
+
+    private static int write(Future<Batch> future, Sink sink, ArrayDeque<Batch> free)
+            throws IOException, SQLException, InterruptedException {
+        Batch batch;
+        try {
+            batch = future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Error al puntuar un lote", e.getCause());
+        }
+        int count = batch.count;
+        sink.write(batch.ids, batch.labels, count);
+        batch.count = 0;
+        free.add(batch);
+        return count;
+    }
+
+    // Mismas reglas que ColumnarDataset.Builder.setCategory; una categoría que el modelo no conoce queda desconocida
+    static double encode(String value, Map<String, Integer> code) {
+        if (value == null || value.trim().isEmpty()) return Double.NaN;
+        String trimmed = value.trim();
+        if (code != null) {
+            Integer v = code.get(trimmed);
+            return v == null ? Double.NaN : v;
+        }
+        try {
+            return Double.parseDouble(trimmed);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // Inserta (columnaId, columnaClase) en una tabla existente con addBatch/executeBatch, un commit por lote
+    public static Sink tableSink(SQLLoader loader, String tabla, String columnaId, String columnaClase) throws SQLException {
+        String sql = "INSERT INTO " + SQLLoader.quoteTable(tabla) + " (" + SQLLoader.quoteIdentifier(columnaId) + ", "
+                + SQLLoader.quoteIdentifier(columnaClase) + ") VALUES (?, ?)";
+        Connection conn = loader.connect();
+        PreparedStatement stmt;
+        try {
+            conn.setAutoCommit(false);
+            stmt = conn.prepareStatement(sql);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return new Sink() {
+            @Override
+            public void write(long[] ids, String[] labels, int count) throws SQLException {
+                for (int i = 0; i < count; i++) {
+                    stmt.setLong(1, ids[i]);
+                    stmt.setString(2, labels[i]);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            }
+
+            @Override
+            public void close() throws SQLException {
+                try {
+                    stmt.close();
+                } finally {
+                    conn.close();
+                }
+            }
+        };
+    }
+
+    // CSV en UTF-8 con cabecera columnaId,columnaClase
+    public static Sink csvSink(Path file, String columnaId, String columnaClase) throws IOException {
+        BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        out.write(csv(columnaId) + "," + csv(columnaClase));
+        out.newLine();
+        return new Sink() {
+            @Override
+            public void write(long[] ids, String[] labels, int count) throws IOException {
+                for (int i = 0; i < count; i++) {
+                    out.write(Long.toString(ids[i]));
+                    out.write(',');
+                    out.write(csv(labels[i]));
+                    out.newLine();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static final String USAGE = String.join("\n",
+            "Uso: BatchScorer --modelo archivo.c45model --tabla Tabla (--tabla-salida Tabla | --csv archivo.csv)",
+            "       [--id Id] [--columna-salida prediccion] [--lote 10000] [--hilos N] [--fetch 10000]",
+            "       [--url jdbc:...] [--usuario usuario] [--clave clave]");
+
+    public static void main(String[] args) {
+        try {
+            Map<String, String> options = parseOptions(args);
+            String modelo = require(options, "--modelo");
+            String tabla = require(options, "--tabla");
+            String tablaSalida = options.get("--tabla-salida");
+            String csv = options.get("--csv");
+            if ((tablaSalida == null) == (csv == null)) {
+                throw new IllegalArgumentException("Hay que indicar --tabla-salida o --csv, y solo uno de los dos");
+            }
+            String columnaId = options.getOrDefault("--id", "Id");
+            String columnaSalida = options.getOrDefault("--columna-salida", "prediccion");
+
+            BatchScorer scorer = new BatchScorer(ModelIO.load(Paths.get(modelo)));
+            if (options.containsKey("--lote")) scorer.setBatchSize(parseInt(options, "--lote"));
+            if (options.containsKey("--hilos")) scorer.setThreads(parseInt(options, "--hilos"));
+
+            long start = System.nanoTime();
+            long rows;
+            try (SQLLoader loader = options.containsKey("--url")
+                    ? new SQLLoader(options.get("--url"), options.getOrDefault("--usuario", ""), options.getOrDefault("--clave", ""))
+                    : new SQLLoader()) {
+                if (options.containsKey("--fetch")) loader.setFetchSize(parseInt(options, "--fetch"));
+                try (Sink sink = csv != null ? csvSink(Paths.get(csv), columnaId, columnaSalida)
+                        : tableSink(loader, tablaSalida, columnaId, columnaSalida)) {
+                    rows = scorer.score(loader, tabla, columnaId, sink);
+                }
+            }
+            System.out.printf("Filas puntuadas: %d en %.1f s%n", rows, (System.nanoTime() - start) / 1e9);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("Error al puntuar: " + e);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Argumento inválido: " + args[i]);
+            }
+            options.put(args[i], args[i + 1]);
+        }
+        return options;
+    }
+
+    private static String require(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Falta " + name);
+        }
+        return value;
+    }
+
+    private static int parseInt(Map<String, String> options, String name) {
+        try {
+            return Integer.parseInt(options.get(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " debe ser un número entero");
+        }
+    }
+}
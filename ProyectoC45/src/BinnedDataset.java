@@ -0,0 +1,84 @@
+/*
+ * Atributos cuantizados en como mucho maxBins bins; el código -1 marca un valor NaN. Un atributo
+ * categórico tiene un bin por categoría, sea cual sea maxBins, y su código es el de la categoría.
+ */
+final class BinnedDataset {
+    final ColumnarDataset source;
+    final double[][] cuts;
+    final double[][] values; // valor de cada bin si cada bin es un valor distinto; si no, null
+    final short[][] codes;
+
+    private BinnedDataset(ColumnarDataset source, double[][] cuts, double[][] values, short[][] codes) {
+        this.source = source;
+        this.cuts = cuts;
+        this.values = values;
+        this.codes = codes;
+    }
+
+    int numBins(int attr) {
+        return cuts[attr].length + 1;
+    }
+
+    /*
+     * Umbral de una división "bin <= b" en un nodo con el histograma hist (stride enteros por bin, el
+     * último con el total). Si cada bin es un valor distinto, es el punto medio entre el valor de b y el
+     * del siguiente bin con filas en el nodo, como en el modo exacto; si no, el corte de b.
+     */
+    static double splitThreshold(double[] cuts, double[] values, int bin, int[] hist, int stride) {
+        if (values == null) return cuts[bin];
+        int next = bin + 1;
+        while (next < values.length - 1 && hist[next * stride + stride - 1] == 0) next++;
+        return (values[bin] + values[next]) / 2;
+    }
+
+    // Solo se cuantizan los atributos indicados; los demás quedan en null
+    static BinnedDataset of(ColumnarDataset data, int[] attributes, int maxBins) {
+        if (maxBins < 2 || maxBins > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("El número de bins debe estar entre 2 y " + Short.MAX_VALUE);
+        }
+        double[][] cuts = new double[data.numAttributes()][];
+        double[][] values = new double[data.numAttributes()][];
+        short[][] codes = new short[data.numAttributes()][];
+        for (int a : attributes) {
+            double[] column = data.column(a);
+            if (data.isCategorical(a)) {
+                cuts[a] = categoryCuts(data.categories(a).length);
+                short[] code = new short[column.length];
+                for (int r = 0; r < column.length; r++) {
+                    code[r] = Double.isNaN(column[r]) ? -1 : (short) column[r];
+                }
+                codes[a] = code;
+                continue;
+            }
+            QuantileSketch sketch = data.quantileSketch(a);
+            if (sketch == null) {
+                sketch = QuantileSketch.of(column, ColumnarDataset.QUANTILE_SAMPLE_SIZE, maxBins);
+            }
+            cuts[a] = sketch.cutPoints(maxBins);
+            values[a] = sketch.binValues(maxBins);
+
+            short[] code = new short[column.length];
+            for (int r = 0; r < column.length; r++) {
+                code[r] = Double.isNaN(column[r]) ? -1 : (short) bin(cuts[a], column[r]);
+            }
+            codes[a] = code;
+        }
+        return new BinnedDataset(data, cuts, values, codes);
+    }
+
+    // Cortes entre códigos consecutivos (0.5, 1.5, ...), así bin(cuts, código) = código
+    static double[] categoryCuts(int numCategories) {
+        if (numCategories > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Demasiadas categorías para el modo de histogramas: " + numCategories);
+        }
+        double[] cuts = new double[Math.max(0, numCategories - 1)];
+        for (int c = 0; c < cuts.length; c++) cuts[c] = c + 0.5;
+        return cuts;
+    }
+
+    // Primer corte >= value; si no hay, el último bin
+    static int bin(double[] cuts, double value) {
+        int pos = java.util.Arrays.binarySearch(cuts, value);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Predicción por bloques de filas sobre un CompiledTree. En lugar de recorrer el árbol fila por fila
+ * con un salto condicional en cada nodo, las BLOCK filas de un bloque bajan un nivel a la vez: en cada
+ * paso todas dan un paso, y el hijo sale de un índice calculado con la comparación, sin saltos. Las
+ * hojas apuntan a sí mismas, así que una fila que ya llegó no se mueve, y el bloque termina cuando un
+ * paso no mueve ninguna fila. Las filas que encuentran un valor desconocido en un nodo interno se
+ * vuelven a predecir con CompiledTree, que lo reparte entre las ramas: el resultado es siempre el de
+ * CompiledTree.predict.
+ *
+ * of devuelve esta versión escalar, que es la más rápida en JDK 17 y empata con la vectorial en JDK 21.
+ * VectorBlockPredictor (carpeta src-vector, con jdk.incubator.vector) se pide con vectorized.
+ */
+public class BlockPredictor {
+    static final int BLOCK = 256;
+
+    final CompiledTree model;
+    final int numFeatures;
+    final int[] feature;      // las hojas leen el atributo 0, que no las mueve
+    final double[] threshold;
+    final int[] left;         // una hoja es su propio hijo por los dos lados
+    final int[] right;
+    private final int[] children; // izquierdo en 2n, derecho en 2n + 1
+    private final int[] leafClass;
+
+    public BlockPredictor(CompiledTree model) {
+        this.model = model;
+        this.numFeatures = model.attributes().size();
+        int nodes = model.numNodes();
+        this.feature = model.featureArray();
+        this.threshold = model.thresholdArray();
+        this.left = model.leftArray();
+        this.right = model.rightArray();
+        this.leafClass = model.leafClassArray();
+        this.children = new int[2 * nodes];
+        for (int n = 0; n < nodes; n++) {
+            if (feature[n] < 0) {
+                feature[n] = 0;
+                left[n] = n;
+                right[n] = n;
+            }
+            children[2 * n] = left[n];
+            children[2 * n + 1] = right[n];
+        }
+    }
+
+    public static BlockPredictor of(CompiledTree model) {
+        return new BlockPredictor(model);
+    }
+
+    /*
+     * VectorBlockPredictor si está compilado y la JVM se inició con --add-modules jdk.incubator.vector;
+     * si no, la versión escalar (ver isVectorized).
+     */
+    public static BlockPredictor vectorized(CompiledTree model) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (BlockPredictor) Class.forName("VectorBlockPredictor")
+                        .getDeclaredConstructor(CompiledTree.class).newInstance(model);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Sin la clase vectorial en el classpath: versión escalar
+            }
+        }
+        return new BlockPredictor(model);
+    }
+
+    public boolean isVectorized() {
+        return false;
+    }
+
+    public CompiledTree model() {
+        return model;
+    }
+
+    public void predictBatch(ColumnarDataset data, int[] out) {
+        predictBatch(data, 0, data.numRows(), out);
+    }
+
+    // Escribe en out[0 .. to - from) la clase de las filas from .. to-1 del dataset
+    public void predictBatch(ColumnarDataset data, int from, int to, int[] out) {
+        if (out.length < to - from) {
+            throw new IllegalArgumentException("El arreglo de salida es más pequeño que el lote");
+        }
+        if (numFeatures == 0) {
+            for (int r = from; r < to; r++) out[r - from] = leafClass[0];
+            return;
+        }
+        double[][] columns = model.bindColumns(data);
+        Scratch scratch = newScratch();
+        for (int start = from; start < to; start += BLOCK) {
+            int n = Math.min(BLOCK, to - start);
+            predictBlock(columns, start, n, scratch, out, start - from);
+        }
+    }
+
+    // Filas en el orden de columnas de model.attributes(), como CompiledTree.predictBatch(double[][], int[])
+    public void predictBatch(double[][] rows, int[] out) {
+        if (out.length < rows.length) {
+            throw new IllegalArgumentException("El arreglo de salida es más pequeño que el lote");
+        }
+        if (numFeatures == 0) {
+            for (int r = 0; r < rows.length; r++) out[r] = leafClass[0];
+            return;
+        }
+        double[][] columns = new double[numFeatures][BLOCK];
+        Scratch scratch = newScratch();
+        for (int start = 0; start < rows.length; start += BLOCK) {
+            int n = Math.min(BLOCK, rows.length - start);
+            for (int i = 0; i < n; i++) {
+                double[] row = rows[start + i];
+                for (int f = 0; f < numFeatures; f++) columns[f][i] = row[f];
+            }
+            predictBlock(columns, 0, n, scratch, out, start);
+        }
+    }
+
+    // Arreglos de trabajo de un bloque; predictBatch los reserva una vez y los reutiliza en cada bloque
+    static class Scratch {
+        final int[] node = new int[BLOCK];
+        final boolean[] missing = new boolean[BLOCK];
+        // Distribución de CompiledTree.predict para las filas con valores desconocidos
+        final double[] dist;
+
+        Scratch(int numClasses) {
+            dist = new double[numClasses];
+        }
+    }
+
+    Scratch newScratch() {
+        return new Scratch(model.numClassLabels());
+    }
+
+    private void predictBlock(double[][] columns, int from, int n, Scratch scratch, int[] out, int offset) {
+        int[] node = scratch.node;
+        boolean[] missing = scratch.missing;
+        java.util.Arrays.fill(node, 0, n, 0);
+        java.util.Arrays.fill(missing, 0, n, false);
+        descend(columns, from, n, scratch);
+        for (int i = 0; i < n; i++) {
+            out[offset + i] = missing[i] ? model.predict(columns, from + i, scratch.dist) : leafClass[node[i]];
+        }
+    }
+
+    /*
+     * Baja las filas from .. from+n-1 de columns desde scratch.node[i] hasta sus hojas y marca en
+     * scratch.missing las que pasaron por un nodo interno con el valor desconocido.
+     */
+    void descend(double[][] columns, int from, int n, Scratch scratch) {
+        descendScalar(columns, from, 0, n, scratch.node, scratch.missing);
+    }
+
+    // Lo mismo para los índices lo .. hi-1 del bloque
+    final void descendScalar(double[][] columns, int from, int lo, int hi, int[] node, boolean[] missing) {
+        boolean moved = true;
+        while (moved) {
+            int changed = 0;
+            for (int i = lo; i < hi; i++) {
+                int nd = node[i];
+                double v = columns[feature[nd]][from + i];
+                int next = children[2 * nd + (v > threshold[nd] ? 1 : 0)];
+                // Solo en un nodo interno cambia el nodo; un NaN ahí sigue a la izquierda y se corrige después
+                missing[i] |= v != v & next != nd;
+                changed |= next ^ nd;
+                node[i] = next;
+            }
+            moved = changed != 0;
+        }
+    }
+}
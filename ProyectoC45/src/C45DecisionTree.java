@@ -1,224 +1,1017 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class C45DecisionTree {
     private TreeNode root;
+    private String[] classLabels = new String[0];
+    private int parallelism = 1;
+    private int forkThreshold = 2048;
+    private int histogramBins = 0;
+    private int maxDepth = 0;
+    private int minSamplesSplit = 2;
+    private int minSamplesLeaf = 1;
+    private double minGainRatio = 0;
+    private double confidenceFactor = 0;
+    private boolean reuseNumericAttributes = false;
+    private TrainingMonitor monitor;
+    private TrainingRecorder recorder;
+
+    // 1 = entrenamiento secuencial; con más hilos se usa un ForkJoinPool propio
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Nodos con menos filas que este umbral se construyen en el hilo actual
+    public void setForkThreshold(int forkThreshold) {
+        if (forkThreshold < 1) {
+            throw new IllegalArgumentException("El umbral de división debe ser al menos 1");
+        }
+        this.forkThreshold = forkThreshold;
+    }
+
+    public int getForkThreshold() {
+        return forkThreshold;
+    }
+
+    /*
+     * 0 = búsqueda exacta de umbrales (por defecto). Con N > 0 cada atributo se cuantiza una vez en
+     * como mucho N bins por cuantiles y los umbrales solo pueden caer en los cortes de bin: cada nodo
+     * cuesta O(bins x clases) por atributo más un recorrido del hijo más pequeño, en lugar de
+     * O(filas). Los atributos con N valores distintos o menos dan los mismos umbrales que el modo
+     * exacto; en columnas continuas se pierde precisión en el umbral, y con ella algo de exactitud,
+     * sobre todo con pocos bins. 256 suele ser un buen punto de partida. Este modo es secuencial, y
+     * las filas con el atributo de división desconocido no bajan a ningún hijo en lugar de repartirse
+     * con pesos fraccionarios como en el modo exacto.
+     */
+    public void setHistogramBins(int histogramBins) {
+        if (histogramBins != 0 && (histogramBins < 2 || histogramBins > Short.MAX_VALUE)) {
+            throw new IllegalArgumentException("El número de bins debe ser 0 o estar entre 2 y " + Short.MAX_VALUE);
+        }
+        this.histogramBins = histogramBins;
+    }
+
+    public int getHistogramBins() {
+        return histogramBins;
+    }
+
+    // Divisiones como máximo en cualquier camino desde la raíz; 0 = sin límite
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("La profundidad máxima no puede ser negativa");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // Un nodo con menos filas que esto se vuelve hoja sin buscar división; las filas repartidas por valores desconocidos cuentan enteras
+    public void setMinSamplesSplit(int minSamplesSplit) {
+        if (minSamplesSplit < 2) {
+            throw new IllegalArgumentException("El mínimo de filas para dividir debe ser al menos 2");
+        }
+        this.minSamplesSplit = minSamplesSplit;
+    }
+
+    public int getMinSamplesSplit() {
+        return minSamplesSplit;
+    }
+
+    /*
+     * Filas con el atributo conocido que debe tener cada lado de un umbral. En una división
+     * categórica basta con que dos ramas lleguen al mínimo, como en C4.5; el resto pueden quedar
+     * con menos o vacías.
+     */
+    public void setMinSamplesLeaf(int minSamplesLeaf) {
+        if (minSamplesLeaf < 1) {
+            throw new IllegalArgumentException("El mínimo de filas por hoja debe ser al menos 1");
+        }
+        this.minSamplesLeaf = minSamplesLeaf;
+    }
+
+    public int getMinSamplesLeaf() {
+        return minSamplesLeaf;
+    }
+
+    // Solo se divide si el mejor gain ratio supera este valor (0 = cualquier ganancia positiva)
+    public void setMinGainRatio(double minGainRatio) {
+        if (!(minGainRatio >= 0)) {
+            throw new IllegalArgumentException("El gain ratio mínimo no puede ser negativo");
+        }
+        this.minGainRatio = minGainRatio;
+    }
+
+    public double getMinGainRatio() {
+        return minGainRatio;
+    }
+
+    /*
+     * Factor de confianza de la poda pesimista de C4.5 (0.25 en C4.5); 0 = sin poda. Después de
+     * construir el árbol se reemplaza por una hoja cada subárbol cuyo error estimado no mejora el de
+     * la hoja; valores más bajos podan más.
+     */
+    public void setConfidenceFactor(double confidenceFactor) {
+        if (!(confidenceFactor >= 0 && confidenceFactor < 1)) {
+            throw new IllegalArgumentException("El factor de confianza debe estar entre 0 y 1");
+        }
+        this.confidenceFactor = confidenceFactor;
+    }
+
+    public double getConfidenceFactor() {
+        return confidenceFactor;
+    }
+
+    /*
+     * Con true un atributo numérico sigue disponible en los hijos después de usarse para dividir, como
+     * en C4.5, y el mismo camino puede cortarlo en varios umbrales. Los hijos reciben los tramos ya
+     * ordenados de la lista del padre, así que nunca se reordena. Por defecto (false) cada atributo se
+     * usa una sola vez por camino; los categóricos se usan una sola vez en los dos casos.
+     */
+    public void setReuseNumericAttributes(boolean reuseNumericAttributes) {
+        this.reuseNumericAttributes = reuseNumericAttributes;
+    }
+
+    public boolean isReuseNumericAttributes() {
+        return reuseNumericAttributes;
+    }
+
+    // Progreso y cancelación del próximo entrenamiento; null para no vigilarlo
+    public void setMonitor(TrainingMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public TrainingMonitor getMonitor() {
+        return monitor;
+    }
 
     public void train(List<Map<String, Double>> data, List<String> attributes, String target) {
-        root = buildTree(data, attributes, target);
+        train(ColumnarDataset.fromRows(data, attributes, target));
+    }
+
+    public void train(ColumnarDataset data) {
+        train(data, data.attributeNames());
+    }
+
+    public void train(ColumnarDataset data, List<String> attributes) {
+        int[] attrs = new int[attributes.size()];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = data.attributeIndex(attributes.get(i));
+            if (attrs[i] < 0) {
+                throw new IllegalArgumentException("Atributo no encontrado en el dataset: " + attributes.get(i));
+            }
+        }
+        classLabels = classLabels(data);
+        // Solo se instrumenta con C45Metrics activado; si no, recorder queda en null
+        TrainingRecorder rec = C45Metrics.enabled() ? new TrainingRecorder(data.numAttributes()) : null;
+        recorder = rec;
+        try {
+            if (histogramBins > 0) {
+                root = newHistogramBuilder(BinnedDataset.of(data, attrs, histogramBins), rec).build(attrs);
+                prune();
+                finishRecording(rec, data, attrs);
+                return;
+            }
+
+            int[] rows = new int[data.numRows()];
+            for (int i = 0; i < rows.length; i++) rows[i] = i;
+
+            if (parallelism == 1) {
+                root = buildRoot(data, rows, attrs);
+                prune();
+                finishRecording(rec, data, attrs);
+                return;
+            }
+            ForkJoinPool pool = rec != null ? rec.newPool(parallelism) : new ForkJoinPool(parallelism);
+            try {
+                root = pool.invoke(ForkJoinTask.adapt(() -> buildRoot(data, rows, attrs)));
+                prune();
+                finishRecording(rec, data, attrs); // Antes de cerrar el pool, mientras sus hilos siguen vivos
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            recorder = null;
+        }
+    }
+
+    /*
+     * Entrena sobre un dataset en disco (OutOfCoreDataset), por niveles, con los límites de crecimiento,
+     * el monitor y la poda de este árbol. Las columnas ya están cuantizadas con los bins del Writer, así
+     * que setHistogramBins no cuenta: el árbol es el del modo por histogramas con esos bins.
+     */
+    public void train(OutOfCoreDataset data, List<String> attributes) throws java.io.IOException {
+        int[] attrs = new int[attributes.size()];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = data.attributeIndex(attributes.get(i));
+            if (attrs[i] < 0) {
+                throw new IllegalArgumentException("Atributo no encontrado en el dataset: " + attributes.get(i));
+            }
+        }
+        classLabels = new String[data.numClasses()];
+        for (int c = 0; c < classLabels.length; c++) classLabels[c] = data.classLabel(c);
+        root = new OutOfCoreTreeBuilder(data, monitor, maxDepth, minSamplesSplit, minSamplesLeaf, minGainRatio,
+                reuseNumericAttributes, OutOfCoreTreeBuilder.DEFAULT_HISTOGRAM_BYTES).build(attrs);
+        prune();
+    }
+
+    private HistogramTreeBuilder newHistogramBuilder(BinnedDataset binned, TrainingRecorder rec) {
+        return new HistogramTreeBuilder(binned, monitor, rec, maxDepth, minSamplesSplit, minSamplesLeaf, minGainRatio,
+                reuseNumericAttributes);
+    }
+
+    private void finishRecording(TrainingRecorder rec, ColumnarDataset data, int[] attrs) {
+        if (rec != null) C45Metrics.get().trainingFinished(rec.finish(data, attrs, root));
+    }
+
+    /*
+     * Entrena sobre una muestra de filas que puede repetirlas (bootstrap de C45RandomForest), en el hilo
+     * actual. sorted[i] son las filas de la muestra con valor conocido en attrs[i], en orden ascendente;
+     * si binned no es null se usa el modo por histogramas y sorted se ignora.
+     */
+    void trainSample(ColumnarDataset data, int[] attrs, int[] rows, int[][] sorted, BinnedDataset binned) {
+        classLabels = classLabels(data);
+        if (binned != null) {
+            root = newHistogramBuilder(binned, null).build(attrs, rows);
+        } else {
+            root = buildTree(data, rows, null, attrs, sorted, null, new byte[data.numRows()], 0);
+        }
+        prune();
+    }
+
+    // Árbol sin entrenar con las mismas opciones, salvo el monitor
+    C45DecisionTree copyOptions() {
+        C45DecisionTree copy = new C45DecisionTree();
+        copy.parallelism = parallelism;
+        copy.forkThreshold = forkThreshold;
+        copy.histogramBins = histogramBins;
+        copy.maxDepth = maxDepth;
+        copy.minSamplesSplit = minSamplesSplit;
+        copy.minSamplesLeaf = minSamplesLeaf;
+        copy.minGainRatio = minGainRatio;
+        copy.confidenceFactor = confidenceFactor;
+        copy.reuseNumericAttributes = reuseNumericAttributes;
+        return copy;
+    }
+
+    /*
+     * Copia de este árbol, entrenado sin poda, podada con otro factor de confianza. La poda solo mira el
+     * árbol ya construido, así que es lo mismo que entrenar con ese factor; CrossValidation lo usa para
+     * construir una sola vez las configuraciones que solo difieren en el factor. Los nodos se copian y
+     * las distribuciones se comparten, porque la poda no las modifica.
+     */
+    C45DecisionTree prunedCopy(double confidenceFactor) {
+        C45DecisionTree copy = copyOptions();
+        copy.setConfidenceFactor(confidenceFactor);
+        copy.classLabels = classLabels;
+        copy.root = copyNodes(root);
+        copy.prune();
+        return copy;
+    }
+
+    private static TreeNode copyNodes(TreeNode node) {
+        if (node == null) return null;
+        TreeNode copy = new TreeNode();
+        copy.attribute = node.attribute;
+        copy.threshold = node.threshold;
+        copy.label = node.label;
+        copy.classId = node.classId;
+        copy.weight = node.weight;
+        copy.distribution = node.distribution;
+        copy.categories = node.categories;
+        copy.left = copyNodes(node.left);
+        copy.right = copyNodes(node.right);
+        if (node.children != null) {
+            copy.children = new TreeNode[node.children.length];
+            for (int v = 0; v < copy.children.length; v++) copy.children[v] = copyNodes(node.children[v]);
+        }
+        return copy;
+    }
+
+    private static String[] classLabels(ColumnarDataset data) {
+        String[] labels = new String[data.numClasses()];
+        for (int c = 0; c < labels.length; c++) labels[c] = data.classLabel(c);
+        return labels;
+    }
+
+    private TreeNode buildRoot(ColumnarDataset data, int[] rows, int[] attrs) {
+        // Cada atributo se ordena una sola vez; los hijos heredan el orden al particionar
+        int[][] sorted = new int[attrs.length][];
+        if (isParallel(rows.length)) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < attrs.length; i++) {
+                int a = i;
+                tasks.add(ForkJoinTask.adapt(() -> sorted[a] = IndexSort.sortedKnownRows(data.column(attrs[a]), rows)));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (int i = 0; i < attrs.length; i++) {
+                sorted[i] = IndexSort.sortedKnownRows(data.column(attrs[i]), rows);
+            }
+        }
+        if (monitor != null) monitor.checkCancelled();
+        return buildTree(data, rows, null, attrs, sorted, null, new byte[data.numRows()], 0);
+    }
+
+    private boolean isParallel(int nodeSize) {
+        return parallelism > 1 && nodeSize >= forkThreshold && ForkJoinTask.inForkJoinPool();
     }
 
     
     public String predict(Map<String, Double> instance) {
+        if (!C45Metrics.enabled()) return predictLabel(instance);
+
+        long start = System.nanoTime();
+        String label = predictLabel(instance);
+        C45Metrics.get().recordPrediction(System.nanoTime() - start);
+        return label;
+    }
+
+    // Con un valor desconocido en el camino la clase es la de mayor peso en predictDistribution
+    private String predictLabel(Map<String, Double> instance) {
         TreeNode node = root;
         while (!node.isLeaf()) {
-            Double val = instance.get(node.attribute); 
-
-            
-            if (val == null || val.isNaN()) {            
-                System.out.println("Advertencia: Valor NaN encontrado para '" + node.attribute + "' durante la predicción. Recorriendo rama izquierda por defecto.");
-                node = node.left; 
-                if (node == null) { 
-                    return "NoClassFound"; 
-                }
-            } else {
-                node = (val <= node.threshold) ? node.left : node.right;
+            TreeNode next = branch(node, instance.get(node.attribute));
+            if (next == MISSING) {
+                double[] dist = new double[classLabels.length];
+                addDistribution(node, instance, 1, dist);
+                int c = SplitStats.majority(dist);
+                return c >= 0 ? classLabels[c] : "NoClassFound";
+            }
+            node = next;
+            if (node == null) {
+                return "NoClassFound";
             }
         }
         return node.label;
     }
 
-    private TreeNode buildTree(List<Map<String, Double>> data, List<String> attributes, String target) {
-        if (data.isEmpty()) return null;
+    /*
+     * Probabilidad de cada clase de classLabels(). Un valor desconocido (NaN, ausente o una categoría
+     * que no se vio al entrenar) baja por todas las ramas, repartido según el peso de entrenamiento de
+     * cada una, y se suman las distribuciones de las hojas alcanzadas. Todo ceros si no hay ninguna.
+     */
+    public double[] predictDistribution(Map<String, Double> instance) {
+        if (root == null) {
+            throw new IllegalStateException("El árbol no ha sido entrenado");
+        }
+        double[] dist = new double[classLabels.length];
+        addDistribution(root, instance, 1, dist);
+        double total = 0;
+        for (double p : dist) total += p;
+        if (total > 0) {
+            for (int c = 0; c < dist.length; c++) dist[c] /= total;
+        }
+        return dist;
+    }
+
+    // Etiquetas de clase del último entrenamiento, en el orden de predictDistribution
+    public List<String> classLabels() {
+        return Collections.unmodifiableList(Arrays.asList(classLabels));
+    }
+
+    private static final TreeNode MISSING = new TreeNode();
 
-        if (allSameClass(data, target)) {
-            TreeNode leaf = new TreeNode();
-            leaf.label = data.get(0).get(target).toString(); 
-            return leaf;
+    // Hijo que corresponde al valor, o MISSING si el valor es desconocido
+    private static TreeNode branch(TreeNode node, Double val) {
+        if (val == null || val.isNaN()) return MISSING;
+        if (node.isCategorical()) {
+            int code = (int) val.doubleValue();
+            return code != val || code < 0 || code >= node.children.length ? MISSING : node.children[code];
+        }
+        return val <= node.threshold ? node.left : node.right;
+    }
+
+    // Mismas operaciones que CompiledTree, para que los empates se resuelvan igual en los dos
+    private static void addDistribution(TreeNode node, Map<String, Double> instance, double mass, double[] dist) {
+        if (node == null) return;
+        if (node.isLeaf()) {
+            if (node.distribution == null) return;
+            double total = 0;
+            for (double w : node.distribution) total += w;
+            if (total == 0) return;
+            for (int c = 0; c < dist.length && c < node.distribution.length; c++) dist[c] += mass * (node.distribution[c] / total);
+            return;
+        }
+        TreeNode next = branch(node, instance.get(node.attribute));
+        if (next != MISSING) {
+            addDistribution(next, instance, mass, dist);
+            return;
         }
+        if (!node.isCategorical()) {
+            double p = fraction(weight(node.left), weight(node.right));
+            if (p > 0) addDistribution(node.left, instance, mass * p, dist);
+            if (p < 1) addDistribution(node.right, instance, mass * (1 - p), dist);
+            return;
+        }
+        addBranches(node, 0, node.children.length - 1, instance, mass, dist);
+    }
 
-        if (attributes.isEmpty()) {
-            TreeNode leaf = new TreeNode();
-            leaf.label = majorityClass(data, target);
-            return leaf;
+    // Reparte entre las ramas lo..hi por mitades, como la búsqueda binaria de CompiledTree
+    private static void addBranches(TreeNode node, int lo, int hi, Map<String, Double> instance, double mass, double[] dist) {
+        if (lo == hi) {
+            addDistribution(node.children[lo], instance, mass, dist);
+            return;
         }
+        int mid = (lo + hi) >>> 1;
+        double p = fraction(weight(node.children, lo, mid), weight(node.children, mid + 1, hi));
+        if (p > 0) addBranches(node, lo, mid, instance, mass * p, dist);
+        if (p < 1) addBranches(node, mid + 1, hi, instance, mass * (1 - p), dist);
+    }
+
+    private static double weight(TreeNode node) {
+        return node == null ? 0 : node.weight;
+    }
 
-        String bestAttr = null;
+    private static double weight(TreeNode[] children, int lo, int hi) {
+        double total = 0;
+        for (int v = lo; v <= hi; v++) total += weight(children[v]);
+        return total;
+    }
+
+    private static double fraction(double leftWeight, double rightWeight) {
+        double total = leftWeight + rightWeight;
+        return total > 0 ? leftWeight / total : 1;
+    }
+
+    private static final byte MISSING_SIDE = 0;
+    private static final byte LEFT = 1;
+    private static final byte RIGHT = 2;
+
+    /*
+     * sorted[i] contiene las filas del nodo con valor conocido en attributes[i], en orden ascendente.
+     * weights[j] es el peso de rows[j] y sortedWeights[i][j] el de sorted[i][j]; ambos son null mientras
+     * todas las filas del nodo pesen 1, es decir, hasta que una fila con el atributo de división
+     * desconocido baja repartida a los hijos.
+     */
+    private TreeNode buildTree(ColumnarDataset data, int[] rows, double[] weights, int[] attributes,
+                               int[][] sorted, double[][] sortedWeights, byte[] side, int depth) {
+        if (rows.length == 0) return null;
+        if (monitor != null) monitor.nodeStarted(depth, rows.length);
+
+        int[] labels = data.labels();
+        double[] counts = classCounts(data, rows, weights);
+        double nodeWeight = sum(weights, rows.length);
+        if (allSameClass(labels, rows)) {
+            return leaf(labels[rows[0]], data.classLabel(labels[rows[0]]), counts, nodeWeight);
+        }
+
+        if (attributes.length == 0 || rows.length < minSamplesSplit || (maxDepth > 0 && depth >= maxDepth)) {
+            return majorityLeaf(data, counts, nodeWeight);
+        }
+
+        int best = -1;
         double bestGainRatio = -1;
         double bestThreshold = 0.0;
 
-        for (String attr : attributes) {
-            
-            boolean allNaNForAttr = true;
-            for(Map<String, Double> row : data) {
-                if (row.get(attr) != null && !row.get(attr).isNaN()) {
-                    allNaNForAttr = false;
-                    break;
-                }
-            }
-            if (allNaNForAttr) {
-                continue; 
+        boolean parallel = isParallel(rows.length);
+        long splitStart = recorder != null ? System.nanoTime() : 0;
+
+        // Los candidatos se evalúan en paralelo pero se comparan en orden, como en el caso secuencial
+        double[][] results = new double[attributes.length][];
+        if (parallel) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < attributes.length; i++) {
+                if (sorted[i].length == 0) continue;
+                int a = i;
+                tasks.add(ForkJoinTask.adapt(() -> results[a] = evaluate(data, attributes[a], sorted[a],
+                        sortedWeights == null ? null : sortedWeights[a], rows.length, nodeWeight)));
             }
+            ForkJoinTask.invokeAll(tasks);
+        }
 
+        for (int i = 0; i < attributes.length; i++) {
+            if (sorted[i].length == 0) {
+                continue; // Todos los valores son NaN en este nodo
+            }
 
-            double[] result = gainRatio(data, attr, target);
+            double[] result = parallel ? results[i] : evaluate(data, attributes[i], sorted[i],
+                    sortedWeights == null ? null : sortedWeights[i], rows.length, nodeWeight);
             if (result[0] > bestGainRatio) {
                 bestGainRatio = result[0];
                 bestThreshold = result[1];
-                bestAttr = attr;
+                best = i;
+            }
+            if (recorder != null) {
+                recorder.thresholds.addAndGet(attributes[i], (long) result[2]);
+                recorder.rowsScanned.add(sorted[i].length);
             }
         }
+        if (recorder != null) recorder.splitSearchNanos.add(System.nanoTime() - splitStart);
 
-        if (bestAttr == null || bestGainRatio <= 0) {
-            TreeNode leaf = new TreeNode();
-            leaf.label = majorityClass(data, target);
-            return leaf;
+        if (best < 0 || bestGainRatio <= minGainRatio) {
+            return majorityLeaf(data, counts, nodeWeight);
+        }
+        if (data.isCategorical(attributes[best])) {
+            return buildCategorical(data, rows, weights, attributes, sorted, sortedWeights, side, depth, best,
+                    counts, nodeWeight, parallel);
         }
 
+        double[] column = data.column(attributes[best]);
+        int[] bestSorted = sorted[best];
+        double[] bestWeights = sortedWeights == null ? null : sortedWeights[best];
+        int leftCount = 0;
+        double leftWeight = 0;
+        while (leftCount < bestSorted.length && column[bestSorted[leftCount]] <= bestThreshold) {
+            leftWeight += bestWeights == null ? 1 : bestWeights[leftCount];
+            leftCount++;
+        }
+
+        if (leftCount == 0 || leftCount == bestSorted.length) {
+            return majorityLeaf(data, counts, nodeWeight);
+        }
 
         TreeNode node = new TreeNode();
-        node.attribute = bestAttr;
+        node.attribute = data.attributeName(attributes[best]);
         node.threshold = bestThreshold;
+        node.weight = nodeWeight;
+        node.distribution = counts;
+
+        long partitionStart = recorder != null ? System.nanoTime() : 0;
 
-        List<Map<String, Double>> left = new ArrayList<>();
-        List<Map<String, Double>> right = new ArrayList<>();
+        // Las filas con NaN en el atributo elegido bajan a los dos hijos, con su peso repartido según el peso conocido de cada lado
+        for (int r : rows) side[r] = MISSING_SIDE;
+        for (int j = 0; j < bestSorted.length; j++) side[bestSorted[j]] = j < leftCount ? LEFT : RIGHT;
+        boolean shared = bestSorted.length < rows.length;
+        boolean weighted = weights != null || shared;
+        double leftFraction = leftWeight / sum(bestWeights, bestSorted.length);
 
-        for (Map<String, Double> row : data) {
-            Double val = row.get(bestAttr); 
-            if (val != null && !val.isNaN()) { 
-                if (val <= bestThreshold) left.add(row);
-                else right.add(row);
+        int[][] childRows = partition(rows, side);
+        double[][] childWeights = weighted ? partitionWeights(rows, weights, side, leftFraction) : null;
+
+        int[] newAttrs = new int[reuseNumericAttributes ? attributes.length : attributes.length - 1];
+        int[][] leftSorted = new int[newAttrs.length][];
+        int[][] rightSorted = new int[newAttrs.length][];
+        double[][] leftSortedWeights = weighted ? new double[newAttrs.length][] : null;
+        double[][] rightSortedWeights = weighted ? new double[newAttrs.length][] : null;
+        int k = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            if (i == best) {
+                if (!reuseNumericAttributes) continue;
+                // Las filas conocidas del atributo elegido ya están ordenadas: cada hijo se queda con un tramo
+                newAttrs[k] = attributes[i];
+                leftSorted[k] = Arrays.copyOf(bestSorted, leftCount);
+                rightSorted[k] = Arrays.copyOfRange(bestSorted, leftCount, bestSorted.length);
+                if (weighted) {
+                    leftSortedWeights[k] = bestWeights == null ? ones(leftCount) : Arrays.copyOf(bestWeights, leftCount);
+                    rightSortedWeights[k] = bestWeights == null ? ones(bestSorted.length - leftCount)
+                            : Arrays.copyOfRange(bestWeights, leftCount, bestWeights.length);
+                }
+                k++;
+                continue;
             }
+            int[][] parts = partition(sorted[i], side);
+            newAttrs[k] = attributes[i];
+            leftSorted[k] = parts[0];
+            rightSorted[k] = parts[1];
+            if (weighted) {
+                double[][] w = partitionWeights(sorted[i], sortedWeights == null ? null : sortedWeights[i], side, leftFraction);
+                leftSortedWeights[k] = w[0];
+                rightSortedWeights[k] = w[1];
+            }
+            k++;
+        }
+        if (recorder != null) {
+            recorder.partitionNanos.add(System.nanoTime() - partitionStart);
+            long scanned = rows.length;
+            for (int[] s : sorted) scanned += s.length;
+            recorder.rowsScanned.add(scanned);
+        }
+
+        double[] leftWeights = weighted ? childWeights[0] : null;
+        double[] rightWeights = weighted ? childWeights[1] : null;
+        // Los subárboles tocan filas disjuntas de side salvo las compartidas; en ese caso la tarea aparte usa su propio arreglo
+        if (parallel && childRows[0].length >= forkThreshold && childRows[1].length >= forkThreshold) {
+            byte[] leftSide = shared ? new byte[side.length] : side;
+            ForkJoinTask<TreeNode> leftTask = ForkJoinTask.adapt(() -> buildTree(data, childRows[0], leftWeights, newAttrs,
+                    leftSorted, leftSortedWeights, leftSide, depth + 1)).fork();
+            node.right = buildTree(data, childRows[1], rightWeights, newAttrs, rightSorted, rightSortedWeights, side, depth + 1);
+            node.left = leftTask.join();
+        } else {
+            node.left = buildTree(data, childRows[0], leftWeights, newAttrs, leftSorted, leftSortedWeights, side, depth + 1);
+            node.right = buildTree(data, childRows[1], rightWeights, newAttrs, rightSorted, rightSortedWeights, side, depth + 1);
         }
+        return node;
+    }
 
-        if (left.isEmpty() || right.isEmpty()) {
-            TreeNode leaf = new TreeNode();
-            leaf.label = majorityClass(data, target);
-            return leaf;
+    /*
+     * Un hijo por categoría; las filas con NaN en el atributo bajan a todas las ramas con filas, con su
+     * peso repartido según el peso conocido de cada una. Las ramas sin filas se vuelven hojas con la
+     * clase mayoritaria y la distribución del nodo, como en C4.5, y peso 0.
+     */
+    private TreeNode buildCategorical(ColumnarDataset data, int[] rows, double[] weights, int[] attributes,
+                                      int[][] sorted, double[][] sortedWeights, byte[] side, int depth, int best,
+                                      double[] counts, double nodeWeight, boolean parallel) {
+        long partitionStart = recorder != null ? System.nanoTime() : 0;
+        int attr = attributes[best];
+        double[] column = data.column(attr);
+        int branches = data.categories(attr).length;
+
+        // Fracción del peso conocido que va a cada rama
+        double[] fraction = new double[branches];
+        double[] bestWeights = sortedWeights == null ? null : sortedWeights[best];
+        for (int j = 0; j < sorted[best].length; j++) {
+            fraction[(int) column[sorted[best][j]]] += bestWeights == null ? 1 : bestWeights[j];
         }
+        double knownWeight = sum(bestWeights, sorted[best].length);
+        for (int v = 0; v < branches; v++) fraction[v] /= knownWeight;
+        boolean shared = sorted[best].length < rows.length;
+        boolean weighted = weights != null || shared;
 
+        int[][] childRows = partition(rows, column, fraction);
+        double[][] childWeights = weighted ? partitionWeights(rows, weights, column, fraction) : new double[branches][];
+        int[] newAttrs = new int[attributes.length - 1];
+        int[][][] childSorted = new int[branches][newAttrs.length][];
+        double[][][] childSortedWeights = weighted ? new double[branches][newAttrs.length][] : new double[branches][][];
+        int k = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            if (i == best) continue;
+            int[][] parts = partition(sorted[i], column, fraction);
+            double[][] w = weighted ? partitionWeights(sorted[i], sortedWeights == null ? null : sortedWeights[i], column, fraction) : null;
+            newAttrs[k] = attributes[i];
+            for (int v = 0; v < branches; v++) {
+                childSorted[v][k] = parts[v];
+                if (weighted) childSortedWeights[v][k] = w[v];
+            }
+            k++;
+        }
+        if (recorder != null) {
+            recorder.partitionNanos.add(System.nanoTime() - partitionStart);
+            long scanned = rows.length;
+            for (int[] s : sorted) scanned += s.length;
+            recorder.rowsScanned.add(scanned);
+        }
 
-        List<String> newAttrs = new ArrayList<>(attributes);
-        newAttrs.remove(bestAttr);
+        TreeNode node = new TreeNode();
+        node.attribute = data.attributeName(attr);
+        node.categories = data.categories(attr);
+        node.children = new TreeNode[branches];
+        node.weight = nodeWeight;
+        node.distribution = counts;
+        int majority = SplitStats.majority(counts);
+        String majorityLabel = majorityLabel(data, majority);
 
-        node.left = buildTree(left, newAttrs, target);
-        node.right = buildTree(right, newAttrs, target);
+        // Los hijos grandes se construyen en otras tareas mientras este hilo hace los demás
+        List<ForkJoinTask<TreeNode>> forked = new ArrayList<>();
+        int[] forkedBranch = new int[branches];
+        for (int v = 0; v < branches; v++) {
+            if (parallel && childRows[v].length >= forkThreshold) {
+                int b = v;
+                byte[] childSide = shared ? new byte[side.length] : side;
+                forkedBranch[forked.size()] = v;
+                forked.add(ForkJoinTask.adapt(() -> buildTree(data, childRows[b], childWeights[b], newAttrs,
+                        childSorted[b], childSortedWeights[b], childSide, depth + 1)).fork());
+            } else if (childRows[v].length == 0) {
+                node.children[v] = leaf(majority, majorityLabel, counts, 0);
+            } else {
+                node.children[v] = buildTree(data, childRows[v], childWeights[v], newAttrs, childSorted[v],
+                        childSortedWeights[v], side, depth + 1);
+            }
+        }
+        for (int t = 0; t < forked.size(); t++) node.children[forkedBranch[t]] = forked.get(t).join();
         return node;
     }
 
-    
-    private boolean allSameClass(List<Map<String, Double>> data, String target) {
-        if (data.isEmpty()) return true; 
-        Double label = data.get(0).get(target);
-        for (Map<String, Double> row : data) {
-            if (!row.get(target).equals(label)) return false;
+    private void prune() {
+        if (confidenceFactor > 0 && root != null) {
+            prune(root, SplitStats.confidenceCoefficient(confidenceFactor));
         }
-        return true;
     }
 
-    private String majorityClass(List<Map<String, Double>> data, String target) {
-        if (data.isEmpty()) return "N/A"; 
+    /*
+     * Poda pesimista de C4.5 por reemplazo de subárbol, en una pasada de abajo arriba con la
+     * distribución de clases que cada nodo guardó al construirse. Devuelve los errores estimados del
+     * subárbol que queda: los mal clasificados de cada hoja más el margen del límite superior de
+     * confianza. Un nodo que como hoja no estimaría más errores (con la tolerancia de 0.1 de C4.5) se
+     * convierte en hoja en el sitio.
+     */
+    private double prune(TreeNode node, double coeff) {
+        if (node == null) return 0;
+        double[] counts = node.distribution;
+        // Las ramas categóricas vacías (peso 0) llevan la distribución del padre, pero no tienen filas
+        double n = node.weight > 0 ? sum(counts, counts.length) : 0;
+        double errors = n - (n > 0 ? max(counts) : 0);
+        double leafErrors = errors + SplitStats.extraErrors(n, errors, confidenceFactor, coeff);
+        if (node.isLeaf()) return leafErrors;
+
+        double treeErrors = 0;
+        if (node.isCategorical()) {
+            for (TreeNode child : node.children) treeErrors += prune(child, coeff);
+        } else {
+            treeErrors = prune(node.left, coeff) + prune(node.right, coeff);
+        }
+        if (leafErrors > treeErrors + 0.1) return treeErrors;
+
+        int majority = SplitStats.majority(counts);
+        node.classId = majority;
+        node.label = majority >= 0 ? classLabels[majority] : "N/A";
+        node.attribute = null;
+        node.threshold = 0;
+        node.left = null;
+        node.right = null;
+        node.categories = null;
+        node.children = null;
+        return leafErrors;
+    }
+
+    private static double max(double[] values) {
+        double max = 0;
+        for (double v : values) max = Math.max(max, v);
+        return max;
+    }
+
+    private static TreeNode leaf(int classId, String label, double[] counts, double weight) {
+        TreeNode leaf = new TreeNode();
+        leaf.classId = classId;
+        leaf.label = label;
+        leaf.distribution = counts;
+        leaf.weight = weight;
+        return leaf;
+    }
 
-        Map<Double, Integer> count = new HashMap<>(); 
-        for (Map<String, Double> row : data) {
-            Double label = row.get(target);
-            if (label != null && !label.isNaN()) { 
-                count.put(label, count.getOrDefault(label, 0) + 1);
+    // Reparto estable por código de categoría; una fila con NaN pasa a cada rama con fracción positiva
+    private static int[][] partition(int[] idx, double[] column, double[] fraction) {
+        int branches = fraction.length;
+        int missing = 0;
+        int[] counts = new int[branches];
+        for (int r : idx) {
+            if (Double.isNaN(column[r])) missing++;
+            else counts[(int) column[r]]++;
+        }
+        int[][] parts = new int[branches][];
+        for (int v = 0; v < branches; v++) parts[v] = new int[fraction[v] > 0 ? counts[v] + missing : counts[v]];
+        Arrays.fill(counts, 0);
+        for (int r : idx) {
+            if (Double.isNaN(column[r])) {
+                for (int v = 0; v < branches; v++) {
+                    if (fraction[v] > 0) parts[v][counts[v]++] = r;
+                }
+            } else {
+                int v = (int) column[r];
+                parts[v][counts[v]++] = r;
             }
         }
-        if (count.isEmpty()) return "N/A"; 
+        return parts;
+    }
 
-        Double majorityLabel = null;
-        int maxCount = -1;
-        for (Map.Entry<Double, Integer> entry : count.entrySet()) {
-            if (entry.getValue() > maxCount) {
-                maxCount = entry.getValue();
-                majorityLabel = entry.getKey();
+    // Pesos que acompañan a partition(idx, column, fraction); weights null = todas pesan 1
+    private static double[][] partitionWeights(int[] idx, double[] weights, double[] column, double[] fraction) {
+        int branches = fraction.length;
+        int missing = 0;
+        int[] counts = new int[branches];
+        for (int r : idx) {
+            if (Double.isNaN(column[r])) missing++;
+            else counts[(int) column[r]]++;
+        }
+        double[][] parts = new double[branches][];
+        for (int v = 0; v < branches; v++) parts[v] = new double[fraction[v] > 0 ? counts[v] + missing : counts[v]];
+        Arrays.fill(counts, 0);
+        for (int j = 0; j < idx.length; j++) {
+            double w = weights == null ? 1 : weights[j];
+            double value = column[idx[j]];
+            if (Double.isNaN(value)) {
+                for (int v = 0; v < branches; v++) {
+                    if (fraction[v] > 0) parts[v][counts[v]++] = w * fraction[v];
+                }
+            } else {
+                int v = (int) value;
+                parts[v][counts[v]++] = w;
             }
         }
-        return majorityLabel != null ? majorityLabel.toString() : "N/A"; 
+        return parts;
     }
 
-    private double entropy(List<Map<String, Double>> data, String target) {
-        if (data.isEmpty()) return 0.0; 
+    // Reparto estable: conserva el orden relativo de idx en cada lado; MISSING_SIDE pasa a los dos
+    private static int[][] partition(int[] idx, byte[] side) {
+        int leftCount = 0;
+        int rightCount = 0;
+        for (int r : idx) {
+            if (side[r] != RIGHT) leftCount++;
+            if (side[r] != LEFT) rightCount++;
+        }
+        int[] left = new int[leftCount];
+        int[] right = new int[rightCount];
+        int l = 0;
+        int rr = 0;
+        for (int r : idx) {
+            if (side[r] != RIGHT) left[l++] = r;
+            if (side[r] != LEFT) right[rr++] = r;
+        }
+        return new int[][]{left, right};
+    }
 
-        Map<Double, Integer> count = new HashMap<>(); 
-        int validRows = 0; 
-        for (Map<String, Double> row : data) {
-            Double label = row.get(target);
-            if (label != null && !label.isNaN()) {
-                count.put(label, count.getOrDefault(label, 0) + 1);
-                validRows++;
+    // Pesos que acompañan a partition(idx, side); weights null = todas pesan 1
+    private static double[][] partitionWeights(int[] idx, double[] weights, byte[] side, double leftFraction) {
+        int leftCount = 0;
+        int rightCount = 0;
+        for (int r : idx) {
+            if (side[r] != RIGHT) leftCount++;
+            if (side[r] != LEFT) rightCount++;
+        }
+        double[] left = new double[leftCount];
+        double[] right = new double[rightCount];
+        int l = 0;
+        int rr = 0;
+        for (int j = 0; j < idx.length; j++) {
+            double w = weights == null ? 1 : weights[j];
+            byte s = side[idx[j]];
+            if (s == LEFT) left[l++] = w;
+            else if (s == RIGHT) right[rr++] = w;
+            else {
+                left[l++] = w * leftFraction;
+                right[rr++] = w * (1 - leftFraction);
             }
         }
+        return new double[][]{left, right};
+    }
 
-        if (validRows == 0) return 0.0; // Si no hay etiquetas válidas, entropía es 0
+    private static double[] ones(int count) {
+        double[] weights = new double[count];
+        Arrays.fill(weights, 1);
+        return weights;
+    }
 
-        double entropy = 0.0;
-        for (int c : count.values()) {
-            double p = c / (double) validRows;
-            entropy -= p * Math.log(p) / Math.log(2);
-        }
-        return entropy;
+    private static double sum(double[] weights, int count) {
+        if (weights == null) return count;
+        double total = 0;
+        for (double w : weights) total += w;
+        return total;
     }
 
     
-    private double[] gainRatio(List<Map<String, Double>> data, String attr, String target) {
-        List<Double> values = new ArrayList<>();
-        
-        for (Map<String, Double> row : data) {
-            Double val = row.get(attr);
-            if (val != null && !val.isNaN()) {
-                values.add(val);
-            }
+    private boolean allSameClass(int[] labels, int[] rows) {
+        if (rows.length == 0) return true;
+        int label = labels[rows[0]];
+        for (int r : rows) {
+            if (labels[r] != label) return false;
         }
+        return true;
+    }
 
-        if (values.isEmpty()) { 
-            return new double[]{-1.0, 0.0}; 
-        }
+    private static TreeNode majorityLeaf(ColumnarDataset data, double[] counts, double weight) {
+        int majority = SplitStats.majority(counts);
+        return leaf(majority, majorityLabel(data, majority), counts, weight);
+    }
 
-        Collections.sort(values);
-        double bestThreshold = 0.0;
-        double bestGainRatio = -1;
+    private static String majorityLabel(ColumnarDataset data, int majority) {
+        return majority >= 0 ? data.classLabel(majority) : "N/A";
+    }
 
-        
-        Set<Double> uniqueValues = new HashSet<>(values);
-        List<Double> sortedUniqueValues = new ArrayList<>(uniqueValues);
-        Collections.sort(sortedUniqueValues);
+    // Peso de cada clase; las filas sin etiqueta (-1) no se cuentan
+    private double[] classCounts(ColumnarDataset data, int[] rows, double[] weights) {
+        int[] labels = data.labels();
+        double[] count = new double[data.numClasses()];
+        for (int j = 0; j < rows.length; j++) {
+            int label = labels[rows[j]];
+            if (label >= 0) count[label] += weights == null ? 1 : weights[j];
+        }
+        return count;
+    }
 
-        for (int i = 0; i < sortedUniqueValues.size() - 1; i++) {
-            double threshold = (sortedUniqueValues.get(i) + sortedUniqueValues.get(i + 1)) / 2;
+    /*
+     * Mejor división de attr entre las filas rows de un nodo, con la misma búsqueda que buildTree sobre
+     * las filas ordenadas. weights[j] es el peso de rows[j] (null = todas pesan 1). Devuelve {gain
+     * ratio, umbral, divisiones evaluadas}, con gain ratio -1 si no hay ninguna; las pruebas lo comparan
+     * con una búsqueda que reordena en cada nodo.
+     */
+    double[] bestSplit(ColumnarDataset data, int attr, int[] rows, double[] weights) {
+        int[] sorted = IndexSort.sortedKnownRows(data.column(attr), rows);
+        if (sorted.length == 0) return new double[]{-1, Double.NaN, 0};
+        double[] sortedWeights = null;
+        if (weights != null) {
+            double[] byRow = new double[data.numRows()];
+            for (int j = 0; j < rows.length; j++) byRow[rows[j]] = weights[j];
+            sortedWeights = new double[sorted.length];
+            for (int j = 0; j < sorted.length; j++) sortedWeights[j] = byRow[sorted[j]];
+        }
+        return evaluate(data, attr, sorted, sortedWeights, rows.length, sum(weights, rows.length));
+    }
 
-            List<Map<String, Double>> left = new ArrayList<>();
-            List<Map<String, Double>> right = new ArrayList<>();
+    private double[] evaluate(ColumnarDataset data, int attr, int[] sorted, double[] weights, int nodeSize, double nodeWeight) {
+        return data.isCategorical(attr)
+                ? categoricalGainRatio(data, attr, sorted, weights, nodeSize, nodeWeight)
+                : gainRatio(data, attr, sorted, weights, nodeSize, nodeWeight);
+    }
 
-            for (Map<String, Double> row : data) {
-                Double val = row.get(attr);
-                if (val != null && !val.isNaN()) { 
-                    if (val <= threshold) left.add(row);
-                    else right.add(row);
-                }
+    // Una sola pasada sobre las filas con valor conocido llena la tabla de contingencia (categoría, clase)
+    private double[] categoricalGainRatio(ColumnarDataset data, int attr, int[] known, double[] weights,
+                                          int nodeSize, double nodeWeight) {
+        double[] column = data.column(attr);
+        int[] labels = data.labels();
+        int numClasses = data.numClasses();
+        int branches = data.categories(attr).length;
+
+        double[] sizes = new double[branches];
+        int[] rowCounts = new int[branches];
+        double[] table = new double[branches * numClasses];
+        double[] knownCounts = new double[numClasses];
+        for (int j = 0; j < known.length; j++) {
+            int r = known[j];
+            double w = weights == null ? 1 : weights[j];
+            int v = (int) column[r];
+            sizes[v] += w;
+            rowCounts[v]++;
+            if (labels[r] >= 0) {
+                table[v * numClasses + labels[r]] += w;
+                knownCounts[labels[r]] += w;
             }
+        }
+        int largeEnough = 0;
+        for (int count : rowCounts) {
+            if (count >= minSamplesLeaf) largeEnough++;
+        }
+        if (largeEnough < 2) return new double[]{-1, Double.NaN, 0};
+
+        double knownWeight = known.length == nodeSize ? nodeWeight : sum(weights, known.length);
+        double ratio = SplitStats.gainRatio(SplitStats.entropy(knownCounts), nodeWeight, knownWeight, sizes, table, numClasses);
+        // {gain ratio, sin umbral, una división evaluada}
+        return new double[]{ratio, Double.NaN, 1};
+    }
+
+    // Con pocas clases recorrer el histograma en cada umbral cuesta menos que dos logaritmos por fila
+    private static final int INCREMENTAL_MIN_CLASSES = 8;
+    // Cada cuántas filas movidas approximateGainRatios vuelve a sumar c·log2(c) desde los histogramas
+    private static final int EXACT_SUM_ROWS = 1024;
+    // Error de redondeo de una actualización de las sumas, relativo a la mayor de ellas; con holgura
+    private static final double SUM_ERROR = 32 * Math.ulp(1.0);
+
+    /*
+     * Recorrido lineal sobre las filas ya ordenadas con histogramas de clase acumulados. weights son
+     * los pesos de sorted (null = todas pesan 1) y nodeWeight el peso total del nodo, incluidas las
+     * filas con el atributo desconocido, que son nodeSize - sorted.length. Con más de
+     * INCREMENTAL_MIN_CLASSES clases una primera pasada descarta en O(1) los umbrales que quedan lejos
+     * del mejor y solo los demás se evalúan con los histogramas, recorriendo sus clases.
+     */
+    private double[] gainRatio(ColumnarDataset data, int attr, int[] sorted, double[] weights, int nodeSize, double nodeWeight) {
+        double[] column = data.column(attr);
+        int[] labels = data.labels();
+        int numClasses = data.numClasses();
 
-            
-            if (left.isEmpty() || right.isEmpty()) {
-                continue; 
+        double[] known = new double[numClasses];
+        for (int j = 0; j < sorted.length; j++) {
+            int label = labels[sorted[j]];
+            if (label >= 0) known[label] += weights == null ? 1 : weights[j];
+        }
+        double knownWeight = sorted.length == nodeSize ? nodeWeight : sum(weights, sorted.length);
+        double knownEntropy = SplitStats.entropy(known);
+        double[][] approximate = numClasses > INCREMENTAL_MIN_CLASSES
+                ? approximateGainRatios(column, labels, sorted, weights, known, knownEntropy, nodeWeight, knownWeight)
+                : null;
+        // Un umbral se descarta si ni con su error llega a lo que otro asegura restando el suyo
+        double cutoff = Double.NEGATIVE_INFINITY;
+        if (approximate != null) {
+            for (int k = 0; k < approximate[0].length; k++) {
+                cutoff = Math.max(cutoff, approximate[0][k] - approximate[1][k]);
             }
+        }
+
+        double[] leftCounts = new double[numClasses];
+        double[] rightCounts = new double[numClasses];
+
+        double bestThreshold = 0.0;
+        double bestGainRatio = -1;
+        int evaluated = 0;
+
+        int m = sorted.length;
+        int leftSize = 0;
+        double leftWeight = 0;
+        int i = 0;
+        while (i < m) {
+            double value = column[sorted[i]];
+            int next = i + 1;
+            while (next < m && column[sorted[next]] == value) next++;
+            if (next == m) break;
 
-            double infoGain = entropy(data, target)
-                    - (left.size() / (double) data.size()) * entropy(left, target)
-                    - (right.size() / (double) data.size()) * entropy(right, target);
+            double threshold = (value + column[sorted[next]]) / 2;
+            while (leftSize < m && column[sorted[leftSize]] <= threshold) {
+                double w = weights == null ? 1 : weights[leftSize];
+                int label = labels[sorted[leftSize]];
+                if (label >= 0) leftCounts[label] += w;
+                leftWeight += w;
+                leftSize++;
+            }
+            i = next;
 
-            double splitInfo = 0;
-            if (!left.isEmpty()) {
-                double p = left.size() / (double) data.size();
-                splitInfo -= p * Math.log(p) / Math.log(2);
+            if (leftSize < minSamplesLeaf || m - leftSize < minSamplesLeaf) {
+                continue;
             }
-            if (!right.isEmpty()) {
-                double p = right.size() / (double) data.size();
-                splitInfo -= p * Math.log(p) / Math.log(2);
+            if (approximate != null && approximate[0][evaluated] + approximate[1][evaluated] < cutoff) {
+                evaluated++;
+                continue;
             }
+            for (int c = 0; c < numClasses; c++) rightCounts[c] = known[c] - leftCounts[c];
+            evaluated++;
 
-            double ratio = (splitInfo == 0) ? 0 : infoGain / splitInfo; 
+            double ratio = SplitStats.gainRatio(knownEntropy, nodeWeight, knownWeight,
+                    leftWeight, leftCounts, knownWeight - leftWeight, rightCounts);
 
             if (ratio > bestGainRatio) {
                 bestGainRatio = ratio;
@@ -226,7 +1019,97 @@ public class C45DecisionTree {
             }
         }
 
-        return new double[]{bestGainRatio, bestThreshold};
+        // {gain ratio, umbral, umbrales evaluados}
+        return new double[]{bestGainRatio, bestThreshold, evaluated};
+    }
+
+    /*
+     * Gain ratio de cada umbral que evalúa gainRatio, en el mismo orden, con la suma de c·log2(c) de
+     * cada lado actualizada al mover cada fila en lugar de recorrer las clases. Devuelve {ratios,
+     * cotas de error}: el error de las sumas crece con las filas movidas desde la última suma exacta
+     * y con el peso del nodo, y al dividir por la información de la división se amplifica en los
+     * cortes que dejan muy poco peso a un lado.
+     */
+    private double[][] approximateGainRatios(double[] column, int[] labels, int[] sorted, double[] weights,
+                                             double[] known, double knownEntropy, double nodeWeight, double knownWeight) {
+        int numClasses = known.length;
+        double labeledWeight = 0;
+        for (double w : known) labeledWeight += w;
+        double[] leftCounts = new double[numClasses];
+        double leftLabeled = 0;
+        double leftSum = 0;
+        double rightSum = exactSum(known, leftCounts, false);
+        // Cota de |c·log2(c)| de cualquier clase y de las dos sumas
+        double scale = Math.max(1, SplitStats.xlog2x(labeledWeight));
+
+        int m = sorted.length;
+        double[] ratios = new double[m];
+        double[] errors = new double[m];
+        int evaluated = 0;
+        int leftSize = 0;
+        int moved = 0;
+        double leftWeight = 0;
+        int i = 0;
+        while (i < m) {
+            double value = column[sorted[i]];
+            int next = i + 1;
+            while (next < m && column[sorted[next]] == value) next++;
+            if (next == m) break;
+
+            double threshold = (value + column[sorted[next]]) / 2;
+            while (leftSize < m && column[sorted[leftSize]] <= threshold) {
+                double w = weights == null ? 1 : weights[leftSize];
+                int label = labels[sorted[leftSize]];
+                if (label >= 0) {
+                    double l = leftCounts[label];
+                    double r = known[label] - l;
+                    leftSum += SplitStats.xlog2x(l + w) - SplitStats.xlog2x(l);
+                    rightSum += SplitStats.xlog2x(r - w) - SplitStats.xlog2x(r);
+                    leftCounts[label] = l + w;
+                    leftLabeled += w;
+                    if (++moved == EXACT_SUM_ROWS) {
+                        leftSum = exactSum(known, leftCounts, true);
+                        rightSum = exactSum(known, leftCounts, false);
+                        moved = 0;
+                    }
+                }
+                leftWeight += w;
+                leftSize++;
+            }
+            i = next;
+
+            if (leftSize < minSamplesLeaf || m - leftSize < minSamplesLeaf) {
+                continue;
+            }
+            double rightWeight = knownWeight - leftWeight;
+            double rightLabeled = labeledWeight - leftLabeled;
+            double ratio = SplitStats.gainRatio(knownEntropy, nodeWeight, knownWeight,
+                    leftWeight, SplitStats.entropy(leftLabeled, leftSum),
+                    rightWeight, SplitStats.entropy(rightLabeled, rightSum));
+            double splitInfo = SplitStats.splitInfo(nodeWeight, knownWeight, leftWeight, rightWeight);
+            // El mismo error cubre el de las entropías que calcula gainRatio clase por clase
+            double sumError = SUM_ERROR * scale * (moved + numClasses + 1);
+            double gainError = (entropyError(leftWeight, leftLabeled, sumError)
+                    + entropyError(rightWeight, rightLabeled, sumError)) / nodeWeight;
+            ratios[evaluated] = ratio;
+            errors[evaluated] = splitInfo == 0 ? 0 : gainError / splitInfo + SUM_ERROR * Math.abs(ratio);
+            evaluated++;
+        }
+        return new double[][]{Arrays.copyOf(ratios, evaluated), Arrays.copyOf(errors, evaluated)};
+    }
+
+    // Suma de c·log2(c) del lado izquierdo (leftCounts) o del derecho (known - leftCounts)
+    private static double exactSum(double[] known, double[] leftCounts, boolean left) {
+        double sum = 0;
+        for (int c = 0; c < known.length; c++) {
+            sum += SplitStats.xlog2x(left ? leftCounts[c] : known[c] - leftCounts[c]);
+        }
+        return sum;
+    }
+
+    // Error en la ganancia de un lado de peso weight por el de su suma; la entropía pesa weight / labeled
+    private static double entropyError(double weight, double labeled, double sumError) {
+        return labeled > 0 ? weight * sumError / labeled : 0;
     }
 
     public void printTree() {
@@ -240,6 +1123,12 @@ public class C45DecisionTree {
 
         if (node.isLeaf()) {
             System.out.println(indent + "→ Clase: " + node.label);
+        } else if (node.isCategorical()) {
+            System.out.println(indent + "[ATRIBUTO: " + node.attribute + "]");
+            for (int v = 0; v < node.children.length; v++) {
+                System.out.println(indent + "Si es " + node.categories[v] + ":");
+                printTreeRec(node.children[v], nivel + 1);
+            }
         } else {
             System.out.println(indent + "[ATRIBUTO: " + node.attribute + " ≤ " + node.threshold + "]");
             System.out.println(indent + "Si es verdadero:");
@@ -249,6 +1138,15 @@ public class C45DecisionTree {
         }
     }
     
+    public CompiledTree compile() {
+        return CompiledTree.compile(root, classLabels);
+    }
+
+    // Guarda el árbol compilado en el formato binario de ModelIO; se recupera con ModelIO.load
+    public void save(java.nio.file.Path file) throws java.io.IOException {
+        ModelIO.save(compile(), file);
+    }
+
     public TreeNode getRoot() {
         return root;
     }
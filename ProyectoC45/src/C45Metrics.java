@@ -0,0 +1,220 @@
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Métricas acumuladas de carga, entrenamiento y predicción, y punto único para las advertencias.
+ *
+ * Apagado por defecto: con enabled en false los entrenamientos no crean TrainingRecorder y predict
+ * no mide el tiempo, así que el coste es una lectura volátil por llamada. Las advertencias se cuentan
+ * y se entregan a los listeners siempre.
+ */
+public final class C45Metrics implements C45MetricsMXBean {
+    private static final C45Metrics INSTANCE = new C45Metrics();
+    private static final int LATENCY_BUCKETS = 40;
+
+    private static volatile boolean enabled;
+
+    private final List<TrainingListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder trainings = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+    private final LongAdder splitSearchNanos = new LongAdder();
+    private final LongAdder partitionNanos = new LongAdder();
+    private final LongAdder nodesBuilt = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final LongAdder thresholdsEvaluated = new LongAdder();
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder bytesAllocated = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder rowsLoaded = new LongAdder();
+    private final LongAdder predictions = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder warnings = new LongAdder();
+    private volatile String lastWarning = "";
+
+    private C45Metrics() {
+    }
+
+    public static C45Metrics get() {
+        return INSTANCE;
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    // Publica las métricas en el MBeanServer de la plataforma como C45:type=Metrics
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("C45:type=Metrics"));
+        } catch (InstanceAlreadyExistsException e) {
+            // Ya registrado
+        } catch (JMException e) {
+            throw new IllegalStateException("No se pudieron registrar las métricas en JMX", e);
+        }
+    }
+
+    public void addListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+
+    public static void warning(String message) {
+        INSTANCE.warnings.increment();
+        INSTANCE.lastWarning = message;
+        for (TrainingListener listener : INSTANCE.listeners) listener.warning(message);
+    }
+
+    void loadFinished(String table, long rows, long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+        rowsLoaded.add(rows);
+        for (TrainingListener listener : listeners) listener.loadFinished(table, rows, nanos);
+    }
+
+    void trainingFinished(TrainingStats stats) {
+        trainings.increment();
+        trainingNanos.add(stats.totalNanos());
+        splitSearchNanos.add(stats.splitSearchNanos());
+        partitionNanos.add(stats.partitionNanos());
+        nodesBuilt.add(stats.nodes());
+        leaves.add(stats.leaves());
+        maxDepth.accumulateAndGet(stats.maxDepth(), Math::max);
+        thresholdsEvaluated.add(stats.totalThresholdsEvaluated());
+        rowsScanned.add(stats.rowsScanned());
+        if (stats.bytesAllocated() > 0) bytesAllocated.add(stats.bytesAllocated());
+        for (TrainingListener listener : listeners) listener.trainingFinished(stats);
+    }
+
+    void recordPrediction(long nanos) {
+        predictions.increment();
+        latency.record(nanos);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        C45Metrics.enabled = enabled;
+    }
+
+    @Override
+    public long getTrainings() {
+        return trainings.sum();
+    }
+
+    @Override
+    public long getTrainingMillis() {
+        return trainingNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getSplitSearchMillis() {
+        return splitSearchNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getPartitionMillis() {
+        return partitionNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getNodesBuilt() {
+        return nodesBuilt.sum();
+    }
+
+    @Override
+    public long getLeaves() {
+        return leaves.sum();
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public long getThresholdsEvaluated() {
+        return thresholdsEvaluated.sum();
+    }
+
+    @Override
+    public long getRowsScanned() {
+        return rowsScanned.sum();
+    }
+
+    @Override
+    public long getBytesAllocated() {
+        return bytesAllocated.sum();
+    }
+
+    @Override
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public long getLoadMillis() {
+        return loadNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public long getRowsLoaded() {
+        return rowsLoaded.sum();
+    }
+
+    @Override
+    public long getPredictions() {
+        return predictions.sum();
+    }
+
+    @Override
+    public long[] getPredictLatencyHistogram() {
+        return latency.powerOfTwoCounts(LATENCY_BUCKETS);
+    }
+
+    @Override
+    public double getPredictLatencyP50Micros() {
+        return latency.percentileMicros(0.50);
+    }
+
+    @Override
+    public double getPredictLatencyP99Micros() {
+        return latency.percentileMicros(0.99);
+    }
+
+    @Override
+    public long getWarnings() {
+        return warnings.sum();
+    }
+
+    @Override
+    public String getLastWarning() {
+        return lastWarning;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{trainings, trainingNanos, splitSearchNanos, partitionNanos, nodesBuilt,
+                leaves, thresholdsEvaluated, rowsScanned, bytesAllocated, loads, loadNanos, rowsLoaded, predictions, warnings}) {
+            adder.reset();
+        }
+        latency.reset();
+        maxDepth.set(0);
+        lastWarning = "";
+    }
+}
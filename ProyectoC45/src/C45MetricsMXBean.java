@@ -0,0 +1,47 @@
+// Vista JMX de C45Metrics (por ejemplo desde JConsole, bajo C45:type=Metrics)
+public interface C45MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getTrainings();
+
+    long getTrainingMillis();
+
+    long getSplitSearchMillis();
+
+    long getPartitionMillis();
+
+    long getNodesBuilt();
+
+    long getLeaves();
+
+    int getMaxDepth();
+
+    long getThresholdsEvaluated();
+
+    long getRowsScanned();
+
+    long getBytesAllocated();
+
+    long getLoads();
+
+    long getLoadMillis();
+
+    long getRowsLoaded();
+
+    long getPredictions();
+
+    // Conteos por potencia de dos: la posición i cuenta latencias en [2^i, 2^(i+1)) nanosegundos
+    long[] getPredictLatencyHistogram();
+
+    double getPredictLatencyP50Micros();
+
+    double getPredictLatencyP99Micros();
+
+    long getWarnings();
+
+    String getLastWarning();
+
+    void reset();
+}
@@ -0,0 +1,399 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * Bosque de C45DecisionTree: cada árbol se entrena sobre una muestra bootstrap y un subconjunto
+ * aleatorio de atributos, varios árboles a la vez en un ForkJoinPool.
+ *
+ * Las muestras son arreglos de índices sobre el mismo ColumnarDataset, nunca copias de filas. Cada
+ * atributo se ordena una sola vez para todo el dataset; un árbol obtiene el orden de su muestra en
+ * O(filas) repitiendo cada fila según las veces que salió en el bootstrap (IndexSort.expand).
+ */
+public class C45RandomForest {
+    public enum Voting {
+        MAJORITY,     // un voto por árbol para la clase de su hoja
+        PROBABILITY   // promedio de la distribución de clases de la hoja de cada árbol
+    }
+
+    private static final int BATCH_ROWS = 1024;
+
+    private int numTrees = 100;
+    private int maxAttributes = 0;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int histogramBins = 0;
+    private long seed = 42;
+    private Voting voting = Voting.MAJORITY;
+    private TrainingMonitor monitor;
+
+    private String[] attributes;
+    private String[][] categories;
+    private String[] classLabels;
+    private C45DecisionTree[] trees;
+    private Member[] members;
+
+    // Acumuladores de votos por hilo, reutilizados entre predicciones
+    private final ThreadLocal<double[]> voteBuffer = new ThreadLocal<>();
+    private final ThreadLocal<double[]> missingBuffer = new ThreadLocal<>();
+
+    public void setNumTrees(int numTrees) {
+        if (numTrees < 1) {
+            throw new IllegalArgumentException("El bosque necesita al menos un árbol");
+        }
+        this.numTrees = numTrees;
+    }
+
+    public int getNumTrees() {
+        return numTrees;
+    }
+
+    // Atributos sorteados por árbol; 0 = la mitad de los atributos, redondeando hacia arriba
+    public void setMaxAttributes(int maxAttributes) {
+        if (maxAttributes < 0) {
+            throw new IllegalArgumentException("El número de atributos por árbol no puede ser negativo");
+        }
+        this.maxAttributes = maxAttributes;
+    }
+
+    public int getMaxAttributes() {
+        return maxAttributes;
+    }
+
+    // Árboles que se entrenan a la vez; cada árbol se construye en un solo hilo
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Igual que C45DecisionTree.setHistogramBins; la cuantización se hace una vez para todo el bosque
+    public void setHistogramBins(int histogramBins) {
+        if (histogramBins != 0 && (histogramBins < 2 || histogramBins > Short.MAX_VALUE)) {
+            throw new IllegalArgumentException("El número de bins debe ser 0 o estar entre 2 y " + Short.MAX_VALUE);
+        }
+        this.histogramBins = histogramBins;
+    }
+
+    public int getHistogramBins() {
+        return histogramBins;
+    }
+
+    // Con la misma semilla y los mismos datos el bosque es idéntico, sin importar el paralelismo
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setVoting(Voting voting) {
+        this.voting = Objects.requireNonNull(voting);
+    }
+
+    public Voting getVoting() {
+        return voting;
+    }
+
+    // Se comparte entre todos los árboles: los contadores suman el trabajo de todo el bosque
+    public void setMonitor(TrainingMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public TrainingMonitor getMonitor() {
+        return monitor;
+    }
+
+    public void train(ColumnarDataset data) {
+        train(data, data.attributeNames());
+    }
+
+    public void train(ColumnarDataset data, List<String> attributes) {
+        int[] attrs = new int[attributes.size()];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = data.attributeIndex(attributes.get(i));
+            if (attrs[i] < 0) {
+                throw new IllegalArgumentException("Atributo no encontrado en el dataset: " + attributes.get(i));
+            }
+        }
+        if (data.numRows() == 0) {
+            throw new IllegalArgumentException("El dataset no tiene filas");
+        }
+        int n = data.numRows();
+        int perTree = maxAttributes > 0 ? Math.min(maxAttributes, attrs.length) : (attrs.length + 1) / 2;
+
+        String[] labels = new String[data.numClasses()];
+        for (int c = 0; c < labels.length; c++) labels[c] = data.classLabel(c);
+        String[][] dictionaries = new String[attrs.length][];
+        for (int i = 0; i < attrs.length; i++) dictionaries[i] = data.categories(attrs[i]);
+
+        // Semillas fijadas de antemano para que el resultado no dependa del orden de ejecución
+        SplittableRandom master = new SplittableRandom(seed);
+        long[] seeds = new long[numTrees];
+        for (int t = 0; t < numTrees; t++) seeds[t] = master.nextLong();
+
+        C45DecisionTree[] newTrees = new C45DecisionTree[numTrees];
+        Member[] newMembers = new Member[numTrees];
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                BinnedDataset binned = histogramBins > 0 ? BinnedDataset.of(data, attrs, histogramBins) : null;
+                int[][] sortedAll = binned == null ? presort(data, attrs) : null;
+
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < numTrees; t++) {
+                    int id = t;
+                    tasks.add(ForkJoinTask.adapt(() -> {
+                        SplittableRandom random = new SplittableRandom(seeds[id]);
+                        int[] multiplicity = new int[n];
+                        for (int i = 0; i < n; i++) multiplicity[random.nextInt(n)]++;
+
+                        int[] rows = new int[n];
+                        int k = 0;
+                        for (int r = 0; r < n; r++) {
+                            for (int m = multiplicity[r]; m > 0; m--) rows[k++] = r;
+                        }
+
+                        int[] chosen = choose(random, attrs.length, perTree);
+                        int[] treeAttrs = new int[chosen.length];
+                        int[][] sorted = binned == null ? new int[chosen.length][] : null;
+                        for (int i = 0; i < chosen.length; i++) {
+                            treeAttrs[i] = attrs[chosen[i]];
+                            if (sorted != null) sorted[i] = IndexSort.expand(sortedAll[chosen[i]], multiplicity);
+                        }
+
+                        C45DecisionTree tree = new C45DecisionTree();
+                        tree.setMonitor(monitor);
+                        tree.trainSample(data, treeAttrs, rows, sorted, binned);
+                        newTrees[id] = tree;
+                        newMembers[id] = new Member(tree.compile(), attributes, dictionaries, labels);
+                    }));
+                }
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        } finally {
+            pool.shutdown();
+        }
+
+        this.attributes = attributes.toArray(new String[0]);
+        this.categories = dictionaries;
+        this.classLabels = labels;
+        this.trees = newTrees;
+        this.members = newMembers;
+    }
+
+    private static int[][] presort(ColumnarDataset data, int[] attrs) {
+        int[] all = new int[data.numRows()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        int[][] sorted = new int[attrs.length][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < attrs.length; i++) {
+            int a = i;
+            tasks.add(ForkJoinTask.adapt(() -> sorted[a] = IndexSort.sortedKnownRows(data.column(attrs[a]), all)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return sorted;
+    }
+
+    // k posiciones distintas de 0..n-1 (Fisher-Yates parcial), en orden ascendente
+    private static int[] choose(SplittableRandom random, int n, int k) {
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i++) positions[i] = i;
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = positions[i];
+            positions[i] = positions[j];
+            positions[j] = tmp;
+        }
+        int[] chosen = Arrays.copyOf(positions, k);
+        Arrays.sort(chosen);
+        return chosen;
+    }
+
+    public int numTrees() {
+        return trees == null ? 0 : trees.length;
+    }
+
+    public C45DecisionTree getTree(int i) {
+        return trees[i];
+    }
+
+    // Orden de columnas esperado por predict(double[]) y predictProbabilities(double[])
+    public List<String> attributes() {
+        checkTrained();
+        return Collections.unmodifiableList(Arrays.asList(attributes));
+    }
+
+    // Categorías del atributo a de attributes() en orden de código, o null si es numérico
+    public String[] categories(int a) {
+        checkTrained();
+        return categories[a] == null ? null : categories[a].clone();
+    }
+
+    public String classLabel(int classId) {
+        return classId == CompiledTree.NO_CLASS ? "NoClassFound" : classLabels[classId];
+    }
+
+    public int numClassLabels() {
+        return classLabels.length;
+    }
+
+    public String predict(Map<String, Double> instance) {
+        checkTrained();
+        double[] row = new double[attributes.length];
+        for (int a = 0; a < row.length; a++) {
+            Double val = instance.get(attributes[a]);
+            row[a] = val == null ? Double.NaN : val;
+        }
+        return classLabel(predict(row));
+    }
+
+    // Clase con más votos (empates para el id menor), o NO_CLASS si ningún árbol vota
+    public int predict(double[] row) {
+        checkTrained();
+        double[] votes = buffer(classLabels.length);
+        Arrays.fill(votes, 0, classLabels.length, 0);
+        double[] scratch = scratch();
+        for (Member m : members) m.vote(row, votes, 0, scratch, voting);
+        return argmax(votes, 0, classLabels.length);
+    }
+
+    // Fracción de los votos de cada clase; todo ceros si ningún árbol vota
+    public double[] predictProbabilities(double[] row) {
+        checkTrained();
+        double[] votes = new double[classLabels.length];
+        double[] scratch = scratch();
+        for (Member m : members) m.vote(row, votes, 0, scratch, voting);
+        double total = 0;
+        for (double v : votes) total += v;
+        if (total > 0) {
+            for (int c = 0; c < votes.length; c++) votes[c] /= total;
+        }
+        return votes;
+    }
+
+    public void predictBatch(ColumnarDataset data, int[] out) {
+        predictBatch(data, 0, data.numRows(), out);
+    }
+
+    // Por bloques de filas, árbol por árbol, para que los arreglos de cada árbol sigan en caché
+    public void predictBatch(ColumnarDataset data, int from, int to, int[] out) {
+        checkTrained();
+        if (out.length < to - from) {
+            throw new IllegalArgumentException("El arreglo de salida es más pequeño que el lote");
+        }
+        double[][] columns = new double[attributes.length][];
+        for (int a = 0; a < attributes.length; a++) {
+            int idx = data.attributeIndex(attributes[a]);
+            if (idx < 0) {
+                throw new IllegalArgumentException("El dataset no contiene el atributo " + attributes[a]);
+            }
+            columns[a] = data.column(idx, categories[a]);
+        }
+
+        int numClasses = classLabels.length;
+        double[] votes = buffer(BATCH_ROWS * numClasses);
+        double[] scratch = scratch();
+        for (int start = from; start < to; start += BATCH_ROWS) {
+            int end = Math.min(to, start + BATCH_ROWS);
+            Arrays.fill(votes, 0, (end - start) * numClasses, 0);
+            for (Member m : members) {
+                for (int r = start; r < end; r++) m.vote(columns, r, votes, (r - start) * numClasses, scratch, voting);
+            }
+            for (int r = start; r < end; r++) {
+                out[r - from] = argmax(votes, (r - start) * numClasses, numClasses);
+            }
+        }
+    }
+
+    private double[] buffer(int size) {
+        double[] votes = voteBuffer.get();
+        if (votes == null || votes.length < size) {
+            votes = new double[size];
+            voteBuffer.set(votes);
+        }
+        return votes;
+    }
+
+    // Distribución de trabajo de CompiledTree.predict para las filas con valores desconocidos
+    private double[] scratch() {
+        double[] scratch = missingBuffer.get();
+        if (scratch == null || scratch.length < classLabels.length) {
+            scratch = new double[classLabels.length];
+            missingBuffer.set(scratch);
+        }
+        return scratch;
+    }
+
+    private static int argmax(double[] votes, int offset, int numClasses) {
+        int best = CompiledTree.NO_CLASS;
+        double bestVotes = 0;
+        for (int c = 0; c < numClasses; c++) {
+            if (votes[offset + c] > bestVotes) {
+                bestVotes = votes[offset + c];
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private void checkTrained() {
+        if (members == null) {
+            throw new IllegalStateException("El bosque no ha sido entrenado");
+        }
+    }
+
+    /*
+     * Un árbol compilado con los índices de atributo y de clase del bosque. Las hojas llevan la
+     * distribución de clases de las filas de su muestra que llegaron a ellas, para el voto por
+     * probabilidad; un valor desconocido se reparte entre las ramas como en CompiledTree.
+     */
+    private static final class Member {
+        final CompiledTree tree;
+
+        Member(CompiledTree compiled, List<String> attributes, String[][] categories, String[] classLabels) {
+            int[] feature = compiled.featureArray();
+            int[] leafClass = compiled.leafClassArray();
+
+            String[] treeAttributes = compiled.attributeArray();
+            for (int id = 0; id < feature.length; id++) {
+                if (feature[id] >= 0) feature[id] = attributes.indexOf(treeAttributes[feature[id]]);
+            }
+            // Las hojas sin etiqueta ("NaN", "N/A") no votan
+            Map<String, Integer> classIds = new HashMap<>();
+            for (int c = 0; c < classLabels.length; c++) classIds.put(classLabels[c], c);
+            String[] treeLabels = compiled.classLabelArray();
+            for (int id = 0; id < leafClass.length; id++) {
+                if (leafClass[id] >= 0) leafClass[id] = classIds.getOrDefault(treeLabels[leafClass[id]], CompiledTree.NO_CLASS);
+            }
+
+            tree = new CompiledTree(attributes.toArray(new String[0]), classLabels, feature, compiled.thresholdArray(),
+                    compiled.leftArray(), compiled.rightArray(), leafClass, categories,
+                    compiled.missingLeftArray(), compiled.distributionArray());
+        }
+
+        void vote(double[] row, double[] votes, int offset, double[] scratch, Voting voting) {
+            if (voting == Voting.MAJORITY) {
+                int c = tree.predict(row, scratch);
+                if (c >= 0) votes[offset + c]++;
+            } else {
+                tree.addDistribution(row, votes, offset);
+            }
+        }
+
+        void vote(double[][] columns, int r, double[] votes, int offset, double[] scratch, Voting voting) {
+            if (voting == Voting.MAJORITY) {
+                int c = tree.predict(columns, r, scratch);
+                if (c >= 0) votes[offset + c]++;
+            } else {
+                tree.addDistribution(columns, r, votes, offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+import java.util.*;
+
+public class ColumnarDataset {
+    private final String[] attributes;
+    private final double[][] columns;
+    private final int[] labels;
+    private final double[] classValues;
+    private final String[][] categories;   // diccionario por atributo; null en los numéricos
+    private final String[] classNames;     // diccionario de la clase; null si la clase es numérica
+    private final Map<String, Integer> attributeIndex = new HashMap<>();
+    private final QuantileSketch[] sketches;
+    private long[] rowIds;
+
+    public ColumnarDataset(String[] attributes, double[][] columns, int[] labels, double[] classValues) {
+        this(attributes, columns, labels, classValues, null, null, null);
+    }
+
+    /*
+     * Las columnas categóricas guardan el código 0..m-1 de cada valor en categories[a] (NaN si falta).
+     * Con classNames no nulo, classValues son los códigos 0..K-1 y classNames sus nombres.
+     */
+    public ColumnarDataset(String[] attributes, double[][] columns, int[] labels, double[] classValues,
+                           String[][] categories, String[] classNames) {
+        this(attributes, columns, labels, classValues, categories, classNames, null);
+    }
+
+    ColumnarDataset(String[] attributes, double[][] columns, int[] labels, double[] classValues,
+                    String[][] categories, String[] classNames, QuantileSketch[] sketches) {
+        if (attributes.length != columns.length) {
+            throw new IllegalArgumentException("Número de atributos y columnas distinto");
+        }
+        for (double[] column : columns) {
+            if (column.length != labels.length) {
+                throw new IllegalArgumentException("Todas las columnas deben tener " + labels.length + " filas");
+            }
+        }
+        if (categories != null && categories.length != attributes.length) {
+            throw new IllegalArgumentException("Se necesita un diccionario (o null) por atributo");
+        }
+        if (classNames != null && classNames.length != classValues.length) {
+            throw new IllegalArgumentException("Número de clases y de nombres de clase distinto");
+        }
+        this.attributes = attributes;
+        this.columns = columns;
+        this.labels = labels;
+        this.classValues = classValues;
+        this.categories = categories != null ? categories : new String[attributes.length][];
+        this.classNames = classNames;
+        this.sketches = sketches;
+        for (int a = 0; a < attributes.length; a++) {
+            attributeIndex.put(attributes[a], a);
+        }
+    }
+
+    public int numRows() {
+        return labels.length;
+    }
+
+    public int numAttributes() {
+        return attributes.length;
+    }
+
+    public int numClasses() {
+        return classValues.length;
+    }
+
+    public String attributeName(int a) {
+        return attributes[a];
+    }
+
+    public List<String> attributeNames() {
+        return Arrays.asList(attributes);
+    }
+
+    // -1 si el atributo no existe
+    public int attributeIndex(String name) {
+        Integer idx = attributeIndex.get(name);
+        return idx == null ? -1 : idx;
+    }
+
+    public double[] column(int a) {
+        return columns[a];
+    }
+
+    // Clase codificada 0..K-1, o -1 si la etiqueta falta
+    public int[] labels() {
+        return labels;
+    }
+
+    public double classValue(int classId) {
+        return classId < 0 ? Double.NaN : classValues[classId];
+    }
+
+    // Texto de la clase para las hojas: su nombre si la clase es categórica, si no el valor ("1.0"); "NaN" para -1
+    public String classLabel(int classId) {
+        if (classId < 0) return Double.toString(Double.NaN);
+        return classNames != null ? classNames[classId] : Double.toString(classValues[classId]);
+    }
+
+    // null si la clase es numérica
+    public String[] classNames() {
+        return classNames;
+    }
+
+    public boolean isCategorical(int a) {
+        return categories[a] != null;
+    }
+
+    // Categorías del atributo en orden de código, o null si es numérico
+    public String[] categories(int a) {
+        return categories[a];
+    }
+
+    /*
+     * La columna a con sus códigos traducidos al diccionario indicado (el de un modelo entrenado con
+     * otros datos); las categorías que el diccionario no conoce quedan en NaN. Si los diccionarios
+     * coinciden se devuelve la columna sin copiarla.
+     */
+    double[] column(int a, String[] dictionary) {
+        String[] own = categories[a];
+        if ((own == null) != (dictionary == null)) {
+            throw new IllegalArgumentException("El atributo " + attributes[a] + " es "
+                    + (own == null ? "numérico" : "categórico") + " en el dataset y "
+                    + (dictionary == null ? "numérico" : "categórico") + " en el modelo");
+        }
+        if (own == null || Arrays.equals(own, dictionary)) return columns[a];
+
+        Map<String, Integer> codes = new HashMap<>();
+        for (int c = 0; c < dictionary.length; c++) codes.put(dictionary[c], c);
+        double[] recode = new double[own.length];
+        for (int c = 0; c < own.length; c++) {
+            Integer code = codes.get(own[c]);
+            recode[c] = code == null ? Double.NaN : code;
+        }
+        double[] column = columns[a];
+        double[] result = new double[column.length];
+        for (int r = 0; r < column.length; r++) {
+            result[r] = Double.isNaN(column[r]) ? Double.NaN : recode[(int) column[r]];
+        }
+        return result;
+    }
+
+    // Identificador de origen de cada fila (columna Id de la tabla), o null si no se cargó
+    public long[] rowIds() {
+        return rowIds;
+    }
+
+    // Mayor Id cargado; Long.MIN_VALUE si no hay filas o no se cargaron los Id
+    public long maxRowId() {
+        long max = Long.MIN_VALUE;
+        if (rowIds != null) {
+            for (long id : rowIds) max = Math.max(max, id);
+        }
+        return max;
+    }
+
+    // Resumen de cuantiles construido durante la carga, o null si no se pidió
+    QuantileSketch quantileSketch(int a) {
+        return sketches == null ? null : sketches[a];
+    }
+
+    public static ColumnarDataset fromRows(List<Map<String, Double>> data, List<String> attributes, String target) {
+        Builder builder = new Builder(attributes, data.size());
+        double[] values = new double[attributes.size()];
+        for (Map<String, Double> row : data) {
+            for (int a = 0; a < values.length; a++) {
+                Double val = row.get(attributes.get(a));
+                values[a] = val == null ? Double.NaN : val;
+            }
+            Double label = row.get(target);
+            builder.addRow(values, label == null ? Double.NaN : label);
+        }
+        return builder.build();
+    }
+
+    static final int QUANTILE_SAMPLE_SIZE = 1 << 16;
+
+    public static class Builder {
+        private final String[] attributes;
+        private double[][] columns;
+        private double[] rawLabels;
+        private int size;
+        private QuantileSketch[] sketches;
+        private long[] rowIds;
+        private final Dictionary[] dictionaries;   // solo en las columnas escritas con setCategory
+        private Dictionary classDictionary;
+        private boolean numericLabels;
+
+        public Builder(List<String> attributes) {
+            this(attributes, 1024);
+        }
+
+        public Builder(List<String> attributes, int initialCapacity) {
+            this.attributes = attributes.toArray(new String[0]);
+            int capacity = Math.max(16, initialCapacity);
+            this.columns = new double[this.attributes.length][capacity];
+            this.rawLabels = new double[capacity];
+            this.dictionaries = new Dictionary[this.attributes.length];
+        }
+
+        // Mantiene un resumen de cuantiles por columna para el modo de histogramas (setHistogramBins)
+        public Builder trackQuantiles(int maxBins) {
+            sketches = new QuantileSketch[attributes.length];
+            for (int a = 0; a < sketches.length; a++) {
+                sketches[a] = new QuantileSketch(QUANTILE_SAMPLE_SIZE, maxBins);
+            }
+            return this;
+        }
+
+        public void addRow(double[] values, double label) {
+            ensureCapacity(size + 1);
+            for (int a = 0; a < columns.length; a++) {
+                columns[a][size] = values[a];
+                if (sketches != null) sketches[a].add(values[a]);
+            }
+            endRow(label);
+        }
+
+        // Escritura directa en la fila en curso; se confirma con endRow
+        public void set(int attribute, double value) {
+            ensureCapacity(size + 1);
+            columns[attribute][size] = value;
+            if (sketches != null) sketches[attribute].add(value);
+        }
+
+        // Valor de texto: la columna pasa a ser categórica. null o vacío cuenta como valor faltante
+        public void setCategory(int attribute, String value) {
+            ensureCapacity(size + 1);
+            if (dictionaries[attribute] == null) dictionaries[attribute] = new Dictionary();
+            columns[attribute][size] = dictionaries[attribute].code(value);
+        }
+
+        public void endRow(double label) {
+            if (!Double.isNaN(label)) {
+                if (classDictionary != null) {
+                    throw new IllegalArgumentException("La clase no puede mezclar valores numéricos y de texto");
+                }
+                numericLabels = true;
+            }
+            ensureCapacity(size + 1);
+            rawLabels[size] = label;
+            size++;
+        }
+
+        // Igual que endRow, guardando además el Id de origen de la fila
+        public void endRow(double label, long rowId) {
+            setRowId(rowId);
+            endRow(label);
+        }
+
+        // Etiqueta de texto: la clase pasa a ser categórica
+        public void endRow(String label) {
+            if (classDictionary == null) {
+                if (numericLabels) {
+                    throw new IllegalArgumentException("La clase no puede mezclar valores numéricos y de texto");
+                }
+                classDictionary = new Dictionary();
+            }
+            ensureCapacity(size + 1);
+            rawLabels[size] = classDictionary.code(label);
+            size++;
+        }
+
+        public void endRow(String label, long rowId) {
+            setRowId(rowId);
+            endRow(label);
+        }
+
+        private void setRowId(long rowId) {
+            ensureCapacity(size + 1);
+            if (rowIds == null) rowIds = new long[rawLabels.length];
+            rowIds[size] = rowId;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed <= rawLabels.length) return;
+            int capacity = Math.max(needed, rawLabels.length * 2);
+            for (int a = 0; a < columns.length; a++) {
+                columns[a] = Arrays.copyOf(columns[a], capacity);
+            }
+            rawLabels = Arrays.copyOf(rawLabels, capacity);
+            if (rowIds != null) rowIds = Arrays.copyOf(rowIds, capacity);
+        }
+
+        public ColumnarDataset build() {
+            double[][] trimmed = new double[columns.length][];
+            for (int a = 0; a < columns.length; a++) {
+                trimmed[a] = columns[a].length == size ? columns[a] : Arrays.copyOf(columns[a], size);
+            }
+
+            // Los diccionarios se ordenan alfabéticamente para que los códigos no dependan del orden de las filas
+            String[][] categories = new String[columns.length][];
+            for (int a = 0; a < columns.length; a++) {
+                if (dictionaries[a] == null) continue;
+                categories[a] = dictionaries[a].encode(trimmed[a], size);
+                if (sketches != null) sketches[a] = null; // Se calcula después a partir de la columna
+            }
+            double[] labelValues = rawLabels;
+            String[] classNames = null;
+            if (classDictionary != null) {
+                labelValues = Arrays.copyOf(rawLabels, size);
+                classNames = classDictionary.encode(labelValues, size);
+            }
+
+            double[] classValues = Arrays.stream(labelValues, 0, size)
+                    .filter(v -> !Double.isNaN(v))
+                    .distinct()
+                    .sorted()
+                    .toArray();
+
+            int[] labels = new int[size];
+            for (int i = 0; i < size; i++) {
+                labels[i] = Double.isNaN(labelValues[i]) ? -1 : Arrays.binarySearch(classValues, labelValues[i]);
+            }
+
+            ColumnarDataset data = new ColumnarDataset(attributes, trimmed, labels, classValues, categories,
+                    classNames, sketches);
+            if (rowIds != null) data.rowIds = Arrays.copyOf(rowIds, size);
+            return data;
+        }
+    }
+
+    // Códigos por orden de aparición mientras se carga; encode los deja en orden alfabético
+    static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        double code(String value) {
+            if (value == null) return Double.NaN;
+            Integer code = codes.get(value);
+            if (code == null) {
+                String trimmed = value.trim();
+                if (trimmed.isEmpty()) return Double.NaN;
+                code = codes.get(trimmed);
+                if (code == null) {
+                    code = values.size();
+                    values.add(trimmed);
+                    codes.put(trimmed, code);
+                }
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        /*
+         * Recodifica column[0 .. size) y devuelve el diccionario, o null si todos los valores eran
+         * números escritos como texto: en ese caso la columna queda con los números y es numérica.
+         */
+        String[] encode(double[] column, int size) {
+            double[] recode = recoding();
+            for (int r = 0; r < size; r++) {
+                if (!Double.isNaN(column[r])) column[r] = recode[(int) column[r]];
+            }
+            return sortedValues();
+        }
+
+        // Valor final de cada código de aparición: el número si todos lo eran, si no la posición alfabética
+        double[] recoding() {
+            double[] numbers = numbers();
+            if (numbers != null) return numbers;
+            String[] sorted = values.toArray(new String[0]);
+            Arrays.sort(sorted);
+            double[] recode = new double[sorted.length];
+            for (int c = 0; c < sorted.length; c++) recode[codes.get(sorted[c])] = c;
+            return recode;
+        }
+
+        // Los valores en orden alfabético, o null si todos eran números escritos como texto
+        String[] sortedValues() {
+            if (numbers() != null) return null;
+            String[] sorted = values.toArray(new String[0]);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        private double[] numbers() {
+            double[] numbers = new double[values.size()];
+            try {
+                for (int c = 0; c < numbers.length; c++) numbers[c] = Double.parseDouble(values.get(c));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return numbers;
+        }
+    }
+}
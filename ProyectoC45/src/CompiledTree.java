@@ -0,0 +1,482 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/*
+ * Árbol entrenado en arreglos paralelos, en preorden: el hijo izquierdo de un nodo interno es el nodo siguiente.
+ *
+ * Una división categórica de k ramas se compila como k - 1 nodos binarios sobre el código de la
+ * categoría (umbrales 0.5, 1.5, ...), una búsqueda binaria de log2(k) comparaciones; así la
+ * predicción es el mismo bucle para los dos tipos de atributo.
+ *
+ * Un valor desconocido (NaN) sale del bucle y baja por las dos ramas de cada nodo, repartido según
+ * missingLeft (la fracción del peso de entrenamiento que fue a la izquierda), sumando la distribución
+ * de clases de las hojas alcanzadas.
+ *
+ * Los arreglos de nodos son buffers: al compilar envuelven arreglos del heap y al cargar con ModelIO
+ * son vistas de solo lectura del archivo mapeado. Solo se leen con get absoluto, que no toca la
+ * posición del buffer, así que varios hilos pueden predecir con el mismo árbol.
+ */
+public final class CompiledTree {
+    public static final int NO_CLASS = -1;
+
+    private final String[] attributes;
+    private final String[] classLabels;
+    private final IntBuffer feature;      // índice de atributo, o -1 en hojas
+    private final DoubleBuffer threshold;
+    private final IntBuffer left;
+    private final IntBuffer right;
+    private final IntBuffer leafClass;    // índice en classLabels, o NO_CLASS
+    private final String[][] categories; // diccionario por atributo; null en los numéricos
+    private final DoubleBuffer missingLeft;  // fracción de un valor desconocido que va a la izquierda
+    private final double[][] distribution; // hojas: probabilidad de cada clase, o null (toda la masa a leafClass)
+
+    CompiledTree(String[] attributes, String[] classLabels, int[] feature, double[] threshold,
+                 int[] left, int[] right, int[] leafClass, String[][] categories,
+                 double[] missingLeft, double[][] distribution) {
+        this(attributes, classLabels, IntBuffer.wrap(feature), DoubleBuffer.wrap(threshold), IntBuffer.wrap(left),
+                IntBuffer.wrap(right), IntBuffer.wrap(leafClass), categories, DoubleBuffer.wrap(missingLeft), distribution);
+    }
+
+    // Buffers de nodos que empiezan en la posición 0 y tienen tantos elementos como nodos
+    CompiledTree(String[] attributes, String[] classLabels, IntBuffer feature, DoubleBuffer threshold,
+                 IntBuffer left, IntBuffer right, IntBuffer leafClass, String[][] categories,
+                 DoubleBuffer missingLeft, double[][] distribution) {
+        this.attributes = attributes;
+        this.missingLeft = missingLeft;
+        this.distribution = distribution;
+        this.categories = categories;
+        this.classLabels = classLabels;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.leafClass = leafClass;
+    }
+
+    public static CompiledTree compile(TreeNode root) {
+        return compile(root, null);
+    }
+
+    /*
+     * classLabels es el orden de clases de TreeNode.distribution (el del dataset de entrenamiento); los
+     * ids de clase del modelo empiezan por ellas. Con null se ignoran las distribuciones de las hojas.
+     */
+    public static CompiledTree compile(TreeNode root, String[] classLabels) {
+        if (root == null) {
+            throw new IllegalStateException("El árbol no ha sido entrenado");
+        }
+        List<String> attributes = new ArrayList<>();
+        Map<String, Integer> attributeIds = new HashMap<>();
+        List<String[]> categories = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        Map<String, Integer> labelIds = new HashMap<>();
+        if (classLabels != null) {
+            for (String label : classLabels) {
+                labelIds.putIfAbsent(label, labels.size());
+                labels.add(label);
+            }
+        }
+
+        int capacity = countNodes(root);
+        int[] feature = new int[capacity];
+        double[] threshold = new double[capacity];
+        int[] left = new int[capacity];
+        int[] right = new int[capacity];
+        int[] leafClass = new int[capacity];
+        double[] missingLeft = new double[capacity];
+        double[][] distribution = new double[capacity][];
+
+        // Preorden iterativo; la pila guarda el nodo y el índice del padre que espera el hijo derecho
+        Deque<Pending> stack = new ArrayDeque<>();
+        stack.push(new Pending(root, 0, -1, -1));
+        int next = 0;
+        while (!stack.isEmpty()) {
+            Pending item = stack.pop();
+            TreeNode node = item.node;
+            int id = next++;
+            if (item.parent >= 0) right[item.parent] = id;
+
+            if (node == null) {
+                // Rama categórica vacía
+                feature[id] = -1;
+                leafClass[id] = NO_CLASS;
+                continue;
+            }
+            if (node.isLeaf()) {
+                feature[id] = -1;
+                if (classLabels != null && node.classId >= 0 && node.classId < classLabels.length
+                        && classLabels[node.classId].equals(node.label)) {
+                    // Las clases del modelo ocupan los primeros ids, así que el id de la hoja sirve tal cual
+                    leafClass[id] = node.classId;
+                } else {
+                    leafClass[id] = labelIds.computeIfAbsent(node.label, l -> {
+                        labels.add(l);
+                        return labels.size() - 1;
+                    });
+                }
+                if (classLabels != null && node.distribution != null) {
+                    distribution[id] = normalize(node.distribution, classLabels.length);
+                }
+                continue;
+            }
+            feature[id] = attributeIds.computeIfAbsent(node.attribute, a -> {
+                attributes.add(a);
+                categories.add(node.categories);
+                return attributes.size() - 1;
+            });
+            leafClass[id] = NO_CLASS;
+
+            if (node.isCategorical()) {
+                // Códigos lo..hi de la rama en curso: mitad baja a la izquierda, mitad alta a la derecha
+                int lo = item.lo;
+                int hi = item.hi < 0 ? node.children.length - 1 : item.hi;
+                int mid = (lo + hi) >>> 1;
+                threshold[id] = mid + 0.5;
+                missingLeft[id] = fraction(weight(node.children, lo, mid), weight(node.children, mid + 1, hi));
+                stack.push(mid + 1 == hi ? new Pending(node.children[hi], 0, -1, id) : new Pending(node, mid + 1, hi, id));
+                left[id] = next;
+                stack.push(lo == mid ? new Pending(node.children[lo], 0, -1, -1) : new Pending(node, lo, mid, -1));
+                continue;
+            }
+            threshold[id] = node.threshold;
+            missingLeft[id] = fraction(weight(node.left), weight(node.right));
+
+            if (node.left == null || node.right == null) {
+                // Rama vacía: se compila como hoja sin clase, igual que predict devuelve "NoClassFound"
+                int empty = next++;
+                feature[empty] = -1;
+                leafClass[empty] = NO_CLASS;
+                if (node.left == null) left[id] = empty;
+                else right[id] = empty;
+            }
+            if (node.right != null) {
+                stack.push(new Pending(node.right, 0, -1, id));
+            }
+            if (node.left != null) {
+                left[id] = next;
+                stack.push(new Pending(node.left, 0, -1, -1));
+            }
+        }
+
+        return new CompiledTree(attributes.toArray(new String[0]), labels.toArray(new String[0]),
+                Arrays.copyOf(feature, next), Arrays.copyOf(threshold, next),
+                Arrays.copyOf(left, next), Arrays.copyOf(right, next), Arrays.copyOf(leafClass, next),
+                categories.toArray(new String[0][]), Arrays.copyOf(missingLeft, next), Arrays.copyOf(distribution, next));
+    }
+
+    private static double weight(TreeNode node) {
+        return node == null ? 0 : node.weight;
+    }
+
+    private static double weight(TreeNode[] children, int lo, int hi) {
+        double total = 0;
+        for (int v = lo; v <= hi; v++) total += weight(children[v]);
+        return total;
+    }
+
+    // Sin pesos (árboles armados a mano) un valor desconocido sigue la rama izquierda, como antes
+    private static double fraction(double leftWeight, double rightWeight) {
+        double total = leftWeight + rightWeight;
+        return total > 0 ? leftWeight / total : 1;
+    }
+
+    private static double[] normalize(double[] weights, int numClasses) {
+        double[] dist = new double[numClasses];
+        double total = 0;
+        for (int c = 0; c < numClasses && c < weights.length; c++) total += weights[c];
+        if (total > 0) {
+            for (int c = 0; c < numClasses && c < weights.length; c++) dist[c] = weights[c] / total;
+        }
+        return dist;
+    }
+
+    // Nodo por compilar; en una división categórica, lo..hi es el rango de códigos que falta repartir (hi = -1: todos)
+    private static final class Pending {
+        final TreeNode node;
+        final int lo;
+        final int hi;
+        final int parent;
+
+        Pending(TreeNode node, int lo, int hi, int parent) {
+            this.node = node;
+            this.lo = lo;
+            this.hi = hi;
+            this.parent = parent;
+        }
+    }
+
+    // Cuenta también un hueco por cada hijo nulo, y k - 1 nodos por cada división categórica de k ramas
+    private static int countNodes(TreeNode node) {
+        if (node == null) return 1;
+        if (node.isLeaf()) return 1;
+        if (node.isCategorical()) {
+            int count = node.children.length - 1;
+            for (TreeNode child : node.children) count += countNodes(child);
+            return count;
+        }
+        return 1 + countNodes(node.left) + countNodes(node.right);
+    }
+
+    public int numNodes() {
+        return feature.limit();
+    }
+
+    // Orden de columnas esperado por predict(double[]) y predictBatch(double[][], int[])
+    public List<String> attributes() {
+        return Collections.unmodifiableList(Arrays.asList(attributes));
+    }
+
+    // Categorías del atributo f de attributes() en orden de código, o null si es numérico
+    public String[] categories(int f) {
+        return categories[f] == null ? null : categories[f].clone();
+    }
+
+    public String classLabel(int classId) {
+        return classId == NO_CLASS ? "NoClassFound" : classLabels[classId];
+    }
+
+    public int numClassLabels() {
+        return classLabels.length;
+    }
+
+    // En los atributos categóricos row lleva el código de la categoría en categories(f)
+    public int predict(double[] row) {
+        return predict(row, null);
+    }
+
+    /*
+     * scratch recibe la distribución de las filas con valores desconocidos; necesita numClassLabels()
+     * posiciones y se limpia aquí. Con null se reserva solo si la fila tiene algún desconocido.
+     */
+    int predict(double[] row, double[] scratch) {
+        int node = 0;
+        while (feature.get(node) >= 0) {
+            double val = row[feature.get(node)];
+            if (Double.isNaN(val)) {
+                double[] dist = clear(scratch);
+                addDistribution(row, node, 1, dist, 0);
+                return SplitStats.majority(dist);
+            }
+            node = (val > threshold.get(node)) ? right.get(node) : left.get(node);
+        }
+        return leafClass.get(node);
+    }
+
+    // Probabilidad de cada clase de classLabel(0 .. numClassLabels() - 1); todo ceros si ninguna hoja tiene clase
+    public double[] predictDistribution(double[] row) {
+        double[] dist = new double[classLabels.length];
+        addDistribution(row, 0, 1, dist, 0);
+        double total = 0;
+        for (double p : dist) total += p;
+        if (total > 0) {
+            for (int c = 0; c < dist.length; c++) dist[c] /= total;
+        }
+        return dist;
+    }
+
+    public void predictBatch(double[][] rows, int[] out) {
+        if (out.length < rows.length) {
+            throw new IllegalArgumentException("El arreglo de salida es más pequeño que el lote");
+        }
+        double[] scratch = new double[classLabels.length];
+        for (int i = 0; i < rows.length; i++) {
+            out[i] = predict(rows[i], scratch);
+        }
+    }
+
+    public void predictBatch(ColumnarDataset data, int[] out) {
+        predictBatch(data, 0, data.numRows(), out);
+    }
+
+    // Escribe en out[0 .. to - from) la clase de las filas from .. to-1 del dataset
+    public void predictBatch(ColumnarDataset data, int from, int to, int[] out) {
+        if (out.length < to - from) {
+            throw new IllegalArgumentException("El arreglo de salida es más pequeño que el lote");
+        }
+        double[][] columns = bindColumns(data);
+        double[] scratch = new double[classLabels.length];
+        for (int r = from; r < to; r++) {
+            out[r - from] = predict(columns, r, scratch);
+        }
+    }
+
+    // columns en el orden de attributes(), como los devuelve bindColumns; scratch como en predict(double[], double[])
+    int predict(double[][] columns, int r, double[] scratch) {
+        int node = 0;
+        while (feature.get(node) >= 0) {
+            double val = columns[feature.get(node)][r];
+            if (Double.isNaN(val)) {
+                double[] dist = clear(scratch);
+                addDistribution(columns, r, node, 1, dist, 0);
+                return SplitStats.majority(dist);
+            }
+            node = (val > threshold.get(node)) ? right.get(node) : left.get(node);
+        }
+        return leafClass.get(node);
+    }
+
+    private double[] clear(double[] scratch) {
+        if (scratch == null) return new double[classLabels.length];
+        Arrays.fill(scratch, 0, classLabels.length, 0);
+        return scratch;
+    }
+
+    // Suma en out[offset ..] la distribución de clases de la fila, sin normalizar si hubo valores desconocidos
+    void addDistribution(double[] row, double[] out, int offset) {
+        addDistribution(row, 0, 1, out, offset);
+    }
+
+    void addDistribution(double[][] columns, int r, double[] out, int offset) {
+        addDistribution(columns, r, 0, 1, out, offset);
+    }
+
+    // Un valor desconocido reparte mass entre las dos ramas según missingLeft
+    private void addDistribution(double[] row, int node, double mass, double[] out, int offset) {
+        while (feature.get(node) >= 0) {
+            double val = row[feature.get(node)];
+            if (!Double.isNaN(val)) {
+                node = (val > threshold.get(node)) ? right.get(node) : left.get(node);
+                continue;
+            }
+            double p = missingLeft.get(node);
+            if (p > 0) addDistribution(row, left.get(node), mass * p, out, offset);
+            if (p >= 1) return;
+            mass *= 1 - p;
+            node = right.get(node);
+        }
+        addLeaf(node, mass, out, offset);
+    }
+
+    private void addDistribution(double[][] columns, int r, int node, double mass, double[] out, int offset) {
+        while (feature.get(node) >= 0) {
+            double val = columns[feature.get(node)][r];
+            if (!Double.isNaN(val)) {
+                node = (val > threshold.get(node)) ? right.get(node) : left.get(node);
+                continue;
+            }
+            double p = missingLeft.get(node);
+            if (p > 0) addDistribution(columns, r, left.get(node), mass * p, out, offset);
+            if (p >= 1) return;
+            mass *= 1 - p;
+            node = right.get(node);
+        }
+        addLeaf(node, mass, out, offset);
+    }
+
+    private void addLeaf(int node, double mass, double[] out, int offset) {
+        double[] dist = distribution[node];
+        if (dist != null) {
+            for (int c = 0; c < dist.length; c++) out[offset + c] += mass * dist[c];
+        } else if (leafClass.get(node) >= 0) {
+            out[offset + leafClass.get(node)] += mass;
+        }
+    }
+
+    // Los códigos categóricos del dataset se traducen al diccionario del modelo si no coinciden
+    double[][] bindColumns(ColumnarDataset data) {
+        double[][] columns = new double[attributes.length][];
+        for (int f = 0; f < attributes.length; f++) {
+            int idx = data.attributeIndex(attributes[f]);
+            if (idx < 0) {
+                throw new IllegalArgumentException("El dataset no contiene el atributo " + attributes[f]);
+            }
+            columns[f] = data.column(idx, categories[f]);
+        }
+        return columns;
+    }
+
+    // Reconstruye el grafo de TreeNode, por ejemplo para TreeVisualizer a partir de un modelo cargado
+    // Los pesos de los nodos salen relativos a la raíz (peso 1)
+    public TreeNode toTreeNode() {
+        return toTreeNode(0, 1);
+    }
+
+    private TreeNode toTreeNode(int id, double weight) {
+        TreeNode node = new TreeNode();
+        node.weight = weight;
+        if (feature.get(id) < 0) {
+            if (leafClass.get(id) == NO_CLASS) return null;
+            node.label = classLabels[leafClass.get(id)];
+            node.classId = leafClass.get(id);
+            if (distribution[id] != null) node.distribution = distribution[id].clone();
+            return node;
+        }
+        node.attribute = attributes[feature.get(id)];
+        String[] dictionary = categories[feature.get(id)];
+        if (dictionary != null) {
+            node.categories = dictionary;
+            node.children = new TreeNode[dictionary.length];
+            collectBranches(id, 0, dictionary.length - 1, node.children, weight);
+            return node;
+        }
+        node.threshold = threshold.get(id);
+        node.left = toTreeNode(left.get(id), weight * missingLeft.get(id));
+        node.right = toTreeNode(right.get(id), weight * (1 - missingLeft.get(id)));
+        return node;
+    }
+
+    // Deshace la búsqueda binaria de compile: los nodos del rango lo..hi vuelven a ser una sola división
+    private void collectBranches(int id, int lo, int hi, TreeNode[] children, double weight) {
+        if (lo == hi) {
+            children[lo] = toTreeNode(id, weight);
+            return;
+        }
+        int mid = (int) Math.floor(threshold.get(id));
+        collectBranches(left.get(id), lo, mid, children, weight * missingLeft.get(id));
+        collectBranches(right.get(id), mid + 1, hi, children, weight * (1 - missingLeft.get(id)));
+    }
+
+    // Copias de los arreglos de nodos, para ModelIO.save, BlockPredictor y los árboles del bosque
+    int[] featureArray() {
+        return copy(feature);
+    }
+
+    double[] thresholdArray() {
+        return copy(threshold);
+    }
+
+    int[] leftArray() {
+        return copy(left);
+    }
+
+    int[] rightArray() {
+        return copy(right);
+    }
+
+    int[] leafClassArray() {
+        return copy(leafClass);
+    }
+
+    private static int[] copy(IntBuffer buffer) {
+        int[] values = new int[buffer.limit()];
+        buffer.get(0, values);
+        return values;
+    }
+
+    private static double[] copy(DoubleBuffer buffer) {
+        double[] values = new double[buffer.limit()];
+        buffer.get(0, values);
+        return values;
+    }
+
+    String[] attributeArray() {
+        return attributes;
+    }
+
+    String[] classLabelArray() {
+        return classLabels;
+    }
+
+    String[][] categoryArray() {
+        return categories;
+    }
+
+    double[] missingLeftArray() {
+        return copy(missingLeft);
+    }
+
+    double[][] distributionArray() {
+        return distribution;
+    }
+}
@@ -0,0 +1,147 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Conexiones JDBC reutilizables, para no repetir el inicio de sesión TLS con el servidor en cada
+ * consulta. close() sobre una conexión prestada la devuelve al pool: se deshace la transacción abierta
+ * y se restaura autoCommit. Las sentencias siguen abiertas hasta que quien las creó las cierre. Se
+ * guardan como mucho maxIdle conexiones ociosas; las demás se cierran de verdad. Una conexión que
+ * estuvo ociosa más de VALIDATE_AFTER_NANOS se comprueba con isValid antes de volver a prestarse.
+ */
+final class ConnectionPool implements AutoCloseable {
+    private static final long VALIDATE_AFTER_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int VALIDATE_TIMEOUT_SECONDS = 5;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxIdle;
+    private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+    private final ArrayDeque<Long> idleSince = new ArrayDeque<>();
+    private boolean closed;
+
+    ConnectionPool(String url, String user, String password, int maxIdle) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxIdle = maxIdle;
+    }
+
+    Connection acquire() throws SQLException {
+        while (true) {
+            Connection conn;
+            long since;
+            synchronized (this) {
+                if (closed) {
+                    throw new SQLException("El pool de conexiones está cerrado");
+                }
+                conn = idle.pollLast();
+                since = conn == null ? 0 : idleSince.pollLast();
+            }
+            if (conn == null) {
+                return wrap(DriverManager.getConnection(url, user, password));
+            }
+            if (System.nanoTime() - since < VALIDATE_AFTER_NANOS || isValid(conn)) {
+                return wrap(conn);
+            }
+            closeQuietly(conn);
+        }
+    }
+
+    synchronized int idleConnections() {
+        return idle.size();
+    }
+
+    private void release(Connection conn) {
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            closeQuietly(conn);
+            return;
+        }
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle) {
+                idle.addLast(conn);
+                idleSince.addLast(System.nanoTime());
+                return;
+            }
+        }
+        closeQuietly(conn);
+    }
+
+    // Cierra las conexiones ociosas; las prestadas se cierran cuando se devuelvan
+    @Override
+    public void close() {
+        ArrayDeque<Connection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            idleSince.clear();
+        }
+        for (Connection conn : toClose) closeQuietly(conn);
+    }
+
+    private static boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATE_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar una conexión: " + e.getMessage());
+        }
+    }
+
+    // Vista de la conexión física para quien la pidió: close() la devuelve y después ya no se puede usar
+    private Connection wrap(Connection conn) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean returned;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!returned) {
+                            returned = true;
+                            release(conn);
+                        }
+                        return null;
+                    case "isClosed":
+                        return returned || conn.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "ConnectionPool[" + conn + "]";
+                    default:
+                        if (returned) {
+                            throw new SQLException("La conexión ya se devolvió al pool");
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+}
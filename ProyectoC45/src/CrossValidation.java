@@ -0,0 +1,348 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * Validación cruzada estratificada en k pliegues y búsqueda en rejilla sobre las opciones de
+ * C45DecisionTree. Cada configuración es un C45DecisionTree sin entrenar que solo aporta sus opciones.
+ *
+ * Los pliegues son una máscara sobre el mismo ColumnarDataset: cada atributo se ordena una sola vez
+ * para todo el dataset y el orden de las filas de entrenamiento de un pliegue se obtiene en O(filas)
+ * quitando las de prueba (IndexSort.expand), como hace C45RandomForest con sus muestras. Ese orden se
+ * comparte entre todas las configuraciones del pliegue. Las configuraciones que solo difieren en el
+ * factor de confianza se construyen una vez por pliegue y se podan por separado. Pliegues y
+ * configuraciones se entrenan a la vez en un ForkJoinPool; el resultado no depende del paralelismo.
+ */
+public class CrossValidation {
+    private int folds = 10;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long seed = 42;
+    private TrainingMonitor monitor;
+
+    public void setFolds(int folds) {
+        if (folds < 2) {
+            throw new IllegalArgumentException("La validación cruzada necesita al menos 2 pliegues");
+        }
+        this.folds = folds;
+    }
+
+    public int getFolds() {
+        return folds;
+    }
+
+    // Árboles que se entrenan a la vez
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("El paralelismo debe ser al menos 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Con la misma semilla y los mismos datos los pliegues son los mismos
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // Se comparte entre todos los árboles; cancelarlo detiene toda la evaluación
+    public void setMonitor(TrainingMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public TrainingMonitor getMonitor() {
+        return monitor;
+    }
+
+    public Result evaluate(ColumnarDataset data, List<String> attributes, C45DecisionTree options) {
+        return gridSearch(data, attributes, Collections.singletonList(options)).get(0);
+    }
+
+    // Un resultado por configuración, en el mismo orden; ver best
+    public List<Result> gridSearch(ColumnarDataset data, List<String> attributes, List<C45DecisionTree> configs) {
+        int[] attrs = new int[attributes.size()];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = data.attributeIndex(attributes.get(i));
+            if (attrs[i] < 0) {
+                throw new IllegalArgumentException("Atributo no encontrado en el dataset: " + attributes.get(i));
+            }
+        }
+        if (configs.isEmpty()) {
+            throw new IllegalArgumentException("No hay configuraciones que evaluar");
+        }
+        int n = data.numRows();
+        if (n < folds) {
+            throw new IllegalArgumentException("El dataset tiene menos filas que pliegues");
+        }
+
+        int numClasses = data.numClasses();
+        String[] labels = new String[numClasses];
+        for (int c = 0; c < numClasses; c++) labels[c] = data.classLabel(c);
+        int[] fold = assignFolds(data.labels(), numClasses);
+
+        // Configuraciones agrupadas por las opciones que cambian el árbol antes de podar
+        Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int c = 0; c < configs.size(); c++) {
+            groups.computeIfAbsent(growthKey(configs.get(c)), k -> new ArrayList<>()).add(c);
+        }
+
+        int[][][][] confusion = new int[configs.size()][folds][][];
+        long[][] trainNanos = new long[configs.size()][folds];
+        long[][] testNanos = new long[configs.size()][folds];
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                boolean exact = false;
+                Map<Integer, BinnedDataset> binned = new HashMap<>();
+                for (C45DecisionTree config : configs) {
+                    if (config.getHistogramBins() == 0) exact = true;
+                    else binned.computeIfAbsent(config.getHistogramBins(), b -> BinnedDataset.of(data, attrs, b));
+                }
+                int[][] sortedAll = exact ? presort(data, attrs) : null;
+
+                List<ForkJoinTask<?>> foldTasks = new ArrayList<>();
+                for (int f = 0; f < folds; f++) {
+                    int current = f;
+                    foldTasks.add(ForkJoinTask.adapt(() -> {
+                        // Máscara del pliegue: 1 = fila de entrenamiento
+                        int[] inTraining = new int[n];
+                        int trainSize = 0;
+                        for (int r = 0; r < n; r++) {
+                            if (fold[r] != current) {
+                                inTraining[r] = 1;
+                                trainSize++;
+                            }
+                        }
+                        int[] rows = new int[trainSize];
+                        int[] test = new int[n - trainSize];
+                        int k = 0;
+                        int t = 0;
+                        for (int r = 0; r < n; r++) {
+                            if (inTraining[r] == 1) rows[k++] = r;
+                            else test[t++] = r;
+                        }
+                        int[][] sorted = null;
+                        if (sortedAll != null) {
+                            sorted = new int[attrs.length][];
+                            for (int i = 0; i < attrs.length; i++) sorted[i] = IndexSort.expand(sortedAll[i], inTraining);
+                        }
+
+                        int[][] foldSorted = sorted;
+                        List<ForkJoinTask<?>> groupTasks = new ArrayList<>();
+                        for (List<Integer> group : groups.values()) {
+                            groupTasks.add(ForkJoinTask.adapt(() -> {
+                                C45DecisionTree first = configs.get(group.get(0));
+                                long start = System.nanoTime();
+                                C45DecisionTree grown = first.copyOptions();
+                                grown.setConfidenceFactor(0);
+                                grown.setMonitor(monitor);
+                                grown.trainSample(data, attrs, rows, first.getHistogramBins() > 0 ? null : foldSorted,
+                                        binned.get(first.getHistogramBins()));
+                                long growNanos = System.nanoTime() - start;
+
+                                for (int c : group) {
+                                    double cf = configs.get(c).getConfidenceFactor();
+                                    long pruneStart = System.nanoTime();
+                                    C45DecisionTree tree = cf > 0 ? grown.prunedCopy(cf) : grown;
+                                    CompiledTree compiled = tree.compile();
+                                    long testStart = System.nanoTime();
+                                    confusion[c][current] = test(compiled, data, test, numClasses);
+                                    testNanos[c][current] = System.nanoTime() - testStart;
+                                    trainNanos[c][current] = growNanos + (testStart - pruneStart);
+                                }
+                            }));
+                        }
+                        ForkJoinTask.invokeAll(groupTasks);
+                    }));
+                }
+                ForkJoinTask.invokeAll(foldTasks);
+            }));
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int c = 0; c < configs.size(); c++) {
+            results.add(new Result(configs.get(c), labels, confusion[c], trainNanos[c], testNanos[c]));
+        }
+        return results;
+    }
+
+    // Resultado con mayor precisión media; en empate, el primero
+    public static Result best(List<Result> results) {
+        Result best = null;
+        for (Result r : results) {
+            if (best == null || r.accuracy() > best.accuracy()) best = r;
+        }
+        return best;
+    }
+
+    /*
+     * Reparto estratificado: las filas de cada clase se barajan con la semilla y se reparten en turno
+     * entre los pliegues, siguiendo la cuenta de una clase a la siguiente, de modo que cada pliegue
+     * tiene casi la misma proporción de cada clase. Las filas sin etiqueta también se reparten (entrenan
+     * pero no se puntúan).
+     */
+    private int[] assignFolds(int[] labels, int numClasses) {
+        int n = labels.length;
+        int[] start = new int[numClasses + 2];
+        for (int label : labels) start[label + 2]++;
+        for (int c = 1; c < start.length; c++) start[c] += start[c - 1];
+        // Filas agrupadas por clase, las sin etiqueta (-1) primero
+        int[] byClass = new int[n];
+        int[] next = Arrays.copyOf(start, numClasses + 1);
+        for (int r = 0; r < n; r++) byClass[next[labels[r] + 1]++] = r;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] fold = new int[n];
+        int position = 0;
+        for (int c = 0; c <= numClasses; c++) {
+            int from = start[c];
+            int to = start[c + 1];
+            for (int i = to - 1; i > from; i--) {
+                int j = from + random.nextInt(i - from + 1);
+                int tmp = byClass[i];
+                byClass[i] = byClass[j];
+                byClass[j] = tmp;
+            }
+            for (int i = from; i < to; i++) fold[byClass[i]] = position++ % folds;
+        }
+        return fold;
+    }
+
+    private static List<Object> growthKey(C45DecisionTree config) {
+        return Arrays.asList(config.getHistogramBins(), config.getMaxDepth(), config.getMinSamplesSplit(),
+                config.getMinSamplesLeaf(), config.getMinGainRatio(), config.isReuseNumericAttributes());
+    }
+
+    private static int[][] presort(ColumnarDataset data, int[] attrs) {
+        int[] all = new int[data.numRows()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        int[][] sorted = new int[attrs.length][];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < attrs.length; i++) {
+            int a = i;
+            tasks.add(ForkJoinTask.adapt(() -> sorted[a] = IndexSort.sortedKnownRows(data.column(attrs[a]), all)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        return sorted;
+    }
+
+    // Matriz [clase real][clase predicha] de las filas de prueba con etiqueta; la última columna es "sin clase"
+    private static int[][] test(CompiledTree compiled, ColumnarDataset data, int[] test, int numClasses) {
+        double[][] columns = compiled.bindColumns(data);
+        int[] labels = data.labels();
+        int[][] confusion = new int[numClasses][numClasses + 1];
+        double[] scratch = new double[compiled.numClassLabels()];
+        for (int r : test) {
+            if (labels[r] < 0) continue;
+            int predicted = compiled.predict(columns, r, scratch);
+            confusion[labels[r]][predicted >= 0 && predicted < numClasses ? predicted : numClasses]++;
+        }
+        return confusion;
+    }
+
+    // Precisión, matriz de confusión y tiempos de una configuración, en total y por pliegue
+    public static final class Result {
+        private final C45DecisionTree config;
+        private final String[] classLabels;
+        private final int[][][] foldConfusion;
+        private final long[] trainNanos;
+        private final long[] testNanos;
+
+        Result(C45DecisionTree config, String[] classLabels, int[][][] foldConfusion, long[] trainNanos, long[] testNanos) {
+            this.config = config;
+            this.classLabels = classLabels;
+            this.foldConfusion = foldConfusion;
+            this.trainNanos = trainNanos;
+            this.testNanos = testNanos;
+        }
+
+        // La configuración evaluada, tal como se pasó a gridSearch
+        public C45DecisionTree config() {
+            return config;
+        }
+
+        public int folds() {
+            return foldConfusion.length;
+        }
+
+        public List<String> classLabels() {
+            return Collections.unmodifiableList(Arrays.asList(classLabels));
+        }
+
+        // Aciertos sobre todas las filas de prueba con etiqueta
+        public double accuracy() {
+            return accuracy(confusionMatrix());
+        }
+
+        public double foldAccuracy(int fold) {
+            return accuracy(foldConfusion[fold]);
+        }
+
+        // Desviación estándar de la precisión entre pliegues
+        public double accuracyStdDev() {
+            double mean = 0;
+            for (int f = 0; f < folds(); f++) mean += foldAccuracy(f);
+            mean /= folds();
+            double variance = 0;
+            for (int f = 0; f < folds(); f++) variance += (foldAccuracy(f) - mean) * (foldAccuracy(f) - mean);
+            return Math.sqrt(variance / (folds() - 1));
+        }
+
+        /*
+         * confusion[real][predicha] sumada sobre los pliegues, en el orden de classLabels(); la columna
+         * extra del final cuenta las filas que cayeron en una hoja sin clase.
+         */
+        public int[][] confusionMatrix() {
+            int numClasses = classLabels.length;
+            int[][] total = new int[numClasses][numClasses + 1];
+            for (int[][] confusion : foldConfusion) {
+                for (int c = 0; c < numClasses; c++) {
+                    for (int p = 0; p <= numClasses; p++) total[c][p] += confusion[c][p];
+                }
+            }
+            return total;
+        }
+
+        public int[][] foldConfusionMatrix(int fold) {
+            int[][] copy = new int[foldConfusion[fold].length][];
+            for (int c = 0; c < copy.length; c++) copy[c] = foldConfusion[fold][c].clone();
+            return copy;
+        }
+
+        // Construcción del árbol (compartida con las configuraciones que solo cambian la poda) más su poda
+        public long foldTrainNanos(int fold) {
+            return trainNanos[fold];
+        }
+
+        public long foldTestNanos(int fold) {
+            return testNanos[fold];
+        }
+
+        private static double accuracy(int[][] confusion) {
+            long correct = 0;
+            long total = 0;
+            for (int c = 0; c < confusion.length; c++) {
+                correct += confusion[c][c];
+                for (int count : confusion[c]) total += count;
+            }
+            return total == 0 ? 0 : correct / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("profundidad=%d minSplit=%d minHoja=%d minGanancia=%s confianza=%s bins=%d reutilizar=%b: %.4f ± %.4f",
+                    config.getMaxDepth(), config.getMinSamplesSplit(), config.getMinSamplesLeaf(), config.getMinGainRatio(),
+                    config.getConfidenceFactor(), config.getHistogramBins(), config.isReuseNumericAttributes(),
+                    accuracy(), accuracyStdDev());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+ * Caché LRU de datasets ya decodificados. Una entrada se identifica por tabla, columna objetivo,
+ * columnas proyectadas y un token de cambio (SQLLoader.changeToken); sirve cualquier petición de la
+ * misma tabla, objetivo y token cuyos atributos estén contenidos en los de la entrada, porque
+ * C45DecisionTree.train acepta un subconjunto de los atributos del dataset.
+ *
+ * Con un directorio, cada entrada se guarda también en disco (DatasetIO) y sobrevive a la expulsión
+ * de memoria y al reinicio de la aplicación.
+ */
+public final class DatasetCache {
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<Key, ColumnarDataset> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Path> disk = new HashMap<>();
+    private long bytes;
+
+    // directory puede ser null para una caché solo en memoria
+    public DatasetCache(long maxBytes, Path directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null) {
+            indexDirectory();
+        }
+    }
+
+    public synchronized ColumnarDataset get(String table, List<String> attributes, String target, String changeToken) {
+        for (Map.Entry<Key, ColumnarDataset> entry : memory.entrySet()) {
+            if (entry.getKey().covers(table, attributes, target, changeToken)) {
+                return memory.get(entry.getKey()); // get() actualiza el orden LRU
+            }
+        }
+        for (Map.Entry<Key, Path> entry : disk.entrySet()) {
+            if (entry.getKey().covers(table, attributes, target, changeToken)) {
+                try {
+                    ColumnarDataset data = DatasetIO.load(entry.getValue());
+                    putInMemory(entry.getKey(), data);
+                    return data;
+                } catch (IOException e) {
+                    C45Metrics.warning("No se pudo leer " + entry.getValue() + ": " + e.getMessage());
+                    disk.remove(entry.getKey());
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized void put(String table, String target, String changeToken, ColumnarDataset data) {
+        Key key = new Key(table, target, changeToken, data.attributeNames());
+        removeStale(key);
+        putInMemory(key, data);
+
+        if (directory != null) {
+            Path file = directory.resolve(key.fileName());
+            try {
+                DatasetIO.save(data, key.tag(), file);
+                disk.values().remove(file); // Colisión del nombre de archivo: la entrada anterior ya no es válida
+                disk.put(key, file);
+            } catch (IOException e) {
+                C45Metrics.warning("No se pudo guardar el dataset en " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        bytes = 0;
+    }
+
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    // Una entrada mayor que el límite no se guarda en memoria (si hay directorio sigue en disco)
+    private void putInMemory(Key key, ColumnarDataset data) {
+        ColumnarDataset previous = memory.remove(key);
+        if (previous != null) bytes -= sizeOf(previous);
+        long size = sizeOf(data);
+        if (size > maxBytes) return;
+        memory.put(key, data);
+        bytes += size;
+
+        Iterator<Map.Entry<Key, ColumnarDataset>> eldest = memory.entrySet().iterator();
+        while (bytes > maxBytes && memory.size() > 1) {
+            Map.Entry<Key, ColumnarDataset> entry = eldest.next();
+            bytes -= sizeOf(entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    // Un token nuevo para la misma tabla y objetivo invalida las entradas anteriores
+    private void removeStale(Key key) {
+        memory.entrySet().removeIf(e -> {
+            boolean stale = e.getKey().sameSource(key) && !e.getKey().changeToken.equals(key.changeToken);
+            if (stale) bytes -= sizeOf(e.getValue());
+            return stale;
+        });
+        disk.entrySet().removeIf(e -> {
+            boolean stale = e.getKey().sameSource(key) && !e.getKey().changeToken.equals(key.changeToken);
+            if (stale) {
+                try {
+                    Files.deleteIfExists(e.getValue());
+                } catch (IOException ex) {
+                    C45Metrics.warning("No se pudo borrar " + e.getValue() + ": " + ex.getMessage());
+                }
+            }
+            return stale;
+        });
+    }
+
+    // Columnas, clases, Ids de fila y diccionarios; cada String cuenta unos 40 bytes más sus caracteres
+    static long sizeOf(ColumnarDataset data) {
+        long size = (long) data.numRows() * (8L * data.numAttributes() + 4);
+        if (data.rowIds() != null) size += 8L * data.rowIds().length;
+        for (int a = 0; a < data.numAttributes(); a++) size += sizeOf(data.categories(a));
+        return size + sizeOf(data.classNames());
+    }
+
+    private static long sizeOf(String[] dictionary) {
+        if (dictionary == null) return 0;
+        long size = 16 + 8L * dictionary.length;
+        for (String value : dictionary) size += 40 + 2L * value.length();
+        return size;
+    }
+
+    private void indexDirectory() {
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.c45data")) {
+                for (Path file : files) {
+                    try {
+                        Key key = Key.parse(DatasetIO.readTag(file));
+                        if (key != null) disk.put(key, file);
+                    } catch (IOException e) {
+                        C45Metrics.warning("Se ignora el archivo de caché " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            C45Metrics.warning("No se pudo leer el directorio de caché " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static final class Key {
+        final String table;
+        final String target;
+        final String changeToken;
+        final List<String> attributes;
+
+        Key(String table, String target, String changeToken, List<String> attributes) {
+            this.table = table;
+            this.target = target;
+            this.changeToken = changeToken;
+            this.attributes = List.copyOf(attributes);
+        }
+
+        boolean sameSource(Key other) {
+            return table.equalsIgnoreCase(other.table) && target.equals(other.target);
+        }
+
+        boolean covers(String table, List<String> attributes, String target, String changeToken) {
+            return this.table.equalsIgnoreCase(table) && this.target.equals(target)
+                    && this.changeToken.equals(changeToken) && this.attributes.containsAll(attributes);
+        }
+
+        // Se guarda dentro del archivo para reconstruir la clave al indexar el directorio
+        String tag() {
+            StringJoiner tag = new StringJoiner("\n");
+            tag.add(table).add(target).add(changeToken);
+            attributes.forEach(tag::add);
+            return tag.toString();
+        }
+
+        static Key parse(String tag) {
+            String[] parts = tag.split("\n", -1);
+            if (parts.length < 3) return null;
+            return new Key(parts[0], parts[1], parts[2], Arrays.asList(parts).subList(3, parts.length));
+        }
+
+        String fileName() {
+            return String.format("%08x.c45data", tag().hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return table.equals(k.table) && target.equals(k.target)
+                    && changeToken.equals(k.changeToken) && attributes.equals(k.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(table, target, changeToken, attributes);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Formato binario de un ColumnarDataset (big-endian), usado por DatasetCache:
+ *
+ *   int magic "C45D", int versión, int filas, int atributos, int clases, int reservado
+ *   double[clases] valores de clase
+ *   int[filas] etiquetas, con 4 bytes de relleno si filas es impar
+ *   double[filas] por cada atributo
+ *   int longitud + bytes UTF-8 de la etiqueta del archivo y de cada nombre de atributo
+ *   por cada atributo y luego para la clase: int categorías (-1 si es numérico) + sus nombres igual
+ *
+ * Cada región se mapea por separado, así una columna puede acercarse a 2 GB.
+ */
+final class DatasetIO {
+    private static final int MAGIC = 0x43343544; // "C45D"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 24;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private DatasetIO() {
+    }
+
+    static void save(ColumnarDataset data, String tag, Path file) throws IOException {
+        int rows = data.numRows();
+        int numAttributes = data.numAttributes();
+        int numClasses = data.numClasses();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+            chunk.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(numAttributes).putInt(numClasses).putInt(0);
+            for (int c = 0; c < numClasses; c++) {
+                chunk.putDouble(data.classValue(c));
+            }
+            flush(channel, chunk);
+
+            int[] labels = data.labels();
+            for (int from = 0; from < rows; from += CHUNK_BYTES / 4) {
+                int n = Math.min(CHUNK_BYTES / 4, rows - from);
+                chunk.asIntBuffer().put(labels, from, n);
+                chunk.position(4 * n);
+                flush(channel, chunk);
+            }
+            if (rows % 2 == 1) {
+                chunk.putInt(0);
+                flush(channel, chunk);
+            }
+
+            for (int a = 0; a < numAttributes; a++) {
+                double[] column = data.column(a);
+                for (int from = 0; from < rows; from += CHUNK_BYTES / 8) {
+                    int n = Math.min(CHUNK_BYTES / 8, rows - from);
+                    chunk.asDoubleBuffer().put(column, from, n);
+                    chunk.position(8 * n);
+                    flush(channel, chunk);
+                }
+            }
+
+            String[] strings = new String[numAttributes + 1];
+            strings[0] = tag;
+            for (int a = 0; a < numAttributes; a++) strings[a + 1] = data.attributeName(a);
+            byte[][][] dictionaries = new byte[numAttributes + 1][][];
+            long tailBytes = 0;
+            for (int a = 0; a <= numAttributes; a++) {
+                String[] dictionary = a < numAttributes ? data.categories(a) : data.classNames();
+                dictionaries[a] = dictionary == null ? null : ModelIO.encode(dictionary);
+                tailBytes += 4 + (dictionaries[a] == null ? 0 : ModelIO.tableBytes(dictionaries[a]));
+            }
+            byte[][] table = ModelIO.encode(strings);
+            ByteBuffer tail = ByteBuffer.allocate(Math.toIntExact(ModelIO.tableBytes(table) + tailBytes));
+            ModelIO.putTable(tail, table);
+            for (byte[][] dictionary : dictionaries) {
+                tail.putInt(dictionary == null ? -1 : dictionary.length);
+                if (dictionary != null) ModelIO.putTable(tail, dictionary);
+            }
+            tail.flip();
+            while (tail.hasRemaining()) channel.write(tail);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) channel.write(chunk);
+        chunk.clear();
+    }
+
+    // Lee solo la cabecera y la etiqueta; sirve para indexar los archivos de la caché sin cargarlos
+    static String readTag(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(channel, file);
+            ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, header.stringsOffset(),
+                    channel.size() - header.stringsOffset());
+            return ModelIO.getTable(tail, 1, file)[0];
+        }
+    }
+
+    static ColumnarDataset load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(channel, file);
+            int rows = header.rows;
+
+            double[] classValues = new double[header.numClasses];
+            map(channel, HEADER_BYTES, 8L * classValues.length).asDoubleBuffer().get(classValues);
+
+            int[] labels = new int[rows];
+            IntBuffer labelBuffer = map(channel, header.labelsOffset(), 4L * rows).asIntBuffer();
+            labelBuffer.get(labels);
+            for (int label : labels) {
+                if (label < -1 || label >= classValues.length) {
+                    throw new IOException("Etiqueta fuera de rango en " + file);
+                }
+            }
+
+            double[][] columns = new double[header.numAttributes][rows];
+            for (int a = 0; a < columns.length; a++) {
+                DoubleBuffer column = map(channel, header.columnOffset(a), 8L * rows).asDoubleBuffer();
+                column.get(columns[a]);
+            }
+
+            ByteBuffer tail = map(channel, header.stringsOffset(), channel.size() - header.stringsOffset());
+            String[] strings = ModelIO.getTable(tail, header.numAttributes + 1, file);
+            String[] attributes = java.util.Arrays.copyOfRange(strings, 1, strings.length);
+            String[][] dictionaries = new String[header.numAttributes + 1][];
+            for (int a = 0; a < dictionaries.length; a++) {
+                if (tail.remaining() < 4) throw new IOException("Archivo truncado: " + file);
+                int count = tail.getInt();
+                if (count < -1) throw new IOException("Diccionario inválido en " + file);
+                if (count >= 0) dictionaries[a] = ModelIO.getTable(tail, count, file);
+            }
+            for (int a = 0; a < columns.length; a++) {
+                if (dictionaries[a] == null) continue;
+                for (double v : columns[a]) {
+                    if (!Double.isNaN(v) && (v < 0 || v >= dictionaries[a].length || v != Math.rint(v))) {
+                        throw new IOException("Código de categoría fuera de rango en " + file);
+                    }
+                }
+            }
+            try {
+                return new ColumnarDataset(attributes, columns, labels, classValues,
+                        java.util.Arrays.copyOf(dictionaries, header.numAttributes), dictionaries[header.numAttributes]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Archivo inconsistente " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (offset + length > channel.size()) {
+            throw new IOException("Archivo truncado");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static Header readHeader(FileChannel channel, Path file) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            throw new IOException("El archivo " + file + " no es un dataset C4.5");
+        }
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("El archivo " + file + " no es un dataset C4.5");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Versión de dataset no soportada: " + version);
+        }
+        Header header = new Header(buffer.getInt(), buffer.getInt(), buffer.getInt());
+        if (header.rows < 0 || header.numAttributes < 0 || header.numClasses < 0
+                || header.stringsOffset() > channel.size()) {
+            throw new IOException("Archivo truncado: " + file);
+        }
+        return header;
+    }
+
+    private static final class Header {
+        final int rows;
+        final int numAttributes;
+        final int numClasses;
+
+        Header(int rows, int numAttributes, int numClasses) {
+            this.rows = rows;
+            this.numAttributes = numAttributes;
+            this.numClasses = numClasses;
+        }
+
+        long labelsOffset() {
+            return HEADER_BYTES + 8L * numClasses;
+        }
+
+        long columnOffset(int a) {
+            return labelsOffset() + 4L * (rows + rows % 2) + 8L * rows * a;
+        }
+
+        long stringsOffset() {
+            return columnOffset(numAttributes);
+        }
+    }
+}
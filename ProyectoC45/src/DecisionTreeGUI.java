@@ -2,12 +2,11 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.sql.SQLException;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Set;
-import java.util.HashSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class DecisionTreeGUI extends JFrame {
 
@@ -16,9 +15,18 @@ public class DecisionTreeGUI extends JFrame {
     private JList<String> attributeList;
     private JComboBox<String> targetColumnComboBox;
     private JButton trainButton;
+    private JButton crossValidateButton;
+    private JButton saveModelButton;
+    private JButton cancelButton;
+    private JLabel statusLabel;
 
     private SQLLoader sqlLoader; 
     private List<String> allColumns; 
+    private C45DecisionTree lastTree;
+    private JFrame treeFrame;
+    private TrainingMonitor monitor;
+    private final DatasetCache datasetCache = new DatasetCache(512L * 1024 * 1024,
+            java.nio.file.Paths.get(System.getProperty("user.home"), ".c45cache"));
 
     public DecisionTreeGUI() {
         super("Configuración de Árbol de Decisión C4.5");
@@ -26,6 +34,7 @@ public class DecisionTreeGUI extends JFrame {
         setLayout(new BorderLayout(10, 10)); 
 
         sqlLoader = new SQLLoader(); 
+        C45Metrics.register(); // Visible en JConsole; se activa con el atributo Enabled
 
         
         JPanel tablePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
@@ -62,9 +71,20 @@ public class DecisionTreeGUI extends JFrame {
 
         
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
+        statusLabel = new JLabel(" ");
+        controlPanel.add(statusLabel);
         trainButton = new JButton("Entrenar y Visualizar Árbol");
         trainButton.setEnabled(false); 
         controlPanel.add(trainButton);
+        crossValidateButton = new JButton("Validación Cruzada");
+        crossValidateButton.setEnabled(false);
+        controlPanel.add(crossValidateButton);
+        cancelButton = new JButton("Cancelar");
+        cancelButton.setEnabled(false);
+        controlPanel.add(cancelButton);
+        saveModelButton = new JButton("Guardar Modelo");
+        saveModelButton.setEnabled(false);
+        controlPanel.add(saveModelButton);
         add(controlPanel, BorderLayout.SOUTH);
 
         
@@ -82,6 +102,29 @@ public class DecisionTreeGUI extends JFrame {
             }
         });
 
+        crossValidateButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                crossValidate();
+            }
+        });
+
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (monitor != null) monitor.cancel();
+                cancelButton.setEnabled(false);
+                statusLabel.setText("Cancelando...");
+            }
+        });
+
+        saveModelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveModel();
+            }
+        });
+
         pack();
         setLocationRelativeTo(null); 
         setVisible(true);
@@ -103,6 +146,7 @@ public class DecisionTreeGUI extends JFrame {
             attributeList.setListData(new String[0]);
             targetColumnComboBox.removeAllItems();
             trainButton.setEnabled(false);
+            crossValidateButton.setEnabled(false);
             return;
         }
 
@@ -126,61 +170,236 @@ public class DecisionTreeGUI extends JFrame {
         }
 
         trainButton.setEnabled(true); 
+        crossValidateButton.setEnabled(true);
     }
 
-    private void trainAndVisualizeTree() {
+    // Atributos seleccionados sin la columna objetivo; null (después de avisar) si la selección no sirve
+    private List<String> attributesForTraining(String selectedTargetColumn) {
         List<String> selectedAttributes = attributeList.getSelectedValuesList();
-        String selectedTargetColumn = (String) targetColumnComboBox.getSelectedItem();
-        String tableName = tableNameField.getText().trim();
 
         if (selectedAttributes.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Por favor, selecciona al menos un atributo.", "Advertencia", JOptionPane.WARNING_MESSAGE);
-            return;
+            return null;
         }
         if (selectedTargetColumn == null || selectedTargetColumn.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Por favor, selecciona la columna objetivo.", "Advertencia", JOptionPane.WARNING_MESSAGE);
-            return;
+            return null;
         }
         if (selectedAttributes.contains(selectedTargetColumn)) {
             JOptionPane.showMessageDialog(this, "La columna objetivo no puede ser un atributo.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
+            return null;
         }
 
         List<String> attributesForTraining = new ArrayList<>(selectedAttributes);
         attributesForTraining.remove(selectedTargetColumn); 
+        return attributesForTraining;
+    }
 
-        List<Map<String, Double>> datos = sqlLoader.cargarDatos(tableName);
+    private void trainAndVisualizeTree() {
+        String selectedTargetColumn = (String) targetColumnComboBox.getSelectedItem();
+        String tableName = tableNameField.getText().trim();
+        List<String> attributesForTraining = attributesForTraining(selectedTargetColumn);
+        if (attributesForTraining == null) return;
+
+        // La carga y el entrenamiento van en segundo plano; el árbol anterior sigue a la vista hasta que termine
+        TrainingMonitor trainingMonitor = new TrainingMonitor();
+        monitor = trainingMonitor;
+        trainButton.setEnabled(false);
+        crossValidateButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        statusLabel.setText("Cargando datos...");
+        Timer progressTimer = new Timer(200, e -> showProgress(trainingMonitor));
+        // "Cargar Columnas" reasigna allColumns en el EDT; el hilo de fondo usa la lista de este momento
+        final List<String> columns = allColumns;
+
+        new SwingWorker<C45DecisionTree, Void>() {
+            @Override
+            protected C45DecisionTree doInBackground() throws SQLException {
+                ColumnarDataset datos = loadDataset(tableName, columns, attributesForTraining, selectedTargetColumn);
+                if (datos.numRows() == 0) {
+                    throw new IllegalStateException("No se encontraron datos en la tabla '" + tableName + "'.");
+                }
+                trainingMonitor.checkCancelled();
+                SwingUtilities.invokeLater(progressTimer::start);
+
+                C45DecisionTree arbol = new C45DecisionTree();
+                arbol.setParallelism(Runtime.getRuntime().availableProcessors());
+                arbol.setConfidenceFactor(0.25);
+                arbol.setMonitor(trainingMonitor);
+                arbol.train(datos, attributesForTraining);
+                return arbol;
+            }
 
-        if (datos.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "No se encontraron datos en la tabla '" + tableName + "'.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                trainButton.setEnabled(true);
+                crossValidateButton.setEnabled(true);
+                cancelButton.setEnabled(false);
+                try {
+                    showTree(get());
+                    statusLabel.setText("Árbol listo: " + trainingMonitor.nodesBuilt() + " nodos");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        statusLabel.setText("Entrenamiento cancelado");
+                    } else {
+                        statusLabel.setText(" ");
+                        JOptionPane.showMessageDialog(DecisionTreeGUI.this, e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                } catch (InterruptedException | CancellationException e) {
+                    statusLabel.setText("Entrenamiento cancelado");
+                }
+            }
+        }.execute();
+    }
 
-        List<Map<String, Double>> filteredDatos = new ArrayList<>();
-        Set<String> desiredColumns = new HashSet<>(attributesForTraining);
-        desiredColumns.add(selectedTargetColumn); 
+    /*
+     * Validación cruzada de 10 pliegues de la selección actual, con una rejilla pequeña de poda y tamaño
+     * mínimo de hoja alrededor de las opciones de "Entrenar" (factor 0.25); muestra la precisión de cada
+     * configuración y la matriz de confusión de la mejor.
+     */
+    private void crossValidate() {
+        String selectedTargetColumn = (String) targetColumnComboBox.getSelectedItem();
+        String tableName = tableNameField.getText().trim();
+        List<String> attributesForTraining = attributesForTraining(selectedTargetColumn);
+        if (attributesForTraining == null) return;
+
+        TrainingMonitor trainingMonitor = new TrainingMonitor();
+        monitor = trainingMonitor;
+        trainButton.setEnabled(false);
+        crossValidateButton.setEnabled(false);
+        cancelButton.setEnabled(true);
+        statusLabel.setText("Cargando datos...");
+        Timer progressTimer = new Timer(200, e -> showProgress(trainingMonitor));
+        final List<String> columns = allColumns;
+
+        new SwingWorker<List<CrossValidation.Result>, Void>() {
+            @Override
+            protected List<CrossValidation.Result> doInBackground() throws SQLException {
+                ColumnarDataset datos = loadDataset(tableName, columns, attributesForTraining, selectedTargetColumn);
+                if (datos.numRows() < 10) {
+                    throw new IllegalStateException("La tabla '" + tableName + "' no tiene filas suficientes para 10 pliegues.");
+                }
+                trainingMonitor.checkCancelled();
+                SwingUtilities.invokeLater(progressTimer::start);
+
+                List<C45DecisionTree> configs = new ArrayList<>();
+                for (int minLeaf : new int[]{1, 5}) {
+                    for (double cf : new double[]{0, 0.1, 0.25, 0.4}) {
+                        C45DecisionTree config = new C45DecisionTree();
+                        config.setMinSamplesLeaf(minLeaf);
+                        config.setConfidenceFactor(cf);
+                        configs.add(config);
+                    }
+                }
+                CrossValidation cv = new CrossValidation();
+                cv.setMonitor(trainingMonitor);
+                return cv.gridSearch(datos, attributesForTraining, configs);
+            }
 
-        for (Map<String, Double> row : datos) {
-            Map<String, Double> filteredRow = new HashMap<>();
-            for (String col : row.keySet()) {
-                if (desiredColumns.contains(col)) {
-                    filteredRow.put(col, row.get(col));
+            @Override
+            protected void done() {
+                progressTimer.stop();
+                trainButton.setEnabled(true);
+                crossValidateButton.setEnabled(true);
+                cancelButton.setEnabled(false);
+                try {
+                    List<CrossValidation.Result> results = get();
+                    CrossValidation.Result best = CrossValidation.best(results);
+                    statusLabel.setText(String.format("Precisión (10 pliegues): %.2f%%", best.accuracy() * 100));
+                    showCrossValidation(results, best);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        statusLabel.setText("Validación cancelada");
+                    } else {
+                        statusLabel.setText(" ");
+                        JOptionPane.showMessageDialog(DecisionTreeGUI.this, e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                } catch (InterruptedException | CancellationException e) {
+                    statusLabel.setText("Validación cancelada");
                 }
             }
-            
-            filteredDatos.add(filteredRow);
+        }.execute();
+    }
+
+    private void showCrossValidation(List<CrossValidation.Result> results, CrossValidation.Result best) {
+        StringBuilder text = new StringBuilder("Configuraciones (precisión media ± desviación entre pliegues):\n");
+        for (CrossValidation.Result r : results) {
+            text.append(r == best ? "* " : "  ").append(r).append('\n');
         }
+        text.append("\nMejor configuración por pliegue:\n");
+        for (int f = 0; f < best.folds(); f++) {
+            text.append(String.format("  Pliegue %2d: %.4f  (entrenar %.0f ms, probar %.0f ms)\n", f + 1,
+                    best.foldAccuracy(f), best.foldTrainNanos(f) / 1e6, best.foldTestNanos(f) / 1e6));
+        }
+        text.append("\nMatriz de confusión (filas: clase real; columnas: clase predicha):\n");
+        List<String> labels = best.classLabels();
+        int[][] confusion = best.confusionMatrix();
+        for (int c = 0; c < labels.size(); c++) {
+            text.append(String.format("  %-20s", labels.get(c)));
+            for (int count : confusion[c]) text.append(String.format(" %8d", count));
+            text.append('\n');
+        }
+        text.append("  (la última columna son las filas que cayeron en una hoja sin clase)\n");
 
-        
-        C45DecisionTree arbol = new C45DecisionTree();
-        arbol.train(filteredDatos, attributesForTraining, selectedTargetColumn);
+        JTextArea area = new JTextArea(text.toString(), 24, 90);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        area.setEditable(false);
+        JOptionPane.showMessageDialog(this, new JScrollPane(area), "Validación Cruzada", JOptionPane.INFORMATION_MESSAGE);
+    }
 
-        
+    // Se cargan todas las columnas de la tabla para que otra selección de atributos salga de la caché
+    // Si la carga falla se propaga el error y no se guarda nada en la caché
+    private ColumnarDataset loadDataset(String tableName, List<String> tableColumns, List<String> attributesForTraining,
+                                        String selectedTargetColumn) throws SQLException {
+        String token = sqlLoader.changeToken(tableName);
+        ColumnarDataset datos = token == null ? null
+                : datasetCache.get(tableName, attributesForTraining, selectedTargetColumn, token);
+        if (datos == null) {
+            List<String> columnas = new ArrayList<>(attributesForTraining);
+            if (tableColumns != null && tableColumns.containsAll(attributesForTraining)) {
+                columnas = new ArrayList<>(tableColumns);
+                columnas.removeIf(col -> col.equalsIgnoreCase("Id") || col.equals(selectedTargetColumn));
+            }
+            datos = sqlLoader.cargarDataset(tableName, columnas, selectedTargetColumn);
+            if (token != null && datos.numRows() > 0) {
+                datasetCache.put(tableName, selectedTargetColumn, token, datos);
+            }
+        }
+        return datos;
+    }
+
+    private void showProgress(TrainingMonitor trainingMonitor) {
+        if (trainingMonitor.isCancelled()) return;
+        statusLabel.setText(String.format("Nodos: %,d · Filas procesadas: %,d · Profundidad: %d",
+                trainingMonitor.nodesBuilt(), trainingMonitor.rowsProcessed(), trainingMonitor.currentDepth()));
+    }
+
+    private void showTree(C45DecisionTree arbol) {
         System.out.println("\n--- Árbol de Decisión Generado ---");
         arbol.printTree();
 
-        
-        TreeVisualizer.mostrar(arbol.getRoot());
+        if (treeFrame != null && treeFrame.isDisplayable()) {
+            TreeVisualizer.actualizar(treeFrame, arbol.getRoot());
+        } else {
+            treeFrame = TreeVisualizer.mostrar(arbol.getRoot());
+        }
+
+        lastTree = arbol;
+        saveModelButton.setEnabled(true);
+    }
+
+    private void saveModel() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File(tableNameField.getText().trim() + ".c45model"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            lastTree.save(chooser.getSelectedFile().toPath());
+        } catch (java.io.IOException e) {
+            JOptionPane.showMessageDialog(this, "No se pudo guardar el modelo: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,350 @@
+/*
+ * Construcción aproximada sobre atributos cuantizados. Cada nodo guarda, por atributo, un histograma
+ * de (bin, clase); el umbral solo puede caer en un corte de bin. Al dividir, solo se recorre el hijo
+ * más pequeño: el histograma del grande es el del padre menos el del pequeño (y menos las filas con
+ * NaN en el atributo elegido, que no bajan a ningún hijo).
+ *
+ * En un atributo categórico el histograma es la tabla de contingencia (categoría, clase) y la
+ * división tiene un hijo por categoría; se recorren todos los hijos salvo el mayor.
+ */
+final class HistogramTreeBuilder {
+    private final BinnedDataset binned;
+    private final ColumnarDataset data;
+    private final int[] labels;
+    private final int numClasses;
+    private final int stride;
+    private final TrainingMonitor monitor;
+    private final TrainingRecorder recorder;
+    private final int maxDepth;
+    private final int minSamplesSplit;
+    private final int minSamplesLeaf;
+    private final double minGainRatio;
+    private final boolean reuseNumericAttributes;
+
+    HistogramTreeBuilder(BinnedDataset binned) {
+        this(binned, null, null);
+    }
+
+    HistogramTreeBuilder(BinnedDataset binned, TrainingMonitor monitor, TrainingRecorder recorder) {
+        this(binned, monitor, recorder, 0, 2, 1, 0, false);
+    }
+
+    // Límites de crecimiento y reutilización de atributos numéricos con el mismo significado que en C45DecisionTree
+    HistogramTreeBuilder(BinnedDataset binned, TrainingMonitor monitor, TrainingRecorder recorder,
+                         int maxDepth, int minSamplesSplit, int minSamplesLeaf, double minGainRatio,
+                         boolean reuseNumericAttributes) {
+        this.binned = binned;
+        this.monitor = monitor;
+        this.recorder = recorder;
+        this.maxDepth = maxDepth;
+        this.minSamplesSplit = minSamplesSplit;
+        this.minSamplesLeaf = minSamplesLeaf;
+        this.minGainRatio = minGainRatio;
+        this.reuseNumericAttributes = reuseNumericAttributes;
+        this.data = binned.source;
+        this.labels = data.labels();
+        this.numClasses = data.numClasses();
+        this.stride = numClasses + 1; // conteo por clase + total del bin (incluye etiquetas faltantes)
+    }
+
+    TreeNode build(int[] attributes) {
+        int[] rows = new int[data.numRows()];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        return build(attributes, rows);
+    }
+
+    // rows puede repetir filas; cada aparición cuenta como una fila más
+    TreeNode build(int[] attributes, int[] rows) {
+        int[][] hist = new int[attributes.length][];
+        for (int i = 0; i < attributes.length; i++) {
+            hist[i] = new int[binned.numBins(attributes[i]) * stride];
+            accumulate(hist[i], attributes[i], rows, 1);
+        }
+        return buildTree(rows, attributes, hist, 0);
+    }
+
+    /*
+     * Mejor corte sobre los histogramas de un nodo: {índice del atributo en hist, último bin del lado
+     * izquierdo}, o {índice, -1} si es una división categórica (categorical[i], que puede ser null si
+     * no hay ninguna), o null si ningún corte supera minGainRatio. Cada lado de un umbral, o dos ramas
+     * de una división categórica, deben tener al menos minSamplesLeaf filas. Si evaluated no es null,
+     * suma en evaluated[i] los cortes probados para hist[i]. El gain ratio es el de C4.5 con valores
+     * desconocidos, como en el modo exacto: las nodeSize - (filas del histograma) filas con NaN en el
+     * atributo escalan la ganancia y cuentan como una rama más en la información de la división.
+     */
+    static int[] findBestSplit(int[][] hist, boolean[] categorical, int numClasses, int nodeSize) {
+        return findBestSplit(hist, categorical, numClasses, nodeSize, 1, 0, null);
+    }
+
+    static int[] findBestSplit(int[][] hist, boolean[] categorical, int numClasses, int nodeSize,
+                               int minSamplesLeaf, double minGainRatio, long[] evaluated) {
+        int stride = numClasses + 1;
+        int[] leftCounts = new int[numClasses];
+        int[] rightCounts = new int[numClasses];
+        int[] known = new int[numClasses];
+
+        int best = -1;
+        int bestBin = -1;
+        double bestGainRatio = -1;
+
+        for (int i = 0; i < hist.length; i++) {
+            int[] h = hist[i];
+            int bins = h.length / stride;
+
+            java.util.Arrays.fill(known, 0);
+            int knownTotal = 0;
+            for (int b = 0; b < bins; b++) {
+                for (int c = 0; c < numClasses; c++) known[c] += h[b * stride + c];
+                knownTotal += h[b * stride + numClasses];
+            }
+            if (knownTotal == 0) continue; // Todos los valores son NaN en este nodo
+            double knownEntropy = SplitStats.entropy(known);
+
+            if (categorical != null && categorical[i]) {
+                double[] sizes = new double[bins];
+                double[] table = new double[bins * numClasses];
+                int largeEnough = 0;
+                for (int b = 0; b < bins; b++) {
+                    sizes[b] = h[b * stride + numClasses];
+                    if (sizes[b] >= minSamplesLeaf) largeEnough++;
+                    for (int c = 0; c < numClasses; c++) table[b * numClasses + c] = h[b * stride + c];
+                }
+                if (largeEnough < 2) continue;
+                if (evaluated != null) evaluated[i]++;
+
+                double ratio = SplitStats.gainRatio(knownEntropy, nodeSize, knownTotal, sizes, table, numClasses);
+                if (ratio > bestGainRatio) {
+                    bestGainRatio = ratio;
+                    best = i;
+                    bestBin = -1;
+                }
+                continue;
+            }
+
+            java.util.Arrays.fill(leftCounts, 0);
+            int leftSize = 0;
+            for (int b = 0; b < bins - 1; b++) {
+                int binTotal = h[b * stride + numClasses];
+                if (binTotal == 0) continue;
+                for (int c = 0; c < numClasses; c++) leftCounts[c] += h[b * stride + c];
+                leftSize += binTotal;
+
+                int rightSize = knownTotal - leftSize;
+                if (rightSize < minSamplesLeaf) break;
+                if (leftSize < minSamplesLeaf) continue;
+                for (int c = 0; c < numClasses; c++) rightCounts[c] = known[c] - leftCounts[c];
+                if (evaluated != null) evaluated[i]++;
+
+                double ratio = SplitStats.gainRatio(knownEntropy, nodeSize, knownTotal, leftSize,
+                        SplitStats.entropy(leftCounts), rightSize, SplitStats.entropy(rightCounts));
+                if (ratio > bestGainRatio) {
+                    bestGainRatio = ratio;
+                    best = i;
+                    bestBin = b;
+                }
+            }
+        }
+
+        if (best < 0 || bestGainRatio <= minGainRatio) return null;
+        return new int[]{best, bestBin};
+    }
+
+    private void accumulate(int[] hist, int attr, int[] rows, int sign) {
+        short[] codes = binned.codes[attr];
+        for (int r : rows) {
+            int bin = codes[r];
+            if (bin < 0) continue;
+            int base = bin * stride;
+            if (labels[r] >= 0) hist[base + labels[r]] += sign;
+            hist[base + numClasses] += sign;
+        }
+    }
+
+    private TreeNode buildTree(int[] rows, int[] attributes, int[][] hist, int depth) {
+        if (rows.length == 0) return null;
+        if (monitor != null) monitor.nodeStarted(depth, rows.length);
+
+        int[] counts = classCounts(rows);
+        if (allSameClass(rows)) {
+            return leaf(labels[rows[0]], data.classLabel(labels[rows[0]]), counts, rows.length);
+        }
+        if (attributes.length == 0 || rows.length < minSamplesSplit || (maxDepth > 0 && depth >= maxDepth)) {
+            return majorityLeaf(counts, rows.length);
+        }
+
+        long splitStart = recorder != null ? System.nanoTime() : 0;
+        long[] evaluated = recorder != null ? new long[attributes.length] : null;
+        boolean[] categorical = new boolean[attributes.length];
+        for (int i = 0; i < attributes.length; i++) categorical[i] = data.isCategorical(attributes[i]);
+        int[] split = findBestSplit(hist, categorical, numClasses, rows.length, minSamplesLeaf, minGainRatio, evaluated);
+        if (recorder != null) {
+            recorder.splitSearchNanos.add(System.nanoTime() - splitStart);
+            for (int i = 0; i < attributes.length; i++) recorder.thresholds.addAndGet(attributes[i], evaluated[i]);
+        }
+        if (split == null) {
+            return majorityLeaf(counts, rows.length);
+        }
+        int best = split[0];
+        int bestBin = split[1];
+        if (bestBin < 0) {
+            return buildCategorical(rows, attributes, hist, depth, best, counts);
+        }
+
+        long partitionStart = recorder != null ? System.nanoTime() : 0;
+        int bestAttr = attributes[best];
+        short[] codes = binned.codes[bestAttr];
+        int leftCount = 0;
+        int rightCount = 0;
+        int droppedCount = 0;
+        for (int r : rows) {
+            if (codes[r] < 0) droppedCount++;
+            else if (codes[r] <= bestBin) leftCount++;
+            else rightCount++;
+        }
+        int[] left = new int[leftCount];
+        int[] right = new int[rightCount];
+        int[] dropped = new int[droppedCount];
+        int l = 0;
+        int rr = 0;
+        int d = 0;
+        for (int r : rows) {
+            if (codes[r] < 0) dropped[d++] = r;
+            else if (codes[r] <= bestBin) left[l++] = r;
+            else right[rr++] = r;
+        }
+
+        TreeNode node = new TreeNode();
+        node.attribute = data.attributeName(bestAttr);
+        node.threshold = BinnedDataset.splitThreshold(binned.cuts[bestAttr], binned.values[bestAttr], bestBin,
+                hist[best], stride);
+        node.weight = rows.length;
+        node.distribution = distribution(counts);
+
+        // Si el atributo elegido sigue disponible, su histograma se reparte por resta como los demás
+        int[] newAttrs = new int[reuseNumericAttributes ? attributes.length : attributes.length - 1];
+        int[][] smallHist = new int[newAttrs.length][];
+        int[][] largeHist = new int[newAttrs.length][];
+        boolean leftIsSmall = left.length <= right.length;
+        int[] small = leftIsSmall ? left : right;
+        int k = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            if (i == best && !reuseNumericAttributes) continue;
+            newAttrs[k] = attributes[i];
+            smallHist[k] = new int[hist[i].length];
+            accumulate(smallHist[k], attributes[i], small, 1);
+
+            // Se reutiliza el histograma del padre, que ya no se necesita
+            int[] large = hist[i];
+            for (int j = 0; j < large.length; j++) large[j] -= smallHist[k][j];
+            accumulate(large, attributes[i], dropped, -1);
+            largeHist[k] = large;
+            k++;
+        }
+        if (recorder != null) {
+            recorder.partitionNanos.add(System.nanoTime() - partitionStart);
+            recorder.rowsScanned.add(2L * rows.length + (long) (small.length + dropped.length) * newAttrs.length);
+        }
+
+        node.left = buildTree(left, newAttrs, leftIsSmall ? smallHist : largeHist, depth + 1);
+        node.right = buildTree(right, newAttrs, leftIsSmall ? largeHist : smallHist, depth + 1);
+        return node;
+    }
+
+    // Las ramas sin filas se vuelven hojas con la clase mayoritaria del nodo, como en C45DecisionTree
+    private TreeNode buildCategorical(int[] rows, int[] attributes, int[][] hist, int depth, int best, int[] counts) {
+        long partitionStart = recorder != null ? System.nanoTime() : 0;
+        int bestAttr = attributes[best];
+        short[] codes = binned.codes[bestAttr];
+        int branches = binned.numBins(bestAttr);
+
+        int[] sizes = new int[branches];
+        int droppedCount = 0;
+        for (int r : rows) {
+            if (codes[r] < 0) droppedCount++;
+            else sizes[codes[r]]++;
+        }
+        int[][] children = new int[branches][];
+        for (int v = 0; v < branches; v++) children[v] = new int[sizes[v]];
+        int[] dropped = new int[droppedCount];
+        int[] fill = new int[branches];
+        int d = 0;
+        for (int r : rows) {
+            if (codes[r] < 0) dropped[d++] = r;
+            else children[codes[r]][fill[codes[r]]++] = r;
+        }
+        int largest = 0;
+        for (int v = 1; v < branches; v++) {
+            if (sizes[v] > sizes[largest]) largest = v;
+        }
+
+        int[] newAttrs = new int[attributes.length - 1];
+        int[][][] childHist = new int[branches][newAttrs.length][];
+        int k = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            if (i == best) continue;
+            newAttrs[k] = attributes[i];
+            int[] large = hist[i];
+            for (int v = 0; v < branches; v++) {
+                if (v == largest || sizes[v] == 0) continue;
+                childHist[v][k] = new int[large.length];
+                accumulate(childHist[v][k], attributes[i], children[v], 1);
+                for (int j = 0; j < large.length; j++) large[j] -= childHist[v][k][j];
+            }
+            accumulate(large, attributes[i], dropped, -1);
+            childHist[largest][k] = large;
+            k++;
+        }
+        if (recorder != null) {
+            recorder.partitionNanos.add(System.nanoTime() - partitionStart);
+            recorder.rowsScanned.add(2L * rows.length + (long) (rows.length - sizes[largest]) * newAttrs.length);
+        }
+
+        TreeNode node = new TreeNode();
+        node.attribute = data.attributeName(bestAttr);
+        node.categories = data.categories(bestAttr);
+        node.children = new TreeNode[branches];
+        node.weight = rows.length;
+        node.distribution = distribution(counts);
+        for (int v = 0; v < branches; v++) {
+            node.children[v] = sizes[v] == 0 ? majorityLeaf(counts, 0) : buildTree(children[v], newAttrs, childHist[v], depth + 1);
+        }
+        return node;
+    }
+
+    private int[] classCounts(int[] rows) {
+        int[] count = new int[numClasses];
+        for (int r : rows) {
+            if (labels[r] >= 0) count[labels[r]]++;
+        }
+        return count;
+    }
+
+    private boolean allSameClass(int[] rows) {
+        int label = labels[rows[0]];
+        for (int r : rows) {
+            if (labels[r] != label) return false;
+        }
+        return true;
+    }
+
+    private TreeNode majorityLeaf(int[] counts, int weight) {
+        int majority = SplitStats.majority(counts);
+        return leaf(majority, majority >= 0 ? data.classLabel(majority) : "N/A", counts, weight);
+    }
+
+    // Como en C45DecisionTree, pero los pesos son conteos: las filas con NaN en una división no bajan
+    private static TreeNode leaf(int classId, String label, int[] counts, int weight) {
+        TreeNode leaf = new TreeNode();
+        leaf.classId = classId;
+        leaf.label = label;
+        leaf.weight = weight;
+        leaf.distribution = distribution(counts);
+        return leaf;
+    }
+
+    private static double[] distribution(int[] counts) {
+        double[] dist = new double[counts.length];
+        for (int c = 0; c < counts.length; c++) dist[c] = counts[c];
+        return dist;
+    }
+}
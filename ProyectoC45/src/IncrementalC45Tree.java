@@ -0,0 +1,499 @@
+import java.util.*;
+
+/*
+ * Árbol C4.5 por histogramas que se actualiza con filas nuevas sin reentrenar desde cero.
+ *
+ * Los cortes de bin se fijan en el primer entrenamiento y cada nodo conserva sus estadísticas
+ * suficientes: conteos por clase y un histograma (bin, clase) por atributo candidato. Una fila nueva
+ * baja por el árbol sumándose a los nodos que atraviesa; después solo se revisan esos nodos, y un
+ * subárbol se reconstruye únicamente si su mejor división (o su decisión de ser hoja) cambió. Los
+ * subárboles que no recibieron filas no se tocan. El resultado es el mismo árbol que daría
+ * HistogramTreeBuilder sobre todas las filas con los mismos cortes.
+ *
+ * Los diccionarios de los atributos categóricos también se fijan en el primer entrenamiento: las
+ * filas nuevas se traducen a esos códigos y una categoría que no existía entonces cuenta como valor
+ * faltante. Las clases se identifican por su etiqueta, así que pueden aparecer clases nuevas.
+ *
+ * Memoria: nodos x atributos x bins x (clases + 1) enteros, más un short por celda y el Id de cada fila.
+ */
+public class IncrementalC45Tree {
+    private final String[] attributes;
+    private final int maxBins;
+    private boolean reuseNumericAttributes;
+    private boolean reuse; // el valor de reuseNumericAttributes en el último train
+
+    private double[][] cuts;
+    private double[][] values; // como BinnedDataset.values
+    private String[][] categories;
+    private String[] classLabels = new String[0];
+    private Comparator<String> classOrder;
+    private boolean categoricalClass;
+    private short[][] codes;
+    private int[] labels = new int[0];
+    private int size;
+    private long watermark = Long.MIN_VALUE;
+
+    private Node root;
+    private int rebuiltSubtrees;
+
+    public IncrementalC45Tree(List<String> attributes, int maxBins) {
+        if (maxBins < 2 || maxBins > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("El número de bins debe estar entre 2 y " + Short.MAX_VALUE);
+        }
+        this.attributes = attributes.toArray(new String[0]);
+        this.maxBins = maxBins;
+    }
+
+    // Como C45DecisionTree.setReuseNumericAttributes; se aplica desde el próximo train
+    public void setReuseNumericAttributes(boolean reuseNumericAttributes) {
+        this.reuseNumericAttributes = reuseNumericAttributes;
+    }
+
+    public boolean isReuseNumericAttributes() {
+        return reuseNumericAttributes;
+    }
+
+    // Entrenamiento inicial: fija los cortes de bin y los diccionarios de categorías
+    public void train(ColumnarDataset data) {
+        int[] columns = bind(data);
+        reuse = reuseNumericAttributes;
+        cuts = new double[attributes.length][];
+        values = new double[attributes.length][];
+        categories = new String[attributes.length][];
+        for (int a = 0; a < attributes.length; a++) {
+            if (data.isCategorical(columns[a])) {
+                categories[a] = data.categories(columns[a]);
+                cuts[a] = BinnedDataset.categoryCuts(categories[a].length);
+                continue;
+            }
+            QuantileSketch sketch = data.quantileSketch(columns[a]);
+            if (sketch == null) {
+                sketch = QuantileSketch.of(data.column(columns[a]), ColumnarDataset.QUANTILE_SAMPLE_SIZE, maxBins);
+            }
+            cuts[a] = sketch.cutPoints(maxBins);
+            values[a] = sketch.binValues(maxBins);
+        }
+        codes = new short[attributes.length][0];
+        labels = new int[0];
+        classLabels = new String[0];
+        // Mismo orden de clases que ColumnarDataset: por valor o alfabético
+        categoricalClass = data.classNames() != null;
+        classOrder = categoricalClass ? Comparator.naturalOrder() : Comparator.comparingDouble(Double::parseDouble);
+        size = 0;
+        watermark = Long.MIN_VALUE;
+
+        append(data, columns);
+        rebuildAll();
+    }
+
+    /*
+     * Añade las filas nuevas (por ejemplo SQLLoader.cargarDatasetDesde(..., getWatermark())).
+     * Devuelve el número de subárboles reconstruidos.
+     */
+    public int update(ColumnarDataset newRows) {
+        if (cuts == null) {
+            train(newRows);
+            return 1;
+        }
+        int[] columns = bind(newRows);
+        if (newRows.numClasses() > 0 && (newRows.classNames() != null) != categoricalClass) {
+            throw new IllegalArgumentException("La clase es " + (categoricalClass ? "categórica" : "numérica")
+                    + " en el entrenamiento y no en las filas nuevas");
+        }
+        int first = size;
+        if (append(newRows, columns)) {
+            // Apareció una clase nueva: cambian los histogramas de todos los nodos
+            rebuildAll();
+            return 1;
+        }
+        if (root == null) {
+            rebuildAll();
+            return 1;
+        }
+
+        for (int r = first; r < size; r++) route(root, r);
+        rebuiltSubtrees = 0;
+        root = refresh(root);
+        return rebuiltSubtrees;
+    }
+
+    // Mayor Id visto; Long.MIN_VALUE si los datos no traían Id
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public int numRows() {
+        return size;
+    }
+
+    public TreeNode getRoot() {
+        return toTreeNode(root);
+    }
+
+    public CompiledTree compile() {
+        return CompiledTree.compile(getRoot(), classLabels);
+    }
+
+    private int[] bind(ColumnarDataset data) {
+        int[] columns = new int[attributes.length];
+        for (int a = 0; a < attributes.length; a++) {
+            columns[a] = data.attributeIndex(attributes[a]);
+            if (columns[a] < 0) {
+                throw new IllegalArgumentException("Atributo no encontrado en el dataset: " + attributes[a]);
+            }
+        }
+        return columns;
+    }
+
+    // Devuelve true si el diccionario de clases creció
+    private boolean append(ColumnarDataset data, int[] columns) {
+        int n = data.numRows();
+        int capacity = Math.max(size + n, labels.length);
+        if (capacity > labels.length) {
+            capacity = Math.max(capacity, labels.length + labels.length / 2);
+            labels = Arrays.copyOf(labels, capacity);
+            for (int a = 0; a < attributes.length; a++) codes[a] = Arrays.copyOf(codes[a], capacity);
+        }
+
+        boolean newClass = false;
+        String[] merged = classLabels;
+        for (int c = 0; c < data.numClasses(); c++) {
+            if (Arrays.binarySearch(merged, data.classLabel(c), classOrder) < 0) {
+                merged = Arrays.copyOf(merged, merged.length + 1);
+                merged[merged.length - 1] = data.classLabel(c);
+                Arrays.sort(merged, classOrder);
+                newClass = true;
+            }
+        }
+        if (newClass) {
+            // Los ids de clase se mantienen ordenados; se recodifican las filas existentes
+            for (int r = 0; r < size; r++) {
+                if (labels[r] >= 0) labels[r] = Arrays.binarySearch(merged, classLabels[labels[r]], classOrder);
+            }
+            classLabels = merged;
+        }
+
+        int[] classIds = new int[data.numClasses()];
+        for (int c = 0; c < classIds.length; c++) classIds[c] = Arrays.binarySearch(classLabels, data.classLabel(c), classOrder);
+        int[] dataLabels = data.labels();
+        for (int r = 0; r < n; r++) {
+            labels[size + r] = dataLabels[r] < 0 ? -1 : classIds[dataLabels[r]];
+        }
+        for (int a = 0; a < attributes.length; a++) {
+            double[] column = data.column(columns[a], categories[a]);
+            short[] code = codes[a];
+            for (int r = 0; r < n; r++) {
+                code[size + r] = Double.isNaN(column[r]) ? -1 : (short) bin(cuts[a], column[r]);
+            }
+        }
+        size += n;
+        watermark = Math.max(watermark, data.maxRowId());
+        return newClass;
+    }
+
+    private static int bin(double[] cuts, double value) {
+        int pos = Arrays.binarySearch(cuts, value);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    private int stride() {
+        return classLabels.length + 1;
+    }
+
+    private void rebuildAll() {
+        int[] rows = new int[size];
+        for (int r = 0; r < size; r++) rows[r] = r;
+        int[] attrs = new int[attributes.length];
+        for (int a = 0; a < attrs.length; a++) attrs[a] = a;
+        int[][] hist = new int[attrs.length][];
+        for (int i = 0; i < attrs.length; i++) {
+            hist[i] = new int[(cuts[i].length + 1) * stride()];
+            accumulate(hist[i], attrs[i], rows, rows.length, 1);
+        }
+        root = size == 0 ? null : build(rows, attrs, hist);
+    }
+
+    private void accumulate(int[] hist, int attr, int[] rows, int count, int sign) {
+        short[] code = codes[attr];
+        int numClasses = classLabels.length;
+        int stride = stride();
+        for (int j = 0; j < count; j++) {
+            int r = rows[j];
+            if (code[r] < 0) continue;
+            int base = code[r] * stride;
+            if (labels[r] >= 0) hist[base + labels[r]] += sign;
+            hist[base + numClasses] += sign;
+        }
+    }
+
+    private static final class Node {
+        int[] attrs;        // atributos candidatos en este nodo
+        int[][] hist;       // un histograma por candidato
+        int[] counts;       // filas por clase
+        int size;           // filas que llegan al nodo, con o sin etiqueta
+        int split = -1;     // índice en attrs del atributo de división; -1 en hojas
+        int bin;            // último bin de la izquierda; -1 en divisiones categóricas
+        String label;
+        int classId = -1;   // índice de label en classLabels; -1 si no es una de ellas
+        Node left;
+        Node right;
+        Node[] children;    // división categórica: un hijo por categoría
+        int[] rows;         // hoja: sus filas; nodo interno: filas con NaN en el atributo de división
+        int rowCount;
+        boolean dirty;
+
+        void addRow(int r) {
+            if (rowCount == rows.length) rows = Arrays.copyOf(rows, Math.max(4, rowCount * 2));
+            rows[rowCount++] = r;
+        }
+    }
+
+    private Node build(int[] rows, int[] attrs, int[][] hist) {
+        Node node = new Node();
+        node.attrs = attrs;
+        node.hist = hist;
+        node.size = rows.length;
+        node.counts = new int[classLabels.length];
+        for (int r : rows) {
+            if (labels[r] >= 0) node.counts[labels[r]]++;
+        }
+
+        int[] split = decide(node);
+        if (split == null) {
+            node.rows = rows;
+            node.rowCount = rows.length;
+            return node;
+        }
+        node.split = split[0];
+        node.bin = split[1];
+        if (node.bin < 0) {
+            buildBranches(node, rows);
+            return node;
+        }
+
+        short[] code = codes[attrs[node.split]];
+        int[] left = new int[rows.length];
+        int[] right = new int[rows.length];
+        int[] dropped = new int[rows.length];
+        int l = 0;
+        int rr = 0;
+        int d = 0;
+        for (int r : rows) {
+            if (code[r] < 0) dropped[d++] = r;
+            else if (code[r] <= node.bin) left[l++] = r;
+            else right[rr++] = r;
+        }
+        left = Arrays.copyOf(left, l);
+        right = Arrays.copyOf(right, rr);
+        node.rows = Arrays.copyOf(dropped, d);
+        node.rowCount = d;
+
+        int[] childAttrs = new int[reuse ? attrs.length : attrs.length - 1];
+        int[][] smallHist = new int[childAttrs.length][];
+        int[][] largeHist = new int[childAttrs.length][];
+        boolean leftIsSmall = l <= rr;
+        int[] small = leftIsSmall ? left : right;
+        int k = 0;
+        for (int i = 0; i < attrs.length; i++) {
+            if (i == node.split && !reuse) continue;
+            childAttrs[k] = attrs[i];
+            smallHist[k] = new int[hist[i].length];
+            accumulate(smallHist[k], attrs[i], small, small.length, 1);
+            // El nodo conserva su propio histograma para futuras actualizaciones
+            int[] large = hist[i].clone();
+            for (int j = 0; j < large.length; j++) large[j] -= smallHist[k][j];
+            accumulate(large, attrs[i], node.rows, d, -1);
+            largeHist[k] = large;
+            k++;
+        }
+
+        node.left = build(left, childAttrs, leftIsSmall ? smallHist : largeHist);
+        node.right = build(right, childAttrs, leftIsSmall ? largeHist : smallHist);
+        return node;
+    }
+
+    // Un hijo por categoría; como en build, el hijo más grande hereda el histograma por resta
+    private void buildBranches(Node node, int[] rows) {
+        int[] attrs = node.attrs;
+        short[] code = codes[attrs[node.split]];
+        int branches = cuts[attrs[node.split]].length + 1;
+
+        int[] sizes = new int[branches];
+        int d = 0;
+        for (int r : rows) {
+            if (code[r] < 0) d++;
+            else sizes[code[r]]++;
+        }
+        int[][] parts = new int[branches][];
+        for (int v = 0; v < branches; v++) parts[v] = new int[sizes[v]];
+        node.rows = new int[d];
+        node.rowCount = d;
+        int[] fill = new int[branches];
+        d = 0;
+        for (int r : rows) {
+            if (code[r] < 0) node.rows[d++] = r;
+            else parts[code[r]][fill[code[r]]++] = r;
+        }
+        int largest = 0;
+        for (int v = 1; v < branches; v++) {
+            if (sizes[v] > sizes[largest]) largest = v;
+        }
+
+        int[] childAttrs = new int[attrs.length - 1];
+        int[][][] childHist = new int[branches][childAttrs.length][];
+        int k = 0;
+        for (int i = 0; i < attrs.length; i++) {
+            if (i == node.split) continue;
+            childAttrs[k] = attrs[i];
+            int[] large = node.hist[i].clone();
+            for (int v = 0; v < branches; v++) {
+                if (v == largest) continue;
+                // También las ramas vacías: las filas nuevas pueden llegar a ellas
+                childHist[v][k] = new int[large.length];
+                accumulate(childHist[v][k], attrs[i], parts[v], parts[v].length, 1);
+                for (int j = 0; j < large.length; j++) large[j] -= childHist[v][k][j];
+            }
+            accumulate(large, attrs[i], node.rows, d, -1);
+            childHist[largest][k] = large;
+            k++;
+        }
+
+        node.children = new Node[branches];
+        for (int v = 0; v < branches; v++) node.children[v] = build(parts[v], childAttrs, childHist[v]);
+    }
+
+    // Mismas reglas que HistogramTreeBuilder: devuelve {split, bin} o null si el nodo es hoja (y fija su etiqueta)
+    private int[] decide(Node node) {
+        if (node.size == 0) {
+            node.label = null; // Rama vacía: se muestra como null, igual que en los otros constructores
+            node.classId = -1;
+            return null;
+        }
+        int known = 0;
+        int distinct = 0;
+        int only = -1;
+        for (int c = 0; c < node.counts.length; c++) {
+            known += node.counts[c];
+            if (node.counts[c] > 0) {
+                distinct++;
+                only = c;
+            }
+        }
+        if (known < node.size) distinct++; // Filas sin etiqueta
+
+        if (distinct == 1) {
+            node.classId = known == node.size ? only : -1;
+            node.label = node.classId >= 0 ? classLabels[only] : Double.toString(Double.NaN);
+            return null;
+        }
+        int majority = SplitStats.majority(node.counts);
+        node.classId = majority;
+        node.label = majority >= 0 ? classLabels[majority] : "N/A";
+        if (node.attrs.length == 0) return null;
+        boolean[] categorical = new boolean[node.attrs.length];
+        for (int i = 0; i < categorical.length; i++) categorical[i] = categories[node.attrs[i]] != null;
+        return HistogramTreeBuilder.findBestSplit(node.hist, categorical, classLabels.length, node.size);
+    }
+
+    private void route(Node node, int r) {
+        while (true) {
+            node.dirty = true;
+            node.size++;
+            if (labels[r] >= 0) node.counts[labels[r]]++;
+            int stride = stride();
+            for (int i = 0; i < node.attrs.length; i++) {
+                int code = codes[node.attrs[i]][r];
+                if (code < 0) continue;
+                if (labels[r] >= 0) node.hist[i][code * stride + labels[r]]++;
+                node.hist[i][code * stride + classLabels.length]++;
+            }
+            if (node.split < 0) {
+                node.addRow(r);
+                return;
+            }
+            int code = codes[node.attrs[node.split]][r];
+            if (code < 0) {
+                node.addRow(r);
+                return;
+            }
+            node = node.bin < 0 ? node.children[code] : code <= node.bin ? node.left : node.right;
+        }
+    }
+
+    private Node refresh(Node node) {
+        if (!node.dirty) return node;
+        node.dirty = false;
+
+        int[] split = decide(node);
+        if (split == null && node.split < 0) {
+            return node; // Sigue siendo hoja; la etiqueta ya se actualizó
+        }
+        if (split != null && split[0] == node.split && split[1] == node.bin) {
+            if (node.children != null) {
+                for (int v = 0; v < node.children.length; v++) node.children[v] = refresh(node.children[v]);
+            } else {
+                node.left = refresh(node.left);
+                node.right = refresh(node.right);
+            }
+            return node;
+        }
+
+        rebuiltSubtrees++;
+        int[] rows = new int[node.size];
+        int n = collectRows(node, rows, 0);
+        return build(Arrays.copyOf(rows, n), node.attrs, node.hist);
+    }
+
+    private int collectRows(Node node, int[] out, int pos) {
+        System.arraycopy(node.rows, 0, out, pos, node.rowCount);
+        pos += node.rowCount;
+        if (node.children != null) {
+            for (Node child : node.children) pos = collectRows(child, out, pos);
+        } else if (node.split >= 0) {
+            pos = collectRows(node.left, out, pos);
+            pos = collectRows(node.right, out, pos);
+        }
+        return pos;
+    }
+
+    private TreeNode toTreeNode(Node node) {
+        if (node == null || node.size == 0) return null;
+        TreeNode tree = new TreeNode();
+        tree.weight = node.size;
+        tree.distribution = distribution(node.counts);
+        if (node.split < 0) {
+            tree.label = node.label;
+            tree.classId = node.classId;
+            return tree;
+        }
+        int attr = node.attrs[node.split];
+        tree.attribute = attributes[attr];
+        if (node.children != null) {
+            // Las ramas vacías son hojas con la clase mayoritaria del nodo, como en HistogramTreeBuilder
+            tree.categories = categories[attr];
+            tree.children = new TreeNode[node.children.length];
+            for (int v = 0; v < node.children.length; v++) {
+                Node child = node.children[v];
+                if (child.size > 0) {
+                    tree.children[v] = toTreeNode(child);
+                } else {
+                    tree.children[v] = new TreeNode();
+                    tree.children[v].label = node.label;
+                    tree.children[v].classId = node.classId;
+                    tree.children[v].distribution = distribution(node.counts);
+                }
+            }
+            return tree;
+        }
+        tree.threshold = BinnedDataset.splitThreshold(cuts[attr], values[attr], node.bin, node.hist[node.split], stride());
+        tree.left = toTreeNode(node.left);
+        tree.right = toTreeNode(node.right);
+        return tree;
+    }
+
+    private static double[] distribution(int[] counts) {
+        double[] dist = new double[counts.length];
+        for (int c = 0; c < counts.length; c++) dist[c] = counts[c];
+        return dist;
+    }
+}
@@ -0,0 +1,71 @@
+final class IndexSort {
+    private static final int INSERTION_THRESHOLD = 32;
+
+    private IndexSort() {
+    }
+
+    // Filas con valor conocido en la columna, ordenadas de forma estable por ese valor
+    static int[] sortedKnownRows(double[] column, int[] rows) {
+        int n = 0;
+        int[] sorted = new int[rows.length];
+        for (int r : rows) {
+            if (!Double.isNaN(column[r])) sorted[n++] = r;
+        }
+        if (n < sorted.length) sorted = java.util.Arrays.copyOf(sorted, n);
+        sort(sorted, column);
+        return sorted;
+    }
+
+    // Repite cada fila de sorted tantas veces como indique multiplicity, conservando el orden
+    static int[] expand(int[] sorted, int[] multiplicity) {
+        int n = 0;
+        for (int r : sorted) n += multiplicity[r];
+        int[] expanded = new int[n];
+        int k = 0;
+        for (int r : sorted) {
+            for (int m = multiplicity[r]; m > 0; m--) expanded[k++] = r;
+        }
+        return expanded;
+    }
+
+    // Merge sort estable de índices por keys[idx]; las claves no deben ser NaN
+    static void sort(int[] idx, double[] keys) {
+        if (idx.length < 2) return;
+        int[] buffer = idx.clone();
+        mergeSort(buffer, idx, 0, idx.length, keys);
+    }
+
+    private static void mergeSort(int[] src, int[] dst, int from, int to, double[] keys) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            insertionSort(dst, from, to, keys);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(dst, src, from, mid, keys);
+        mergeSort(dst, src, mid, to, keys);
+
+        if (keys[src[mid - 1]] <= keys[src[mid]]) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && keys[src[i]] <= keys[src[j]])) dst[k] = src[i++];
+            else dst[k] = src[j++];
+        }
+    }
+
+    private static void insertionSort(int[] idx, int from, int to, double[] keys) {
+        for (int i = from + 1; i < to; i++) {
+            int current = idx[i];
+            double key = keys[current];
+            int j = i - 1;
+            while (j >= from && keys[idx[j]] > key) {
+                idx[j + 1] = idx[j];
+                j--;
+            }
+            idx[j + 1] = current;
+        }
+    }
+}
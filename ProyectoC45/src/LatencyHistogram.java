@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Histograma de latencias en nanosegundos con 16 buckets por potencia de dos, así que un percentil
+ * se conoce con un error de hasta 1/16. Se puede registrar desde muchos hilos a la vez sin bloqueos.
+ * Lo usan ScoringService y las métricas de predict de C45Metrics.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // ~18 minutos; lo que pase de ahí va al último bucket
+
+    private final LongAdder[] buckets = new LongAdder[(MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS];
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    void record(long nanos) {
+        buckets[bucket(Math.max(0, nanos))].increment();
+    }
+
+    // Los valores menores que SUB_BUCKETS tienen un bucket cada uno; después, SUB_BUCKETS por potencia de dos
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) return SUB_BUCKETS * (MAX_EXPONENT - SUB_BITS + 2) - 1;
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Primer valor que ya no entra en el bucket i
+    static long upperBound(int i) {
+        if (i < SUB_BUCKETS) return i + 1;
+        int exponent = i / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = i % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS);
+    }
+
+    static long lowerBound(int i) {
+        return i == 0 ? 0 : upperBound(i - 1);
+    }
+
+    long[] counts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    // Conteos por potencia de dos: la posición e cuenta [2^e, 2^(e+1)); la última también lo que pase de ahí
+    long[] powerOfTwoCounts(int exponents) {
+        long[] folded = new long[exponents];
+        for (int i = 0; i < buckets.length; i++) {
+            long count = buckets[i].sum();
+            if (count == 0) continue;
+            // Los sub-buckets nunca cruzan una potencia de dos, así que basta con el límite inferior
+            int exponent = 63 - Long.numberOfLeadingZeros(Math.max(1, lowerBound(i)));
+            folded[Math.min(exponent, exponents - 1)] += count;
+        }
+        return folded;
+    }
+
+    long total() {
+        long total = 0;
+        for (LongAdder bucket : buckets) total += bucket.sum();
+        return total;
+    }
+
+    // Límite superior del bucket que contiene el percentil p (entre 0 y 1), en microsegundos; 0 si no hay datos
+    double percentileMicros(double p) {
+        long[] counts = counts();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i) / 1000.0;
+        }
+        return upperBound(counts.length - 1) / 1000.0;
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) bucket.reset();
+    }
+}
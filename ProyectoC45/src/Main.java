@@ -1,7 +1,16 @@
 import javax.swing.SwingUtilities;
 
 public class Main {
+    // Con argumentos se puntúa por lotes sin interfaz (ver BatchScorer); "servir" inicia ScoringService
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("servir")) {
+            ScoringService.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0) {
+            BatchScorer.main(args);
+            return;
+        }
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Formato binario de un CompiledTree (big-endian):
+ *
+ *   int magic "C45M", int versión, int nodos, int atributos, int clases, int reservado
+ *   int[nodos] feature, int[nodos] left, int[nodos] right, int[nodos] leafClass
+ *   double[nodos] threshold, double[nodos] missingLeft
+ *   por cada atributo y luego por cada clase: int longitud + bytes UTF-8
+ *   por cada atributo: int categorías (-1 si es numérico) + cada categoría como int longitud + bytes UTF-8
+ *   por cada hoja, en orden de id: int clases (-1 sin distribución) + double[clases]
+ *
+ * La cabecera ocupa 24 bytes para que los double queden alineados a 8. Las versiones 1 (sin
+ * diccionarios de categorías) y 2 (sin missingLeft ni distribuciones) se siguen leyendo; en ellas un
+ * valor desconocido sigue la rama izquierda, como cuando se guardaron.
+ *
+ * load mapea el archivo y el árbol predice sobre vistas de solo lectura de los arreglos de nodos, sin
+ * copiarlos: un proceso que solo puntúa arranca en milisegundos y varias JVM con el mismo modelo
+ * comparten sus páginas en el caché del sistema. Por eso save nunca escribe sobre el archivo: truncar
+ * un archivo mapeado haría fallar con SIGBUS a quien lo esté usando. En Windows un archivo mapeado no
+ * se puede reemplazar, así que allí save falla mientras algún árbol cargado de ese archivo siga vivo.
+ */
+public final class ModelIO {
+    private static final int MAGIC = 0x4334354D; // "C45M"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 24;
+
+    private ModelIO() {
+    }
+
+    public static void save(CompiledTree model, Path file) throws IOException {
+        byte[][] attributes = encode(model.attributeArray());
+        byte[][] classLabels = encode(model.classLabelArray());
+        String[][] categories = model.categoryArray();
+        byte[][][] dictionaries = new byte[categories.length][][];
+        long dictionaryBytes = 0;
+        for (int a = 0; a < categories.length; a++) {
+            dictionaries[a] = categories[a] == null ? null : encode(categories[a]);
+            dictionaryBytes += 4 + (dictionaries[a] == null ? 0 : tableBytes(dictionaries[a]));
+        }
+        int nodes = model.numNodes();
+        int[] feature = model.featureArray();
+        double[][] distribution = model.distributionArray();
+        long distributionBytes = 0;
+        for (int id = 0; id < nodes; id++) {
+            if (feature[id] < 0) distributionBytes += 4 + (distribution[id] == null ? 0 : 8L * distribution[id].length);
+        }
+
+        long size = HEADER_BYTES + 32L * nodes + tableBytes(attributes) + tableBytes(classLabels) + dictionaryBytes
+                + distributionBytes;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nodes)
+                .putInt(attributes.length).putInt(classLabels.length).putInt(0);
+        buffer.asIntBuffer().put(model.featureArray()).put(model.leftArray())
+                .put(model.rightArray()).put(model.leafClassArray());
+        buffer.position(buffer.position() + 16 * nodes);
+        buffer.asDoubleBuffer().put(model.thresholdArray()).put(model.missingLeftArray());
+        buffer.position(buffer.position() + 16 * nodes);
+        putTable(buffer, attributes);
+        putTable(buffer, classLabels);
+        for (byte[][] dictionary : dictionaries) {
+            buffer.putInt(dictionary == null ? -1 : dictionary.length);
+            if (dictionary != null) putTable(buffer, dictionary);
+        }
+        for (int id = 0; id < nodes; id++) {
+            if (feature[id] >= 0) continue;
+            buffer.putInt(distribution[id] == null ? -1 : distribution[id].length);
+            if (distribution[id] != null) {
+                for (double p : distribution[id]) buffer.putDouble(p);
+            }
+        }
+        buffer.flip();
+
+        // Se escribe en un temporal del mismo directorio y se mueve encima: quien lea el archivo a la vez
+        // (ScoringService.reload, otro proceso) ve el modelo anterior o el nuevo, nunca uno a medias
+        Path absolute = file.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static CompiledTree load(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("El archivo " + file + " no es un modelo C4.5");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Versión de modelo no soportada: " + version);
+        }
+        int nodes = buffer.getInt();
+        int numAttributes = buffer.getInt();
+        int numClassLabels = buffer.getInt();
+        buffer.getInt();
+
+        int doubles = version >= 3 ? 2 : 1;
+        if (nodes <= 0 || buffer.remaining() < (16L + 8 * doubles) * nodes) {
+            throw new IOException("Modelo truncado: " + file);
+        }
+        int start = buffer.position();
+        IntBuffer feature = ints(buffer, start, nodes);
+        IntBuffer left = ints(buffer, start + 4 * nodes, nodes);
+        IntBuffer right = ints(buffer, start + 8 * nodes, nodes);
+        IntBuffer leafClass = ints(buffer, start + 12 * nodes, nodes);
+        DoubleBuffer threshold = doubles(buffer, start + 16 * nodes, nodes);
+        DoubleBuffer missingLeft;
+        if (version >= 3) {
+            missingLeft = doubles(buffer, start + 24 * nodes, nodes);
+        } else {
+            double[] toLeft = new double[nodes];
+            Arrays.fill(toLeft, 1);
+            missingLeft = DoubleBuffer.wrap(toLeft).asReadOnlyBuffer();
+        }
+        buffer.position(start + (16 + 8 * doubles) * nodes);
+
+        String[] attributes = getTable(buffer, numAttributes, file);
+        String[] classLabels = getTable(buffer, numClassLabels, file);
+        String[][] categories = new String[numAttributes][];
+        if (version >= 2) {
+            for (int a = 0; a < numAttributes; a++) {
+                if (buffer.remaining() < 4) throw new IOException("Modelo truncado: " + file);
+                int count = buffer.getInt();
+                if (count < -1) throw new IOException("Diccionario inválido en " + file);
+                if (count >= 0) categories[a] = getTable(buffer, count, file);
+            }
+        }
+        double[][] distribution = new double[nodes][];
+        if (version >= 3) {
+            for (int id = 0; id < nodes; id++) {
+                if (feature.get(id) >= 0) continue;
+                if (buffer.remaining() < 4) throw new IOException("Modelo truncado: " + file);
+                int count = buffer.getInt();
+                if (count < -1 || count > numClassLabels) throw new IOException("Distribución inválida en el nodo " + id + " de " + file);
+                if (count < 0) continue;
+                if (buffer.remaining() < 8L * count) throw new IOException("Modelo truncado: " + file);
+                distribution[id] = new double[count];
+                buffer.asDoubleBuffer().get(distribution[id]);
+                buffer.position(buffer.position() + 8 * count);
+            }
+        }
+        validate(feature, threshold, left, right, leafClass, categories, numClassLabels, file);
+        validate(feature, missingLeft, distribution, file);
+
+        return new CompiledTree(attributes, classLabels, feature, threshold, left, right, leafClass, categories,
+                missingLeft, distribution);
+    }
+
+    // Fracciones y probabilidades entre 0 y 1; los NaN también se rechazan
+    private static void validate(IntBuffer feature, DoubleBuffer missingLeft, double[][] distribution, Path file)
+            throws IOException {
+        for (int id = 0; id < feature.limit(); id++) {
+            double p = missingLeft.get(id);
+            if (feature.get(id) >= 0 && !(p >= 0 && p <= 1)) {
+                throw new IOException("Fracción de valores desconocidos inválida en el nodo " + id + " de " + file);
+            }
+            if (distribution[id] == null) continue;
+            for (double q : distribution[id]) {
+                if (!(q >= 0 && q <= 1)) throw new IOException("Distribución inválida en el nodo " + id + " de " + file);
+            }
+        }
+    }
+
+    // Un archivo corrupto no debe producir índices fuera de rango ni ciclos durante la predicción
+    private static void validate(IntBuffer feature, DoubleBuffer threshold, IntBuffer left, IntBuffer right,
+                                 IntBuffer leafClass, String[][] categories, int numClassLabels, Path file)
+            throws IOException {
+        int nodes = feature.limit();
+        for (int id = 0; id < nodes; id++) {
+            int f = feature.get(id);
+            double t = threshold.get(id);
+            if (f < 0) {
+                if (leafClass.get(id) < CompiledTree.NO_CLASS || leafClass.get(id) >= numClassLabels) {
+                    throw new IOException("Clase fuera de rango en el nodo " + id + " de " + file);
+                }
+            } else if (f >= categories.length
+                    || left.get(id) <= id || left.get(id) >= nodes
+                    || right.get(id) <= id || right.get(id) >= nodes) {
+                throw new IOException("Nodo interno inválido " + id + " en " + file);
+            } else if (categories[f] != null
+                    && !(t > 0 && t < categories[f].length - 1 && t - Math.floor(t) == 0.5)) {
+                throw new IOException("Umbral categórico inválido en el nodo " + id + " de " + file);
+            }
+        }
+    }
+
+    // Vista de solo lectura de count elementos desde el byte offset, en el orden big-endian del archivo
+    private static IntBuffer ints(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, 4 * count).asIntBuffer();
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, 8 * count).asDoubleBuffer();
+    }
+
+    static byte[][] encode(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        return bytes;
+    }
+
+    static long tableBytes(byte[][] table) {
+        long size = 0;
+        for (byte[] entry : table) size += 4 + entry.length;
+        return size;
+    }
+
+    static void putTable(ByteBuffer buffer, byte[][] table) {
+        for (byte[] entry : table) buffer.putInt(entry.length).put(entry);
+    }
+
+    static String[] getTable(ByteBuffer buffer, int count, Path file) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < 4) throw new IOException("Archivo truncado: " + file);
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) throw new IOException("Archivo truncado: " + file);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+}
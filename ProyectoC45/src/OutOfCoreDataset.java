@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/*
+ * Dataset en disco para tablas que no caben en el heap. Writer recibe las filas con la misma interfaz
+ * que ColumnarDataset.Builder y las vuelca a un archivo por columna; finish cuantiza cada columna como
+ * BinnedDataset y deja en disco solo un short por fila y atributo (el bin, -1 si es NaN) y un int por
+ * fila para la clase (-1 si falta). En el heap quedan los cortes, los diccionarios y los conteos de
+ * clase. OutOfCoreTreeBuilder lee los archivos mapeados, por bloques y en orden de fila.
+ *
+ * Los archivos son temporales: se escriben en el orden de bytes de la máquina y close los borra.
+ */
+public final class OutOfCoreDataset implements AutoCloseable {
+    static final int BLOCK_ROWS = 1 << 13;
+    // Cada archivo se mapea por tramos de este número de filas; es múltiplo de BLOCK_ROWS
+    private static final int SEGMENT_ROWS = 1 << 26;
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private final Path directory;
+    private final String[] attributes;
+    private final String[][] categories;
+    private final double[][] cuts;
+    private final double[][] values; // como BinnedDataset.values
+    private final double[] classValues;
+    private final String[] classNames;
+    private final int[] classCounts;
+    private final int rows;
+
+    private OutOfCoreDataset(Path directory, String[] attributes, String[][] categories, double[][] cuts,
+                             double[][] values, double[] classValues, String[] classNames, int[] classCounts, int rows) {
+        this.directory = directory;
+        this.attributes = attributes;
+        this.categories = categories;
+        this.cuts = cuts;
+        this.values = values;
+        this.classValues = classValues;
+        this.classNames = classNames;
+        this.classCounts = classCounts;
+        this.rows = rows;
+    }
+
+    public int numRows() {
+        return rows;
+    }
+
+    public int numAttributes() {
+        return attributes.length;
+    }
+
+    public String attributeName(int a) {
+        return attributes[a];
+    }
+
+    public List<String> attributeNames() {
+        return Arrays.asList(attributes);
+    }
+
+    public int attributeIndex(String name) {
+        for (int a = 0; a < attributes.length; a++) {
+            if (attributes[a].equals(name)) return a;
+        }
+        return -1;
+    }
+
+    public boolean isCategorical(int a) {
+        return categories[a] != null;
+    }
+
+    // Categorías en orden alfabético; null si el atributo es numérico
+    public String[] categories(int a) {
+        return categories[a];
+    }
+
+    public int numClasses() {
+        return classValues.length;
+    }
+
+    // Mismas etiquetas que ColumnarDataset.classLabel
+    public String classLabel(int classId) {
+        if (classId < 0) return Double.toString(Double.NaN);
+        return classNames != null ? classNames[classId] : Double.toString(classValues[classId]);
+    }
+
+    // Filas de cada clase en todo el dataset
+    int[] classCounts() {
+        return classCounts;
+    }
+
+    int numBins(int attr) {
+        return cuts[attr].length + 1;
+    }
+
+    // Umbral de "bin <= b" en un nodo con el histograma hist, como BinnedDataset.splitThreshold
+    double threshold(int attr, int bin, int[] hist, int stride) {
+        return BinnedDataset.splitThreshold(cuts[attr], values[attr], bin, hist, stride);
+    }
+
+    ColumnFile labels() throws IOException {
+        return new ColumnFile(directory.resolve("labels.bin"), 4, rows, false);
+    }
+
+    ColumnFile codes(int attr) throws IOException {
+        return new ColumnFile(codesPath(directory, attr), 2, rows, false);
+    }
+
+    // Archivo nuevo de un int por fila, inicializado en 0, para uso del constructor del árbol
+    ColumnFile newIntFile(String name) throws IOException {
+        return new ColumnFile(directory.resolve(name), 4, rows, true);
+    }
+
+    void deleteFile(String name) {
+        delete(directory.resolve(name));
+    }
+
+    private static Path codesPath(Path directory, int attr) {
+        return directory.resolve("attr" + attr + ".bin");
+    }
+
+    private static Path rawPath(Path directory, int attr) {
+        return directory.resolve("attr" + attr + ".raw");
+    }
+
+    @Override
+    public void close() {
+        delete(directory);
+    }
+
+    /*
+     * En Windows no se puede borrar un archivo mientras siga mapeado, y el mapeo solo se libera cuando
+     * el recolector pasa por el buffer; lo que no se pueda borrar ahora se borra al salir.
+     */
+    static void delete(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> children = Files.list(path)) {
+                    for (Path child : (Iterable<Path>) children::iterator) delete(child);
+                }
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    /*
+     * Una columna de tamaño fijo por fila, mapeada por tramos de SEGMENT_ROWS. Los bloques que lee o
+     * escribe el constructor del árbol empiezan en múltiplos de BLOCK_ROWS, así que nunca cruzan un tramo.
+     */
+    static final class ColumnFile {
+        private final ByteBuffer[] segments;
+        private final int bytesPerRow;
+
+        ColumnFile(Path path, int bytesPerRow, int rows, boolean create) throws IOException {
+            this.bytesPerRow = bytesPerRow;
+            this.segments = new ByteBuffer[(rows + SEGMENT_ROWS - 1) / SEGMENT_ROWS];
+            try (FileChannel channel = create
+                    ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(path, StandardOpenOption.READ)) {
+                FileChannel.MapMode mode = create ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+                for (int s = 0; s < segments.length; s++) {
+                    long from = (long) s * SEGMENT_ROWS;
+                    long count = Math.min(SEGMENT_ROWS, rows - from);
+                    segments[s] = channel.map(mode, from * bytesPerRow, count * bytesPerRow).order(ByteOrder.nativeOrder());
+                }
+            }
+        }
+
+        void read(int from, short[] dst, int count) {
+            segments[from / SEGMENT_ROWS].asShortBuffer().get(from % SEGMENT_ROWS, dst, 0, count);
+        }
+
+        void read(int from, int[] dst, int count) {
+            segments[from / SEGMENT_ROWS].asIntBuffer().get(from % SEGMENT_ROWS, dst, 0, count);
+        }
+
+        void write(int from, int[] src, int count) {
+            segments[from / SEGMENT_ROWS].asIntBuffer().put(from % SEGMENT_ROWS, src, 0, count);
+        }
+
+        double get(int row) {
+            return segments[row / SEGMENT_ROWS].getDouble((row % SEGMENT_ROWS) * bytesPerRow);
+        }
+    }
+
+    /*
+     * Recibe las filas como ColumnarDataset.Builder con trackQuantiles(maxBins): los atributos numéricos
+     * alimentan su QuantileSketch al escribirse, y las columnas de texto usan el mismo diccionario. Por
+     * eso finish da los mismos cortes y códigos que BinnedDataset.of sobre el dataset en memoria. Los
+     * atributos que no se escriban en una fila quedan en NaN.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final String[] attributes;
+        private final int maxBins;
+        private final Path directory;
+        private final FileChannel[] channels;
+        private final ByteBuffer[] chunks;
+        private final double[] row;
+        private final QuantileSketch[] sketches;
+        private final ColumnarDataset.Dictionary[] dictionaries;
+        private ColumnarDataset.Dictionary classDictionary;
+        private final Set<Double> numericLabels = new HashSet<>();
+        private int size;
+        private boolean finished;
+
+        // Los archivos van en un subdirectorio nuevo de parent, o del directorio temporal si parent es null
+        public Writer(List<String> attributes, int maxBins, Path parent) throws IOException {
+            if (maxBins < 2 || maxBins > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("El número de bins debe estar entre 2 y " + Short.MAX_VALUE);
+            }
+            this.attributes = attributes.toArray(new String[0]);
+            this.maxBins = maxBins;
+            this.directory = parent != null ? Files.createTempDirectory(parent, "c45-") : Files.createTempDirectory("c45-");
+            int n = this.attributes.length;
+            this.channels = new FileChannel[n + 1];
+            this.chunks = new ByteBuffer[n + 1];
+            this.row = new double[n + 1];
+            this.sketches = new QuantileSketch[n];
+            this.dictionaries = new ColumnarDataset.Dictionary[n];
+            try {
+                for (int a = 0; a <= n; a++) {
+                    Path path = a < n ? rawPath(directory, a) : directory.resolve("labels.raw");
+                    channels[a] = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    chunks[a] = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            for (int a = 0; a < n; a++) sketches[a] = new QuantileSketch(ColumnarDataset.QUANTILE_SAMPLE_SIZE, maxBins);
+            Arrays.fill(row, Double.NaN);
+        }
+
+        public void set(int attribute, double value) {
+            row[attribute] = value;
+            sketches[attribute].add(value);
+        }
+
+        // Valor de texto: la columna pasa a ser categórica. null o vacío cuenta como valor faltante
+        public void setCategory(int attribute, String value) {
+            if (dictionaries[attribute] == null) dictionaries[attribute] = new ColumnarDataset.Dictionary();
+            row[attribute] = dictionaries[attribute].code(value);
+        }
+
+        public void endRow(double label) throws IOException {
+            if (!Double.isNaN(label)) {
+                if (classDictionary != null) {
+                    throw new IllegalArgumentException("La clase no puede mezclar valores numéricos y de texto");
+                }
+                numericLabels.add(label);
+            }
+            writeRow(label);
+        }
+
+        // Etiqueta de texto: la clase pasa a ser categórica
+        public void endRow(String label) throws IOException {
+            if (classDictionary == null) {
+                if (!numericLabels.isEmpty()) {
+                    throw new IllegalArgumentException("La clase no puede mezclar valores numéricos y de texto");
+                }
+                classDictionary = new ColumnarDataset.Dictionary();
+            }
+            writeRow(classDictionary.code(label));
+        }
+
+        private void writeRow(double label) throws IOException {
+            if (size == Integer.MAX_VALUE) {
+                throw new IllegalStateException("Demasiadas filas para un dataset");
+            }
+            row[attributes.length] = label;
+            for (int a = 0; a < row.length; a++) {
+                ByteBuffer chunk = chunks[a];
+                chunk.putDouble(row[a]);
+                if (!chunk.hasRemaining()) flush(channels[a], chunk);
+                row[a] = Double.NaN;
+            }
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /*
+         * Cuantiza las columnas y borra los archivos intermedios de doubles. Solo se recorre un archivo
+         * a la vez, mapeado, así que el heap no crece con el número de filas.
+         */
+        public OutOfCoreDataset finish() throws IOException {
+            int n = attributes.length;
+            for (int a = 0; a <= n; a++) {
+                flush(channels[a], chunks[a]);
+                channels[a].close();
+            }
+
+            // Clase: los mismos valores e ids que ColumnarDataset.Builder.build
+            double[] recode = classDictionary != null ? classDictionary.recoding() : null;
+            String[] classNames = classDictionary != null ? classDictionary.sortedValues() : null;
+            double[] classValues = recode != null
+                    ? Arrays.stream(recode).distinct().sorted().toArray()
+                    : numericLabels.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+            int[] classCounts = new int[classValues.length];
+            ColumnFile rawLabels = new ColumnFile(directory.resolve("labels.raw"), 8, size, false);
+            try (FileChannel out = FileChannel.open(directory.resolve("labels.bin"), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer chunk = chunks[n];
+                for (int r = 0; r < size; r++) {
+                    double v = rawLabels.get(r);
+                    int label = -1;
+                    if (!Double.isNaN(v)) {
+                        label = Arrays.binarySearch(classValues, recode != null ? recode[(int) v] : v);
+                        classCounts[label]++;
+                    }
+                    chunk.putInt(label);
+                    if (!chunk.hasRemaining()) flush(out, chunk);
+                }
+                flush(out, chunk);
+            }
+            delete(directory.resolve("labels.raw"));
+
+            String[][] categories = new String[n][];
+            double[][] cuts = new double[n][];
+            double[][] values = new double[n][];
+            for (int a = 0; a < n; a++) {
+                ColumnFile raw = new ColumnFile(rawPath(directory, a), 8, size, false);
+                double[] attrRecode = null;
+                QuantileSketch sketch = sketches[a];
+                if (dictionaries[a] != null) {
+                    attrRecode = dictionaries[a].recoding();
+                    categories[a] = dictionaries[a].sortedValues();
+                    if (categories[a] == null) {
+                        // Números escritos como texto: la columna es numérica y el resumen se hace con los números
+                        sketch = new QuantileSketch(ColumnarDataset.QUANTILE_SAMPLE_SIZE, maxBins);
+                        for (int r = 0; r < size; r++) sketch.add(value(raw.get(r), attrRecode));
+                    }
+                }
+                sketches[a] = null;
+                cuts[a] = categories[a] != null ? BinnedDataset.categoryCuts(categories[a].length) : sketch.cutPoints(maxBins);
+                if (categories[a] == null) values[a] = sketch.binValues(maxBins);
+                boolean categorical = categories[a] != null;
+
+                try (FileChannel out = FileChannel.open(codesPath(directory, a), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE)) {
+                    ByteBuffer chunk = chunks[a];
+                    for (int r = 0; r < size; r++) {
+                        double v = value(raw.get(r), attrRecode);
+                        int code = Double.isNaN(v) ? -1 : categorical ? (int) v : BinnedDataset.bin(cuts[a], v);
+                        chunk.putShort((short) code);
+                        if (!chunk.hasRemaining()) flush(out, chunk);
+                    }
+                    flush(out, chunk);
+                }
+                delete(rawPath(directory, a));
+            }
+            finished = true;
+            return new OutOfCoreDataset(directory, attributes, categories, cuts, values, classValues, classNames,
+                    classCounts, size);
+        }
+
+        private static double value(double raw, double[] recode) {
+            return recode == null || Double.isNaN(raw) ? raw : recode[(int) raw];
+        }
+
+        // Sin finish, cierra los archivos y borra el directorio
+        @Override
+        public void close() {
+            if (finished) return;
+            for (FileChannel channel : channels) {
+                try {
+                    if (channel != null) channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error al cerrar un archivo de columna: " + e.getMessage());
+                }
+            }
+            delete(directory);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) channel.write(chunk);
+        chunk.clear();
+    }
+}
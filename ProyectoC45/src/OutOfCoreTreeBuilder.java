@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Construcción por niveles sobre un OutOfCoreDataset, con las mismas reglas que HistogramTreeBuilder:
+ * con los mismos cortes el árbol es el mismo. En lugar de listas de filas por nodo, un archivo mapeado
+ * guarda el nodo abierto de cada fila en el nivel actual (-1 si la fila ya llegó a una hoja o tenía NaN
+ * en el atributo de una división). Cada nivel hace un solo recorrido secuencial de las columnas: baja
+ * cada fila al hijo que le toca según la división del nivel anterior y suma su (bin, clase) en los
+ * histogramas de todos los nodos abiertos del nivel. Si esos histogramas no caben en histogramBytes, el
+ * nivel se recorre en varias tandas de nodos.
+ *
+ * Los conteos de clase de un hijo salen del histograma del padre para el atributo de la división, así
+ * que las hojas por tamaño, profundidad o clase única se cierran sin volver a leer sus filas.
+ */
+final class OutOfCoreTreeBuilder {
+    static final long DEFAULT_HISTOGRAM_BYTES = 64L << 20;
+
+    private final OutOfCoreDataset data;
+    private final int numClasses;
+    private final int stride;
+    private final TrainingMonitor monitor;
+    private final int maxDepth;
+    private final int minSamplesSplit;
+    private final int minSamplesLeaf;
+    private final double minGainRatio;
+    private final boolean reuseNumericAttributes;
+    private final long histogramBytes;
+
+    OutOfCoreTreeBuilder(OutOfCoreDataset data, TrainingMonitor monitor, int maxDepth, int minSamplesSplit,
+                         int minSamplesLeaf, double minGainRatio, boolean reuseNumericAttributes, long histogramBytes) {
+        this.data = data;
+        this.numClasses = data.numClasses();
+        this.stride = numClasses + 1; // conteo por clase + total del bin (incluye etiquetas faltantes)
+        this.monitor = monitor;
+        this.maxDepth = maxDepth;
+        this.minSamplesSplit = minSamplesSplit;
+        this.minSamplesLeaf = minSamplesLeaf;
+        this.minGainRatio = minGainRatio;
+        this.reuseNumericAttributes = reuseNumericAttributes;
+        this.histogramBytes = histogramBytes;
+    }
+
+    // Nodo que todavía hay que dividir, y después la división que se eligió para bajar sus filas
+    private static final class Open {
+        final TreeNode node;
+        final int[] attributes;
+        final int depth;
+        final int size;
+        final int[] counts;
+        int[][] hist; // por atributo del dataset; null si no es candidato en este nodo
+
+        int splitAttr = -1; // -1: quedó como hoja
+        int splitBin;       // último bin de la izquierda; -1 en una división categórica
+        int[] childSlots;   // posición de cada hijo en el nivel siguiente, o -1 si es una hoja
+
+        Open(TreeNode node, int[] attributes, int depth, int size, int[] counts) {
+            this.node = node;
+            this.attributes = attributes;
+            this.depth = depth;
+            this.size = size;
+            this.counts = counts;
+        }
+
+        int route(int code) {
+            if (splitAttr < 0 || code < 0) return -1;
+            if (splitBin < 0) return childSlots[code];
+            return code <= splitBin ? childSlots[0] : childSlots[1];
+        }
+    }
+
+    TreeNode build(int[] attributes) throws IOException {
+        if (data.numRows() == 0) return null;
+        List<Open> level = new ArrayList<>();
+        TreeNode root = new TreeNode();
+        open(root, attributes, 0, data.numRows(), data.classCounts().clone(), level);
+        if (level.isEmpty()) return root;
+
+        OutOfCoreDataset.ColumnFile labels = data.labels();
+        OutOfCoreDataset.ColumnFile[] codes = new OutOfCoreDataset.ColumnFile[data.numAttributes()];
+        for (int a : attributes) codes[a] = data.codes(a);
+        OutOfCoreDataset.ColumnFile nodes = data.newIntFile("nodes.bin"); // todas las filas empiezan en la raíz
+        try {
+            Open[] previous = null;
+            while (!level.isEmpty()) {
+                Open[] current = level.toArray(new Open[0]);
+                for (int from = 0; from < current.length; ) {
+                    int to = batchEnd(current, from);
+                    for (int s = from; s < to; s++) {
+                        current[s].hist = new int[data.numAttributes()][];
+                        for (int a : current[s].attributes) current[s].hist[a] = new int[data.numBins(a) * stride];
+                    }
+                    // Solo la primera tanda del nivel baja las filas; las siguientes ya las encuentran en su nodo
+                    scan(labels, codes, nodes, from == 0 ? previous : null, current, from, to);
+                    from = to;
+                }
+
+                List<Open> next = new ArrayList<>();
+                for (Open o : current) split(o, next);
+                previous = current;
+                level = next;
+            }
+        } finally {
+            data.deleteFile("nodes.bin");
+        }
+        return root;
+    }
+
+    private int batchEnd(Open[] level, int from) {
+        long bytes = 0;
+        int to = from;
+        while (to < level.length) {
+            long nodeBytes = 0;
+            for (int a : level[to].attributes) nodeBytes += 4L * data.numBins(a) * stride;
+            if (to > from && bytes + nodeBytes > histogramBytes) break;
+            bytes += nodeBytes;
+            to++;
+        }
+        return to;
+    }
+
+    private void scan(OutOfCoreDataset.ColumnFile labels, OutOfCoreDataset.ColumnFile[] codes,
+                      OutOfCoreDataset.ColumnFile nodes, Open[] previous, Open[] level, int from, int to) {
+        if (monitor != null) monitor.checkCancelled();
+
+        // Solo se leen las columnas que hacen falta para bajar las filas o para algún histograma de la tanda
+        boolean[] needed = new boolean[codes.length];
+        if (previous != null) {
+            for (Open p : previous) {
+                if (p.splitAttr >= 0) needed[p.splitAttr] = true;
+            }
+        }
+        for (int s = from; s < to; s++) {
+            for (int a : level[s].attributes) needed[a] = true;
+        }
+        short[][] block = new short[codes.length][];
+        for (int a = 0; a < codes.length; a++) {
+            if (needed[a]) block[a] = new short[OutOfCoreDataset.BLOCK_ROWS];
+        }
+        int[] label = new int[OutOfCoreDataset.BLOCK_ROWS];
+        int[] node = new int[OutOfCoreDataset.BLOCK_ROWS];
+
+        int rows = data.numRows();
+        for (int start = 0; start < rows; start += OutOfCoreDataset.BLOCK_ROWS) {
+            int n = Math.min(OutOfCoreDataset.BLOCK_ROWS, rows - start);
+            nodes.read(start, node, n);
+            labels.read(start, label, n);
+            for (int a = 0; a < codes.length; a++) {
+                if (block[a] != null) codes[a].read(start, block[a], n);
+            }
+
+            if (previous != null) {
+                for (int i = 0; i < n; i++) {
+                    if (node[i] < 0) continue;
+                    Open p = previous[node[i]];
+                    node[i] = p.route(p.splitAttr < 0 ? -1 : block[p.splitAttr][i]);
+                }
+                nodes.write(start, node, n);
+            }
+
+            for (int a = 0; a < codes.length; a++) {
+                short[] code = block[a];
+                if (code == null) continue;
+                for (int i = 0; i < n; i++) {
+                    int s = node[i];
+                    if (s < from || s >= to || code[i] < 0) continue;
+                    int[] h = level[s].hist[a];
+                    if (h == null) continue;
+                    int base = code[i] * stride;
+                    if (label[i] >= 0) h[base + label[i]]++;
+                    h[base + numClasses]++;
+                }
+            }
+        }
+    }
+
+    private void split(Open o, List<Open> next) {
+        int[][] hist = new int[o.attributes.length][];
+        boolean[] categorical = new boolean[o.attributes.length];
+        for (int i = 0; i < hist.length; i++) {
+            hist[i] = o.hist[o.attributes[i]];
+            categorical[i] = data.isCategorical(o.attributes[i]);
+        }
+        o.hist = null;
+        int[] split = HistogramTreeBuilder.findBestSplit(hist, categorical, numClasses, o.size,
+                minSamplesLeaf, minGainRatio, null);
+        if (split == null) {
+            majorityLeaf(o.node, o.counts, o.size);
+            return;
+        }
+        int best = split[0];
+        int bestAttr = o.attributes[best];
+        int[] h = hist[best];
+        int bins = data.numBins(bestAttr);
+        o.splitAttr = bestAttr;
+        o.splitBin = split[1];
+
+        TreeNode node = o.node;
+        node.attribute = data.attributeName(bestAttr);
+        node.weight = o.size;
+        node.distribution = distribution(o.counts);
+
+        // Como en HistogramTreeBuilder: un atributo categórico nunca se repite en el camino
+        boolean keep = reuseNumericAttributes && split[1] >= 0;
+        int[] newAttrs = new int[keep ? o.attributes.length : o.attributes.length - 1];
+        int k = 0;
+        for (int i = 0; i < o.attributes.length; i++) {
+            if (i != best || keep) newAttrs[k++] = o.attributes[i];
+        }
+
+        if (split[1] < 0) {
+            node.categories = data.categories(bestAttr);
+            node.children = new TreeNode[bins];
+            o.childSlots = new int[bins];
+            for (int v = 0; v < bins; v++) {
+                int[] counts = new int[numClasses];
+                System.arraycopy(h, v * stride, counts, 0, numClasses);
+                int size = h[v * stride + numClasses];
+                node.children[v] = new TreeNode();
+                if (size == 0) {
+                    // Las ramas sin filas se vuelven hojas con la clase mayoritaria del nodo
+                    majorityLeaf(node.children[v], o.counts, 0);
+                    o.childSlots[v] = -1;
+                } else {
+                    o.childSlots[v] = open(node.children[v], newAttrs, o.depth + 1, size, counts, next);
+                }
+            }
+            return;
+        }
+
+        node.threshold = data.threshold(bestAttr, split[1], h, stride);
+        int[] leftCounts = new int[numClasses];
+        int[] rightCounts = new int[numClasses];
+        int leftSize = 0;
+        int rightSize = 0;
+        for (int b = 0; b < bins; b++) {
+            int[] side = b <= split[1] ? leftCounts : rightCounts;
+            for (int c = 0; c < numClasses; c++) side[c] += h[b * stride + c];
+            if (b <= split[1]) leftSize += h[b * stride + numClasses];
+            else rightSize += h[b * stride + numClasses];
+        }
+        node.left = new TreeNode();
+        node.right = new TreeNode();
+        o.childSlots = new int[]{
+                open(node.left, newAttrs, o.depth + 1, leftSize, leftCounts, next),
+                open(node.right, newAttrs, o.depth + 1, rightSize, rightCounts, next)};
+    }
+
+    /*
+     * Completa node como hoja si corresponde (mismas reglas y en el mismo orden que buildTree de
+     * HistogramTreeBuilder) y devuelve -1; si no, lo agrega al nivel siguiente y devuelve su posición.
+     */
+    private int open(TreeNode node, int[] attributes, int depth, int size, int[] counts, List<Open> next) {
+        if (monitor != null) monitor.nodeStarted(depth, size);
+        int labeled = 0;
+        int only = -1;
+        for (int c = 0; c < numClasses; c++) {
+            labeled += counts[c];
+            if (counts[c] == size) only = c;
+        }
+        if (labeled == 0 || only >= 0) {
+            // Todas las filas tienen la misma clase, o ninguna tiene clase
+            leaf(node, only, data.classLabel(only), counts, size);
+            return -1;
+        }
+        if (attributes.length == 0 || size < minSamplesSplit || (maxDepth > 0 && depth >= maxDepth)) {
+            majorityLeaf(node, counts, size);
+            return -1;
+        }
+        next.add(new Open(node, attributes, depth, size, counts));
+        return next.size() - 1;
+    }
+
+    private void majorityLeaf(TreeNode node, int[] counts, int weight) {
+        int majority = SplitStats.majority(counts);
+        leaf(node, majority, majority >= 0 ? data.classLabel(majority) : "N/A", counts, weight);
+    }
+
+    private static void leaf(TreeNode node, int classId, String label, int[] counts, int weight) {
+        node.classId = classId;
+        node.label = label;
+        node.weight = weight;
+        node.distribution = distribution(counts);
+    }
+
+    private static double[] distribution(int[] counts) {
+        double[] dist = new double[counts.length];
+        for (int c = 0; c < counts.length; c++) dist[c] = counts[c];
+        return dist;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+ * Resumen de una columna para elegir los cortes de los bins sin ordenarla completa: una muestra
+ * reservorio de tamaño fijo para los cuantiles, más la lista exacta de valores distintos mientras
+ * no pasen de distinctLimit (columnas Sí/No, escalas, conteos pequeños).
+ */
+final class QuantileSketch {
+    private final double[] sample;
+    private final SplittableRandom random = new SplittableRandom(0x5EED);
+    private long seen;
+
+    private final int distinctLimit;
+    private double[] distinct = new double[8];
+    private int numDistinct;
+    private boolean tooManyDistinct;
+
+    QuantileSketch(int sampleSize, int distinctLimit) {
+        this.sample = new double[sampleSize];
+        this.distinctLimit = distinctLimit;
+    }
+
+    void add(double value) {
+        if (Double.isNaN(value)) return;
+
+        if (seen < sample.length) {
+            sample[(int) seen] = value;
+        } else {
+            long j = random.nextLong(seen + 1);
+            if (j < sample.length) sample[(int) j] = value;
+        }
+        seen++;
+
+        if (!tooManyDistinct) {
+            int pos = Arrays.binarySearch(distinct, 0, numDistinct, value);
+            if (pos < 0) {
+                if (numDistinct == distinctLimit) {
+                    tooManyDistinct = true;
+                    distinct = null;
+                    return;
+                }
+                pos = -pos - 1;
+                if (numDistinct == distinct.length) distinct = Arrays.copyOf(distinct, numDistinct * 2);
+                System.arraycopy(distinct, pos, distinct, pos + 1, numDistinct - pos);
+                distinct[pos] = value;
+                numDistinct++;
+            }
+        }
+    }
+
+    /*
+     * Cortes ascendentes para como mucho maxBins bins: el bin b contiene los valores en (cut[b-1], cut[b]].
+     * Con pocos valores distintos los cortes son los puntos medios, igual que en el modo exacto.
+     */
+    double[] cutPoints(int maxBins) {
+        if (seen == 0) return new double[0];
+
+        if (!tooManyDistinct && numDistinct <= maxBins) {
+            double[] cuts = new double[numDistinct - 1];
+            for (int i = 0; i < cuts.length; i++) cuts[i] = (distinct[i] + distinct[i + 1]) / 2;
+            return cuts;
+        }
+
+        int m = (int) Math.min(seen, sample.length);
+        double[] sorted = Arrays.copyOf(sample, m);
+        Arrays.sort(sorted);
+        double[] cuts = new double[maxBins - 1];
+        int n = 0;
+        for (int k = 1; k < maxBins; k++) {
+            double cut = sorted[Math.max(0, (int) ((long) k * m / maxBins) - 1)];
+            if (cut < sorted[m - 1] && (n == 0 || cut > cuts[n - 1])) cuts[n++] = cut;
+        }
+        return Arrays.copyOf(cuts, n);
+    }
+
+    // Valor de cada bin cuando cutPoints(maxBins) son los puntos medios entre valores distintos; null si son cuantiles
+    double[] binValues(int maxBins) {
+        if (seen == 0 || tooManyDistinct || numDistinct > maxBins) return null;
+        return Arrays.copyOf(distinct, numDistinct);
+    }
+
+    static QuantileSketch of(double[] column, int sampleSize, int distinctLimit) {
+        QuantileSketch sketch = new QuantileSketch(sampleSize, distinctLimit);
+        for (double v : column) sketch.add(v);
+        return sketch;
+    }
+}
@@ -1,60 +1,64 @@
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
-public class SQLLoader {
-    private final String connectionUrl = "jdbc:sqlserver://localhost:1433;databaseName=BD2_Medica;encrypt=true;trustServerCertificate=true";
-    private final String user = "usuario_c45";
-    private final String password = "1234";
+public class SQLLoader implements AutoCloseable {
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final Pattern REGULAR_IDENTIFIER = Pattern.compile("[\\p{L}_@#][\\p{L}\\p{N}_@#$]*");
 
+    private final ConnectionPool pool;
+    // Columnas de cada tabla por nombre en minúsculas; ver clearSchemaCache
+    private final Map<String, List<String>> schemaCache = new ConcurrentHashMap<>();
+    private int fetchSize = 10000;
+    private int quantileBins = 0;
 
-    private static Map<Double, String> classLabelReverseMap = new HashMap<>();
+    public SQLLoader() {
+        this("jdbc:sqlserver://localhost:1433;databaseName=BD2_Medica;encrypt=true;trustServerCertificate=true",
+                "usuario_c45", "1234");
+    }
 
-    
-    public static String getOriginalClassLabel(Double mappedValue) {
-        return classLabelReverseMap.getOrDefault(mappedValue, "Desconocido");
+    // Otra base o servidor con las mismas tablas
+    public SQLLoader(String connectionUrl, String user, String password) {
+        this.pool = new ConnectionPool(connectionUrl, user, password, MAX_IDLE_CONNECTIONS);
     }
-   
-    private double mapSiNoToDouble(String value) {
-        if (value == null) return Double.NaN;
-        value = value.trim().toLowerCase();
-        switch (value) {
-            case "sí": case "si": return 1.0; // Sí: 1.0
-            case "no":           return 0.0; // No: 0.0
-            default:
-                System.err.println("Advertencia: Valor Sí/No desconocido: '" + value + "'. Devolviendo NaN.");
-                return Double.NaN;
+
+    // Filas pedidas al servidor por viaje; el driver usa buffering adaptativo y no retiene el resultado completo
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("El fetch size debe ser al menos 1");
         }
+        this.fetchSize = fetchSize;
     }
 
+    public int getFetchSize() {
+        return fetchSize;
+    }
 
-    private double mapDiagnosticoLeucemiaToDouble(String value) {
-        if (value == null) return Double.NaN;
-        value = value.trim().toLowerCase();
-        double mappedValue;
-        switch (value) {
-            case "positivo": mappedValue = 1.0; break; // Positivo: 1.0
-            case "negativo": mappedValue = 0.0; break; // Negativo: 0.0
-            default:
-                System.err.println("Advertencia: Valor de Diagnóstico Leucemia desconocido: '" + value + "'. Devolviendo NaN.");
-                mappedValue = Double.NaN;
-        }
-
-        if (!Double.isNaN(mappedValue)) {
-            classLabelReverseMap.put(mappedValue, value); 
-        }
-        return mappedValue;
+    // Con N > 0, cargarDataset resume los cuantiles de cada columna mientras lee, para C45DecisionTree.setHistogramBins(N)
+    public void setQuantileBins(int quantileBins) {
+        this.quantileBins = quantileBins;
     }
 
 
+    /*
+     * Carga antigua, fila a fila. Conserva los códigos fijos de siempre sin distinguir mayúsculas:
+     * Sí/Si y Positivo valen 1, No y Negativo valen 0. El resto del texto recibe códigos 2, 3, ... en
+     * orden de aparición por columna, salvo los números escritos como texto. Para atributos categóricos
+     * con su diccionario usar cargarDataset.
+     */
     public List<Map<String, Double>> cargarDatos(String tabla) {
+        long start = System.nanoTime();
         List<Map<String, Double>> datos = new ArrayList<>();
 
-        try (Connection conn = DriverManager.getConnection(connectionUrl, user, password);
+        try (Connection conn = connect();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM " + tabla)) {
+             ResultSet rs = stmt.executeQuery("SELECT * FROM " + quoteTable(tabla))) {
 
             ResultSetMetaData metaData = rs.getMetaData();
             int numCols = metaData.getColumnCount();
+            List<Map<String, Double>> diccionarios = new ArrayList<>();
+            for (int i = 0; i < numCols; i++) diccionarios.add(new HashMap<>());
 
             while (rs.next()) {
                 Map<String, Double> fila = new HashMap<>();
@@ -66,36 +70,7 @@ public class SQLLoader {
                         continue;
                     }
 
-                    Double mappedValue = null;
-
-                    if (val == null || val.trim().isEmpty()) {
-                        mappedValue = Double.NaN;
-                    } else {
-                        try {
-                           
-                            mappedValue = Double.parseDouble(val);
-                        } catch (NumberFormatException e) {
-                        
-                            switch (col.toLowerCase()) {
-                                case "fatiga_persistente":
-                                case "perdida_peso_inusual":
-                                case "fiebre_recurrente":
-                                case "historial_exposicion_radiacion":
-                                case "historial_quimioterapia_previa":
-                                    mappedValue = mapSiNoToDouble(val);
-                                    break;
-                                case "diagnostico_leucemia": 
-                                    mappedValue = mapDiagnosticoLeucemiaToDouble(val);
-                                    break;
-                                default:
-                                    
-                                    System.err.println("Advertencia: Columna '" + col + "' con valor no numérico no mapeado: '" + val + "'. Devolviendo NaN.");
-                                    mappedValue = Double.NaN;
-                                    break;
-                            }
-                        }
-                    }
-                    fila.put(col, mappedValue);
+                    fila.put(col, mapValue(diccionarios.get(i - 1), val));
                 }
                 datos.add(fila);
             }
@@ -104,48 +79,410 @@ public class SQLLoader {
             e.printStackTrace();
         }
 
+        recordLoad(tabla, datos.size(), start);
         return datos;
     }
 
 
-    public List<String> obtenerAtributos(String tabla, String columnaClase) {
-        List<String> atributos = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(connectionUrl, user, password);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT TOP 1 * FROM " + tabla)) {
+    // Si la consulta falla a mitad se lanza la excepción; nunca se devuelve una parte de la tabla
+    public ColumnarDataset cargarDataset(String tabla, List<String> atributos, String columnaClase)
+            throws SQLException {
+        long start = System.nanoTime();
+        ColumnarDataset.Builder builder = new ColumnarDataset.Builder(atributos);
+        if (quantileBins > 0) builder.trackQuantiles(quantileBins);
+        List<String> columnas = new ArrayList<>(atributos);
+        columnas.add(columnaClase);
 
-            ResultSetMetaData metaData = rs.getMetaData();
-            int numCols = metaData.getColumnCount();
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+
+            try (ResultSet rs = stmt.executeQuery(selectColumns(tabla, columnas))) {
+                ColumnDecoder[] decoders = resolveDecoders(rs.getMetaData());
+                int numAtributos = atributos.size();
 
-            for (int i = 1; i <= numCols; i++) {
-                String col = metaData.getColumnName(i);
-                if (!col.equalsIgnoreCase("Id") && !col.equalsIgnoreCase(columnaClase)) {
-                    atributos.add(col);
+                while (rs.next()) {
+                    readAttributes(rs, decoders, numAtributos, builder);
+                    if (decoders[numAtributos] == null) {
+                        builder.endRow(rs.getString(numAtributos + 1));
+                    } else {
+                        builder.endRow(decoders[numAtributos].decode(rs, numAtributos + 1));
+                    }
                 }
             }
+        }
+
+        ColumnarDataset data = builder.build();
+        recordLoad(tabla, data.numRows(), start);
+        return data;
+    }
+
+    /*
+     * Como cargarDataset, para tablas que no caben en el heap: las filas pasan por el cursor de
+     * openCursor a los archivos de un OutOfCoreDataset en directorio (o en el temporal si es null),
+     * cuantizadas en maxBins bins. Se entrena con C45DecisionTree.train(OutOfCoreDataset, atributos) y
+     * hay que cerrarlo para borrar los archivos.
+     */
+    public OutOfCoreDataset cargarDatasetEnDisco(String tabla, List<String> atributos, String columnaClase,
+                                                 int maxBins, java.nio.file.Path directorio)
+            throws SQLException, java.io.IOException {
+        long start = System.nanoTime();
+        List<String> columnas = new ArrayList<>(atributos);
+        columnas.add(columnaClase);
+        int numAtributos = atributos.size();
+
+        OutOfCoreDataset data;
+        try (OutOfCoreDataset.Writer writer = new OutOfCoreDataset.Writer(atributos, maxBins, directorio);
+             RowCursor cursor = openCursor(tabla, columnas)) {
+            while (cursor.next()) {
+                for (int a = 0; a < numAtributos; a++) {
+                    if (cursor.isText(a)) writer.setCategory(a, cursor.getText(a));
+                    else writer.set(a, cursor.getNumber(a));
+                }
+                if (cursor.isText(numAtributos)) writer.endRow(cursor.getText(numAtributos));
+                else writer.endRow(cursor.getNumber(numAtributos));
+            }
+            data = writer.finish();
+        }
+        recordLoad(tabla, data.numRows(), start);
+        return data;
+    }
+
+    /*
+     * Solo las filas con Id mayor que ultimoId, en orden de Id, conservando el Id de cada fila
+     * (ColumnarDataset.rowIds) para llevar la marca de agua de IncrementalC45Tree.
+     */
+    public ColumnarDataset cargarDatasetDesde(String tabla, List<String> atributos, String columnaClase, long ultimoId)
+            throws SQLException {
+        long start = System.nanoTime();
+        ColumnarDataset.Builder builder = new ColumnarDataset.Builder(atributos);
+        List<String> columnas = new ArrayList<>(atributos);
+        columnas.add(columnaClase);
+        columnas.add("Id");
+        String sql = selectColumns(tabla, columnas) + " WHERE [Id] > ? ORDER BY [Id]";
+
+        try (Connection conn = connect();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            stmt.setLong(1, ultimoId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                ColumnDecoder[] decoders = resolveDecoders(rs.getMetaData());
+                int numAtributos = atributos.size();
+
+                while (rs.next()) {
+                    readAttributes(rs, decoders, numAtributos, builder);
+                    long id = rs.getLong(numAtributos + 2);
+                    if (decoders[numAtributos] == null) {
+                        builder.endRow(rs.getString(numAtributos + 1), id);
+                    } else {
+                        builder.endRow(decoders[numAtributos].decode(rs, numAtributos + 1), id);
+                    }
+                }
+            }
+        }
+
+        ColumnarDataset data = builder.build();
+        recordLoad(tabla, data.numRows(), start);
+        return data;
+    }
+
+    // Conexión del pool; cerrarla la devuelve al pool en lugar de cerrar la sesión con el servidor
+    public Connection connect() throws SQLException {
+        return pool.acquire();
+    }
+
+    // Cierra las conexiones que quedaron en el pool
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /*
+     * Recorre las columnas pedidas con un cursor de solo avance sobre una conexión propia, trayendo
+     * fetchSize filas por viaje, sin guardar el resultado: la memoria no depende del tamaño de la tabla.
+     * Cerrar el cursor devuelve la conexión al pool.
+     */
+    public RowCursor openCursor(String tabla, List<String> columnas) throws SQLException {
+        String sql = selectColumns(tabla, columnas);
+        Connection conn = connect();
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            ResultSet rs = stmt.executeQuery(sql);
+            return new RowCursor(conn, stmt, rs, resolveDecoders(rs.getMetaData()));
         } catch (SQLException e) {
-            e.printStackTrace();
+            try {
+                if (stmt != null) stmt.close();
+            } finally {
+                conn.close();
+            }
+            throw e;
         }
-        return atributos;
     }
 
+    // Las columnas se numeran desde 0 en el orden pedido a openCursor
+    public static final class RowCursor implements AutoCloseable {
+        private final Connection conn;
+        private final Statement stmt;
+        private final ResultSet rs;
+        private final ColumnDecoder[] decoders;
 
-    public List<String> getAllColumnNames(String tableName) {
-        List<String> columnNames = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(connectionUrl, user, password);
+        private RowCursor(Connection conn, Statement stmt, ResultSet rs, ColumnDecoder[] decoders) {
+            this.conn = conn;
+            this.stmt = stmt;
+            this.rs = rs;
+            this.decoders = decoders;
+        }
+
+        public boolean next() throws SQLException {
+            return rs.next();
+        }
+
+        // Columnas de texto: se leen con getText; las demás con getNumber
+        public boolean isText(int column) {
+            return decoders[column] == null;
+        }
+
+        // NaN si el valor es nulo
+        public double getNumber(int column) throws SQLException {
+            return decoders[column].decode(rs, column + 1);
+        }
+
+        public String getText(int column) throws SQLException {
+            return rs.getString(column + 1);
+        }
+
+        public long getLong(int column) throws SQLException {
+            return rs.getLong(column + 1);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            // La conexión vuelve al pool, así que la sentencia y el ResultSet se cierran aparte
+            try {
+                try {
+                    rs.close();
+                } finally {
+                    stmt.close();
+                }
+            } finally {
+                conn.close();
+            }
+        }
+    }
+
+    private static void recordLoad(String tabla, long rows, long start) {
+        if (C45Metrics.enabled()) C45Metrics.get().loadFinished(tabla, rows, System.nanoTime() - start);
+    }
+
+    // Cambia cuando se insertan, borran o modifican filas; null si no se pudo calcular
+    public String changeToken(String tabla) {
+        try (Connection conn = connect();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT TOP 1 * FROM " + tableName)) { 
+             ResultSet rs = stmt.executeQuery("SELECT COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(*)) FROM " + quoteTable(tabla))) {
+            if (rs.next()) {
+                return rs.getLong(1) + ":" + rs.getInt(2);
+            }
+        } catch (IllegalArgumentException | SQLException e) {
+            System.err.println("Error al calcular el token de cambios de la tabla '" + tabla + "': " + e.getMessage());
+        }
+        return null;
+    }
 
-            ResultSetMetaData metaData = rs.getMetaData();
-            int numCols = metaData.getColumnCount();
+    private static String selectColumns(String tabla, List<String> columnas) {
+        StringJoiner select = new StringJoiner(", ", "SELECT ", " FROM " + quoteTable(tabla));
+        for (String col : columnas) {
+            select.add(quoteIdentifier(col));
+        }
+        return select.toString();
+    }
+
+    static String quoteIdentifier(String name) {
+        return "[" + name.replace("]", "]]") + "]";
+    }
 
-            for (int i = 1; i <= numCols; i++) {
-                columnNames.add(metaData.getColumnName(i));
+    // Nombre de tabla listo para el SQL, con cada parte entre corchetes; ver splitTableName
+    static String quoteTable(String tabla) {
+        StringJoiner quoted = new StringJoiner(".");
+        for (String part : splitTableName(tabla)) quoted.add(quoteIdentifier(part));
+        return quoted.toString();
+    }
+
+    /*
+     * Separa [base.][esquema.]tabla en sus partes sin corchetes. Cada parte es un identificador regular
+     * de SQL Server o va entre corchetes (con ]] para un corchete de cierre); cualquier otra cosa es un
+     * IllegalArgumentException, así que el nombre nunca llega al servidor como SQL arbitrario.
+     */
+    static List<String> splitTableName(String tabla) {
+        if (tabla == null) {
+            throw new IllegalArgumentException("Falta el nombre de la tabla");
+        }
+        List<String> parts = new ArrayList<>();
+        String name = tabla.trim();
+        int i = 0;
+        while (true) {
+            int end;
+            String part;
+            if (i < name.length() && name.charAt(i) == '[') {
+                StringBuilder sb = new StringBuilder();
+                end = i + 1;
+                while (true) {
+                    int close = name.indexOf(']', end);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("Nombre de tabla no válido: " + tabla);
+                    }
+                    sb.append(name, end, close);
+                    if (close + 1 < name.length() && name.charAt(close + 1) == ']') {
+                        sb.append(']');
+                        end = close + 2;
+                    } else {
+                        end = close + 1;
+                        break;
+                    }
+                }
+                part = sb.toString();
+            } else {
+                end = name.indexOf('.', i);
+                if (end < 0) end = name.length();
+                part = name.substring(i, end);
+                if (!REGULAR_IDENTIFIER.matcher(part).matches()) {
+                    throw new IllegalArgumentException("Nombre de tabla no válido: " + tabla);
+                }
             }
-        } catch (SQLException e) {
+            if (part.isEmpty() || part.length() > 128) {
+                throw new IllegalArgumentException("Nombre de tabla no válido: " + tabla);
+            }
+            parts.add(part);
+            if (end == name.length()) break;
+            if (name.charAt(end) != '.' || parts.size() == 3) {
+                throw new IllegalArgumentException("Nombre de tabla no válido: " + tabla);
+            }
+            i = end + 1;
+        }
+        return parts;
+    }
+
+    private interface ColumnDecoder {
+        double decode(ResultSet rs, int index) throws SQLException;
+    }
+
+    // Las columnas de texto (decodificador null) pasan al diccionario de la columna en el builder
+    private static void readAttributes(ResultSet rs, ColumnDecoder[] decoders, int numAtributos,
+                                       ColumnarDataset.Builder builder) throws SQLException {
+        for (int a = 0; a < numAtributos; a++) {
+            if (decoders[a] == null) {
+                builder.setCategory(a, rs.getString(a + 1));
+            } else {
+                builder.set(a, decoders[a].decode(rs, a + 1));
+            }
+        }
+    }
+
+    /*
+     * El decodificador de cada columna se elige una vez a partir del tipo JDBC; las columnas de texto
+     * quedan en null y se tratan como categóricas (ColumnarDataset.Builder decide al final si todos sus
+     * valores eran números).
+     */
+    private ColumnDecoder[] resolveDecoders(ResultSetMetaData metaData) throws SQLException {
+        ColumnDecoder[] decoders = new ColumnDecoder[metaData.getColumnCount()];
+        for (int i = 1; i <= decoders.length; i++) {
+            switch (metaData.getColumnType(i)) {
+                case Types.BIT:
+                case Types.BOOLEAN:
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                    decoders[i - 1] = (rs, index) -> {
+                        int v = rs.getInt(index);
+                        return rs.wasNull() ? Double.NaN : v;
+                    };
+                    break;
+                case Types.BIGINT:
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    decoders[i - 1] = (rs, index) -> {
+                        double v = rs.getDouble(index);
+                        return rs.wasNull() ? Double.NaN : v;
+                    };
+                    break;
+                default:
+                    decoders[i - 1] = null;
+                    break;
+            }
+        }
+        return decoders;
+    }
+
+    // Número, código fijo de Sí/No y Positivo/Negativo, o el código del valor en el diccionario de su columna
+    static double mapValue(Map<String, Double> diccionario, String val) {
+        if (val == null || val.trim().isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(val);
+        } catch (NumberFormatException e) {
+            switch (val.trim().toLowerCase(Locale.ROOT)) {
+                case "sí": case "si": case "positivo": return 1.0;
+                case "no": case "negativo":            return 0.0;
+                default:
+                    return diccionario.computeIfAbsent(val.trim(), v -> 2.0 + diccionario.size());
+            }
+        }
+    }
+
+
+    // Columnas de la tabla salvo Id y la clase, en el orden de la tabla; lista vacía si no se pudo leer el esquema
+    public List<String> obtenerAtributos(String tabla, String columnaClase) {
+        List<String> atributos = new ArrayList<>();
+        List<String> columnas = getAllColumnNames(tabla);
+        if (columnas == null) return atributos;
+        for (String col : columnas) {
+            if (!col.equalsIgnoreCase("Id") && !col.equalsIgnoreCase(columnaClase)) {
+                atributos.add(col);
+            }
+        }
+        return atributos;
+    }
+
+    /*
+     * Nombres de las columnas en el orden de la tabla, leídos de INFORMATION_SCHEMA sin tocar los datos
+     * y guardados para las siguientes llamadas; null si el nombre no es válido o falla la consulta, lista
+     * vacía si la tabla no existe (eso no se guarda). Sin esquema en el nombre se usa el de la conexión.
+     */
+    public List<String> getAllColumnNames(String tableName) {
+        try {
+            List<String> parts = splitTableName(tableName);
+            String key = String.join(".", parts).toLowerCase(Locale.ROOT);
+            List<String> cached = schemaCache.get(key);
+            if (cached != null) return new ArrayList<>(cached);
+
+            List<String> columnNames = new ArrayList<>();
+            String table = parts.get(parts.size() - 1);
+            String catalog = parts.size() == 3 ? quoteIdentifier(parts.get(0)) + "." : "";
+            try (Connection conn = connect();
+                 PreparedStatement stmt = conn.prepareStatement("SELECT COLUMN_NAME FROM " + catalog
+                         + "INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION")) {
+                stmt.setString(1, parts.size() > 1 ? parts.get(parts.size() - 2) : conn.getSchema());
+                stmt.setString(2, table);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) columnNames.add(rs.getString(1));
+                }
+            }
+            if (!columnNames.isEmpty()) schemaCache.put(key, Collections.unmodifiableList(new ArrayList<>(columnNames)));
+            return columnNames;
+        } catch (IllegalArgumentException | SQLException e) {
             System.err.println("Error al cargar nombres de columnas de la tabla '" + tableName + "': " + e.getMessage());
-            return null; 
+            return null;
         }
-        return columnNames;
     }
-}
\ No newline at end of file
+
+    // Olvida las columnas guardadas, p. ej. después de un ALTER TABLE
+    public void clearSchemaCache() {
+        schemaCache.clear();
+    }
+}
@@ -0,0 +1,365 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Puntuación de filas sueltas (un paciente en triaje) dentro del proceso o por HTTP local. El modelo
+ * es un CompiledTree inmutable detrás de un AtomicReference: cada petición lo lee una vez y lo usa
+ * hasta responder, así que swapModel o reload lo cambian sin detener el servicio ni bloquear a nadie;
+ * las peticiones en curso terminan con el modelo anterior.
+ *
+ * start sirve con el HttpServer del JDK, solo en la interfaz local:
+ *   GET o POST /predecir?edad=54&sexo=No   {"clase":"Positivo","probabilidades":{"Negativo":0.2,"Positivo":0.8}}
+ *   POST /recargar                          vuelve a leer el archivo del modelo y lo cambia
+ *   GET /metricas                           peticiones, errores, cambios de modelo y latencias
+ * En POST los valores pueden ir en el cuerpo, con el mismo formato que la consulta. Un atributo que no
+ * se envía o una categoría que el modelo no conoce cuentan como valor desconocido. Las peticiones se
+ * atienden en hilos virtuales si la JVM los tiene; si no, en un pool fijo.
+ */
+public class ScoringService implements AutoCloseable {
+    private final Path modelFile;
+    private final AtomicReference<Model> model = new AtomicReference<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder swaps = new LongAdder();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ScoringService(CompiledTree model) {
+        this.modelFile = null;
+        this.model.set(new Model(model));
+    }
+
+    // El archivo se vuelve a leer con reload, después de que el reentrenamiento lo reemplace
+    public ScoringService(Path modelFile) throws IOException {
+        this.modelFile = modelFile;
+        this.model.set(new Model(ModelIO.load(modelFile)));
+    }
+
+    // Modelo con sus diccionarios ya traducidos a mapas, para no recalcularlos en cada petición
+    private static final class Model {
+        final CompiledTree tree;
+        final Map<String, Integer> attributeIds = new HashMap<>();
+        final List<Map<String, Integer>> codes = new ArrayList<>();
+
+        Model(CompiledTree tree) {
+            this.tree = tree;
+            List<String> attributes = tree.attributes();
+            for (int f = 0; f < attributes.size(); f++) {
+                attributeIds.put(attributes.get(f), f);
+                String[] categories = tree.categories(f);
+                Map<String, Integer> code = null;
+                if (categories != null) {
+                    code = new HashMap<>();
+                    for (int v = 0; v < categories.length; v++) code.put(categories[v], v);
+                }
+                codes.add(code);
+            }
+        }
+    }
+
+    public CompiledTree model() {
+        return model.get().tree;
+    }
+
+    // Cambia el modelo de forma atómica y devuelve el anterior
+    public CompiledTree swapModel(CompiledTree newModel) {
+        Model previous = model.getAndSet(new Model(newModel));
+        swaps.increment();
+        return previous.tree;
+    }
+
+    // Vuelve a leer el archivo del constructor; ModelIO.save lo reemplaza entero, nunca queda a medio escribir
+    public CompiledTree reload() throws IOException {
+        if (modelFile == null) {
+            throw new IllegalStateException("El servicio no se creó a partir de un archivo de modelo");
+        }
+        return swapModel(ModelIO.load(modelFile));
+    }
+
+    public static final class Prediction {
+        private final String label;
+        private final String[] classes;
+        private final double[] probabilities;
+
+        private Prediction(String label, String[] classes, double[] probabilities) {
+            this.label = label;
+            this.classes = classes;
+            this.probabilities = probabilities;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        // Probabilidad de cada clase del modelo, por etiqueta
+        public Map<String, Double> probabilities() {
+            Map<String, Double> map = new LinkedHashMap<>();
+            for (int c = 0; c < classes.length; c++) map.put(classes[c], probabilities[c]);
+            return map;
+        }
+
+        String toJson() {
+            StringBuilder sb = new StringBuilder("{\"clase\":").append(json(label)).append(",\"probabilidades\":{");
+            for (int c = 0; c < classes.length; c++) {
+                if (c > 0) sb.append(',');
+                sb.append(json(classes[c])).append(':').append(probabilities[c]);
+            }
+            return sb.append("}}").toString();
+        }
+    }
+
+    /*
+     * Valores por nombre de atributo, como texto: números en los numéricos y la categoría en los
+     * categóricos. Un nombre que el modelo no tiene es un error, para no ocultar erratas.
+     */
+    public Prediction predict(Map<String, String> values) {
+        long start = System.nanoTime();
+        try {
+            return score(values);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private Prediction score(Map<String, String> values) {
+        Model m = model.get();
+        double[] row = new double[m.codes.size()];
+        Arrays.fill(row, Double.NaN);
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            Integer f = m.attributeIds.get(entry.getKey());
+            if (f == null) {
+                throw new IllegalArgumentException("Atributo desconocido: " + entry.getKey());
+            }
+            Map<String, Integer> code = m.codes.get(f);
+            String value = entry.getValue();
+            if (code == null && value != null && !value.trim().isEmpty()) {
+                try {
+                    Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("El atributo '" + entry.getKey() + "' es numérico: " + value);
+                }
+            }
+            row[f] = BatchScorer.encode(value, code);
+        }
+
+        String[] classes = new String[m.tree.numClassLabels()];
+        for (int c = 0; c < classes.length; c++) classes[c] = m.tree.classLabel(c);
+        return new Prediction(m.tree.classLabel(m.tree.predict(row)), classes, m.tree.predictDistribution(row));
+    }
+
+    // Sirve en el puerto indicado de la interfaz local; 0 elige un puerto libre (ver port)
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("El servicio ya está iniciado");
+        }
+        HttpServer http = HttpServer.create(address, 0);
+        http.createContext("/predecir", this::handlePredict);
+        http.createContext("/recargar", this::handleReload);
+        http.createContext("/metricas", this::handleMetrics);
+        executor = newExecutor();
+        http.setExecutor(executor);
+        http.start();
+        server = http;
+    }
+
+    public synchronized int port() {
+        if (server == null) {
+            throw new IllegalStateException("El servicio no está iniciado");
+        }
+        return server.getAddress().getPort();
+    }
+
+    // Deja de aceptar conexiones; las peticiones en curso tienen hasta un segundo para terminar
+    @Override
+    public synchronized void close() {
+        if (server == null) return;
+        server.stop(1);
+        executor.shutdown();
+        server = null;
+        executor = null;
+    }
+
+    // Hilos virtuales (Java 21+) por reflexión, porque el proyecto compila para Java 17
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("POST")) {
+                reply(exchange, 405, "text/plain", "Use GET o POST");
+                return;
+            }
+            Prediction prediction;
+            try {
+                Map<String, String> values = new LinkedHashMap<>();
+                parseForm(exchange.getRequestURI().getRawQuery(), values);
+                if (method.equals("POST")) parseForm(readBody(exchange), values);
+                prediction = score(values);
+            } catch (IllegalArgumentException e) {
+                errors.increment();
+                reply(exchange, 400, "text/plain", e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                // Sin respuesta el cliente se quedaría esperando hasta su timeout
+                errors.increment();
+                reply(exchange, 500, "text/plain", "Error interno: " + e);
+                return;
+            }
+            reply(exchange, 200, "application/json", prediction.toJson());
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleReload(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            reply(exchange, 405, "text/plain", "Use POST");
+            return;
+        }
+        try {
+            reload();
+        } catch (IllegalStateException | IOException e) {
+            errors.increment();
+            reply(exchange, 409, "text/plain", "No se pudo recargar el modelo: " + e.getMessage());
+            return;
+        }
+        reply(exchange, 200, "text/plain", "Modelo recargado: " + model().numNodes() + " nodos");
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        reply(exchange, 200, "text/plain", metrics());
+    }
+
+    /*
+     * Una métrica por línea ("nombre valor"); las latencias son de /predecir y de predict, en
+     * microsegundos. Las líneas "latencia_ns desde hasta conteo" son los buckets no vacíos del histograma.
+     */
+    public String metrics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("peticiones ").append(requests.sum()).append('\n');
+        sb.append("errores ").append(errors.sum()).append('\n');
+        sb.append("cambios_de_modelo ").append(swaps.sum()).append('\n');
+        sb.append("nodos_del_modelo ").append(model().numNodes()).append('\n');
+        sb.append("latencia_p50_us ").append(latency.percentileMicros(0.50)).append('\n');
+        sb.append("latencia_p99_us ").append(latency.percentileMicros(0.99)).append('\n');
+        sb.append("latencia_p999_us ").append(latency.percentileMicros(0.999)).append('\n');
+        long[] counts = latency.counts();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            sb.append("latencia_ns ").append(LatencyHistogram.lowerBound(i)).append(' ')
+                    .append(LatencyHistogram.upperBound(i)).append(' ').append(counts[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public double latencyP99Micros() {
+        return latency.percentileMicros(0.99);
+    }
+
+    public void resetMetrics() {
+        latency.reset();
+        requests.reset();
+        errors.reset();
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Pares nombre=valor separados por &, codificados como en un formulario
+    private static void parseForm(String form, Map<String, String> values) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            values.put(name, value);
+        }
+    }
+
+    private static void reply(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String json(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') sb.append('\\').append(ch);
+            else if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+            else sb.append(ch);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final String USAGE = "Uso: Main servir --modelo archivo.c45model [--puerto 8080]";
+
+    public static void main(String[] args) {
+        try {
+            String modelo = null;
+            int puerto = 8080;
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Argumento inválido: " + args[i]);
+                if (args[i].equals("--modelo")) {
+                    modelo = args[i + 1];
+                } else if (args[i].equals("--puerto")) {
+                    try {
+                        puerto = Integer.parseInt(args[i + 1]);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("--puerto debe ser un número entero");
+                    }
+                } else {
+                    throw new IllegalArgumentException("Argumento inválido: " + args[i]);
+                }
+            }
+            if (modelo == null) throw new IllegalArgumentException("Falta --modelo");
+
+            ScoringService service = new ScoringService(Paths.get(modelo));
+            service.start(puerto);
+            System.out.println("Sirviendo " + modelo + " en http://localhost:" + service.port() + "/predecir");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Error al iniciar el servicio: " + e);
+            System.exit(1);
+        }
+    }
+}
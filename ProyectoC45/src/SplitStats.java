@@ -0,0 +1,154 @@
+// Fórmulas de C4.5 compartidas por los constructores de árboles
+final class SplitStats {
+    private SplitStats() {
+    }
+
+    static double entropy(int[] count) {
+        int validRows = 0;
+        for (int c : count) validRows += c;
+
+        if (validRows == 0) return 0.0; // Si no hay etiquetas válidas, entropía es 0
+
+        double entropy = 0.0;
+        for (int c : count) {
+            if (c == 0) continue;
+            double p = c / (double) validRows;
+            entropy -= p * Math.log(p) / Math.log(2);
+        }
+        return entropy;
+    }
+
+    static double entropy(double[] weight) {
+        double total = 0;
+        for (double w : weight) total += w;
+
+        if (total == 0) return 0.0;
+
+        double entropy = 0.0;
+        for (double w : weight) {
+            if (w == 0) continue;
+            double p = w / total;
+            entropy -= p * Math.log(p) / Math.log(2);
+        }
+        return entropy;
+    }
+
+    // Entropía de un histograma de peso total a partir de la suma de xlog2x de sus clases
+    static double entropy(double total, double sumXLogX) {
+        if (total <= 0) return 0.0;
+        return Math.max(0, xlog2x(total) - sumXLogX) / total;
+    }
+
+    private static final double LN2 = Math.log(2);
+
+    static double xlog2x(double x) {
+        return x <= 0 ? 0 : x * Math.log(x) / LN2;
+    }
+
+    /*
+     * C4.5 con pesos y valores desconocidos: la ganancia se calcula sobre el peso con el atributo
+     * conocido (knownWeight, con entropía knownEntropy) y se escala por la fracción conocida; el peso
+     * desconocido (nodeWeight - knownWeight) cuenta como una rama más en la información de la
+     * división. Sin desconocidos es el gain ratio de siempre.
+     */
+    static double gainRatio(double knownEntropy, double nodeWeight, double knownWeight,
+                            double leftWeight, double[] leftCounts, double rightWeight, double[] rightCounts) {
+        return gainRatio(knownEntropy, nodeWeight, knownWeight, leftWeight, entropy(leftCounts),
+                rightWeight, entropy(rightCounts));
+    }
+
+    // Igual, con la entropía de cada lado ya calculada
+    static double gainRatio(double knownEntropy, double nodeWeight, double knownWeight,
+                            double leftWeight, double leftEntropy, double rightWeight, double rightEntropy) {
+        double infoGain = knownEntropy
+                - (leftWeight / knownWeight) * leftEntropy
+                - (rightWeight / knownWeight) * rightEntropy;
+        infoGain *= knownWeight / nodeWeight;
+
+        double splitInfo = splitInfo(nodeWeight, knownWeight, leftWeight, rightWeight);
+        return (splitInfo == 0) ? 0 : infoGain / splitInfo;
+    }
+
+    // Información de una división binaria, con el peso desconocido como tercera rama
+    static double splitInfo(double nodeWeight, double knownWeight, double leftWeight, double rightWeight) {
+        return splitTerm(leftWeight, nodeWeight) + splitTerm(rightWeight, nodeWeight)
+                + splitTerm(nodeWeight - knownWeight, nodeWeight);
+    }
+
+    // Versión multirama de la anterior: table[v * numClasses + c] es el peso de la rama v con clase c
+    static double gainRatio(double knownEntropy, double nodeWeight, double knownWeight,
+                            double[] sizes, double[] table, int numClasses) {
+        double infoGain = knownEntropy;
+        double splitInfo = splitTerm(nodeWeight - knownWeight, nodeWeight);
+        double[] branch = new double[numClasses];
+        for (int v = 0; v < sizes.length; v++) {
+            if (sizes[v] == 0) continue;
+            System.arraycopy(table, v * numClasses, branch, 0, numClasses);
+            infoGain -= (sizes[v] / knownWeight) * entropy(branch);
+            splitInfo += splitTerm(sizes[v], nodeWeight);
+        }
+        infoGain *= knownWeight / nodeWeight;
+        return (splitInfo == 0) ? 0 : infoGain / splitInfo;
+    }
+
+    private static double splitTerm(double weight, double nodeWeight) {
+        if (weight <= 0) return 0;
+        double p = weight / nodeWeight;
+        return -p * Math.log(p) / Math.log(2);
+    }
+
+    // Cuantiles de la normal estándar de la tabla de C4.5: CONFIDENCE[i] deja DEVIATION[i] a su derecha
+    private static final double[] CONFIDENCE = {0, 0.001, 0.005, 0.01, 0.05, 0.10, 0.20, 0.40, 1.00};
+    private static final double[] DEVIATION = {4.0, 3.09, 2.58, 2.33, 1.65, 1.28, 0.84, 0.25, 0.00};
+
+    // z² para el factor de confianza cf, interpolando en la tabla como C4.5
+    static double confidenceCoefficient(double cf) {
+        int i = 1;
+        while (cf > CONFIDENCE[i]) i++;
+        double z = DEVIATION[i - 1] + (DEVIATION[i] - DEVIATION[i - 1]) * (cf - CONFIDENCE[i - 1])
+                / (CONFIDENCE[i] - CONFIDENCE[i - 1]);
+        return z * z;
+    }
+
+    /*
+     * Errores que hay que sumar a los e observados entre n filas para llegar al límite superior del
+     * intervalo de confianza cf de la binomial (AddErrs de C4.5); coeff = confidenceCoefficient(cf).
+     */
+    static double extraErrors(double n, double e, double cf, double coeff) {
+        if (e < 1e-6) {
+            return n * (1 - Math.exp(Math.log(cf) / n));
+        } else if (e < 0.9999) {
+            double val0 = n * (1 - Math.exp(Math.log(cf) / n));
+            return val0 + e * (extraErrors(n, 1.0, cf, coeff) - val0);
+        } else if (e + 0.5 >= n) {
+            return 0.67 * (n - e);
+        }
+        double pr = (e + 0.5 + coeff / 2 + Math.sqrt(coeff * ((e + 0.5) * (1 - (e + 0.5) / n) + coeff / 4))) / (n + coeff);
+        return n * pr - e;
+    }
+
+    // Clase con más filas; en empate gana la de menor id. -1 si no hay ninguna
+    static int majority(int[] count) {
+        int majority = -1;
+        int maxCount = 0;
+        for (int c = 0; c < count.length; c++) {
+            if (count[c] > maxCount) {
+                maxCount = count[c];
+                majority = c;
+            }
+        }
+        return majority;
+    }
+
+    static int majority(double[] weight) {
+        int majority = -1;
+        double maxWeight = 0;
+        for (int c = 0; c < weight.length; c++) {
+            if (weight[c] > maxWeight) {
+                maxWeight = weight[c];
+                majority = c;
+            }
+        }
+        return majority;
+    }
+}
@@ -0,0 +1,12 @@
+// Recibe los eventos de C45Metrics; se registra con C45Metrics.get().addListener
+public interface TrainingListener {
+    default void loadFinished(String table, long rows, long nanos) {
+    }
+
+    default void trainingFinished(TrainingStats stats) {
+    }
+
+    // Sustituye a las advertencias que antes se escribían en consola (por ejemplo, errores del caché de datasets)
+    default void warning(String message) {
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Progreso y cancelación de un entrenamiento. El constructor del árbol avisa al empezar cada nodo;
+ * cualquier hilo (por ejemplo el de Swing) puede leer los contadores o pedir la cancelación, que se
+ * atiende en el siguiente nodo lanzando CancellationException desde train.
+ */
+public class TrainingMonitor {
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private volatile int currentDepth;
+    private volatile int maxDepth;
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long nodesBuilt() {
+        return nodes.sum();
+    }
+
+    // Suma de las filas de todos los nodos construidos: cada fila cuenta una vez por nivel que atraviesa
+    public long rowsProcessed() {
+        return rows.sum();
+    }
+
+    public int currentDepth() {
+        return currentDepth;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Entrenamiento cancelado");
+        }
+    }
+
+    void nodeStarted(int depth, int nodeRows) {
+        checkCancelled();
+        nodes.increment();
+        rows.add(nodeRows);
+        currentDepth = depth;
+        if (depth > maxDepth) maxDepth = depth; // Carrera benigna entre hilos: es solo informativo
+    }
+}
@@ -0,0 +1,89 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Contadores de un entrenamiento en curso; solo existe si C45Metrics está activado, así que con las
+ * métricas apagadas los constructores del árbol solo comprueban una referencia nula por nodo.
+ */
+final class TrainingRecorder {
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    final LongAdder splitSearchNanos = new LongAdder();
+    final LongAdder partitionNanos = new LongAdder();
+    final LongAdder rowsScanned = new LongAdder();
+    final AtomicLongArray thresholds;   // por índice de atributo en el dataset
+
+    private final long start = System.nanoTime();
+    private final Thread owner = Thread.currentThread();
+    private final long ownerStartBytes = allocatedBytes(owner);
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+    TrainingRecorder(int numAttributes) {
+        thresholds = new AtomicLongArray(numAttributes);
+    }
+
+    // Los hilos del pool se crean durante el entrenamiento, así que todo lo que asignan le pertenece
+    ForkJoinPool newPool(int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            workers.add(thread);
+            return thread;
+        }, null, false);
+    }
+
+    TrainingStats finish(ColumnarDataset data, int[] attributes, TreeNode root) {
+        long total = System.nanoTime() - start;
+        long bytes = -1;
+        if (THREADS != null && ownerStartBytes >= 0) {
+            bytes = allocatedBytes(owner) - ownerStartBytes;
+            for (Thread worker : workers) bytes += Math.max(0, allocatedBytes(worker));
+        }
+
+        Map<String, Long> perAttribute = new LinkedHashMap<>();
+        for (int a : attributes) perAttribute.put(data.attributeName(a), thresholds.get(a));
+
+        long[] shape = new long[3]; // nodos, hojas, profundidad máxima
+        countNodes(root, 0, shape);
+        return new TrainingStats(total, splitSearchNanos.sum(), partitionNanos.sum(), shape[0], shape[1],
+                (int) shape[2], rowsScanned.sum(), bytes, perAttribute);
+    }
+
+    private static void countNodes(TreeNode node, int depth, long[] shape) {
+        if (node == null) return;
+        shape[0]++;
+        shape[2] = Math.max(shape[2], depth);
+        if (node.isLeaf()) {
+            shape[1]++;
+            return;
+        }
+        if (node.isCategorical()) {
+            for (TreeNode child : node.children) countNodes(child, depth + 1, shape);
+            return;
+        }
+        countNodes(node.left, depth + 1, shape);
+        countNodes(node.right, depth + 1, shape);
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(thread.getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) return bean;
+            }
+        } catch (LinkageError e) {
+            // JVM sin com.sun.management: no se mide la memoria
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Resumen de un entrenamiento. Los tiempos de búsqueda de umbrales y de partición suman lo que
+ * tardó cada hilo, así que con entrenamiento paralelo pueden superar al tiempo total.
+ */
+public final class TrainingStats {
+    private final long totalNanos;
+    private final long splitSearchNanos;
+    private final long partitionNanos;
+    private final long nodes;
+    private final long leaves;
+    private final int maxDepth;
+    private final long rowsScanned;
+    private final long bytesAllocated;
+    private final Map<String, Long> thresholdsEvaluated;
+
+    TrainingStats(long totalNanos, long splitSearchNanos, long partitionNanos, long nodes, long leaves,
+                  int maxDepth, long rowsScanned, long bytesAllocated, Map<String, Long> thresholdsEvaluated) {
+        this.totalNanos = totalNanos;
+        this.splitSearchNanos = splitSearchNanos;
+        this.partitionNanos = partitionNanos;
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.maxDepth = maxDepth;
+        this.rowsScanned = rowsScanned;
+        this.bytesAllocated = bytesAllocated;
+        this.thresholdsEvaluated = Collections.unmodifiableMap(new LinkedHashMap<>(thresholdsEvaluated));
+    }
+
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    public long splitSearchNanos() {
+        return splitSearchNanos;
+    }
+
+    public long partitionNanos() {
+        return partitionNanos;
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    public long leaves() {
+        return leaves;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    // Filas recorridas al buscar umbrales y al repartir filas entre los hijos, sumadas sobre todos los nodos
+    public long rowsScanned() {
+        return rowsScanned;
+    }
+
+    // -1 si la JVM no permite medir la memoria asignada por hilo
+    public long bytesAllocated() {
+        return bytesAllocated;
+    }
+
+    // Umbrales candidatos evaluados por atributo, en el orden de entrenamiento
+    public Map<String, Long> thresholdsEvaluated() {
+        return thresholdsEvaluated;
+    }
+
+    public long totalThresholdsEvaluated() {
+        long total = 0;
+        for (long count : thresholdsEvaluated.values()) total += count;
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Entrenamiento: %.1f ms (umbrales %.1f ms, partición %.1f ms), %d nodos, %d hojas, "
+                        + "profundidad %d, %d umbrales evaluados, %d filas recorridas, %d bytes asignados",
+                totalNanos / 1e6, splitSearchNanos / 1e6, partitionNanos / 1e6, nodes, leaves, maxDepth,
+                totalThresholdsEvaluated(), rowsScanned, bytesAllocated);
+    }
+}
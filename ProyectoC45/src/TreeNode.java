@@ -4,8 +4,23 @@ public class TreeNode {
     public TreeNode left;
     public TreeNode right;
     public String label;
+    // Índice de label en las clases del modelo (classLabels), para no buscar la etiqueta por texto; -1 si no está entre ellas
+    public int classId = -1;
+
+    // Peso de las filas de entrenamiento que llegaron al nodo; reparte los valores desconocidos al predecir
+    public double weight;
+    // Peso de cada clase en el nodo, en el orden de clases del dataset de entrenamiento; al predecir solo cuenta el de las hojas
+    public double[] distribution;
+
+    // División categórica: un hijo por categoría, en el orden de categories; left y right quedan en null
+    public String[] categories;
+    public TreeNode[] children;
 
     public boolean isLeaf() {
         return label != null;
     }
+
+    public boolean isCategorical() {
+        return children != null;
+    }
 }
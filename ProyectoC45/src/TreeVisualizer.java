@@ -1,100 +1,455 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 
+/*
+ * El árbol se aplana una vez en arreglos (preorden) y la posición de cada nodo se calcula en una
+ * pasada de diseño Reingold-Tilford en O(n) (ver layoutTree): cada subárbol se coloca lo más cerca
+ * posible de sus hermanos de la izquierda según sus contornos, y el padre queda centrado sobre sus
+ * hijos (dos en una división numérica, uno por categoría en una categórica). Los nodos de cada nivel quedan ordenados por x,
+ * así que al pintar se buscan con búsqueda binaria solo los que caen en el rectángulo visible.
+ *
+ * Ctrl + rueda del ratón hace zoom; un clic sobre un nodo interno lo pliega o despliega.
+ */
 public class TreeVisualizer extends JPanel {
-    private final TreeNode root;
-    private final int nodeWidth = 240; 
-    private final int nodeHeight = 60; 
-    private final int vSpacing = 70;   
-    private final int hSpacing = 30;   
+    private final int nodeWidth = 240;
+    private final int nodeHeight = 60;
+    private final int vSpacing = 70;
+    private final int hSpacing = 30;
+    private final int margin = 40;
+
+    private static final double MIN_ZOOM = 0.05;
+    private static final double MAX_ZOOM = 4.0;
+
+    // Árbol aplanado
+    private final int[][] children;
+    private final String[] edgeLabels;  // texto de la arista que llega a cada nodo
+    private final int[] parent;
+    private final int[] depth;
+    private final String[] labels;
+    private final boolean[] collapsed;
+    private int[] textWidth;
+    private Font textWidthFont;
+
+    // Diseño de los nodos visibles
+    private final double[] x;
+    private int[][] levels;        // ids visibles por nivel, de izquierda a derecha
+    private int layoutWidth;
+    private int layoutHeight;
+
+    private double zoom = 1.0;
 
     public TreeVisualizer(TreeNode root) {
-        this.root = root;
-        
-        setPreferredSize(new Dimension(1400, 900)); 
-    }
+        List<TreeNode> nodes = new ArrayList<>();
+        List<int[]> links = new ArrayList<>();
+        List<String> edges = new ArrayList<>();
+        flatten(root, nodes, links, edges);
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        
-        int initialOffset = getWidth() / 4; 
-
-        drawTree(g, root, getWidth() / 2, 40, initialOffset);
-    }
-
-    private void drawTree(Graphics g, TreeNode node, int x, int y, int offset) {
-        if (node == null) return;
-
-        String displayLabel;
-        if (node.isLeaf()) {
-            
-            try {
-                Double classValue = Double.parseDouble(node.label);
-                String originalLabel = SQLLoader.getOriginalClassLabel(classValue); 
-                
-                if (originalLabel.equalsIgnoreCase("positivo")) {
-                    displayLabel = "Posible leucemia, realizar estudios";
-                } else if (originalLabel.equalsIgnoreCase("negativo")) {
-                    displayLabel = "Posiblemente no sea leucemia";
+        int n = nodes.size();
+        children = new int[n][];
+        edgeLabels = edges.toArray(new String[0]);
+        parent = new int[n];
+        depth = new int[n];
+        labels = new String[n];
+        collapsed = new boolean[n];
+        x = new double[n];
+        int[] numChildren = new int[n];
+        for (int id = 0; id < n; id++) {
+            int[] link = links.get(id);
+            parent[id] = link[0];
+            depth[id] = link[1];
+            labels[id] = displayLabel(nodes.get(id));
+            if (parent[id] >= 0) numChildren[parent[id]]++;
+        }
+        // En preorden los hijos de un nodo aparecen de izquierda a derecha
+        for (int id = 0; id < n; id++) children[id] = new int[numChildren[id]];
+        Arrays.fill(numChildren, 0);
+        for (int id = 1; id < n; id++) children[parent[id]][numChildren[parent[id]]++] = id;
+
+        setBackground(Color.WHITE);
+        layoutTree();
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int id = nodeAt(e.getX() / zoom, e.getY() / zoom);
+                if (id >= 0 && children[id].length > 0) {
+                    collapsed[id] = !collapsed[id];
+                    layoutTree();
+                    revalidate();
+                    repaint();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    zoomAt(zoom * Math.pow(1.1, -e.getPreciseWheelRotation()), e.getPoint());
                 } else {
-                    displayLabel = "Clase: " + originalLabel; 
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(TreeVisualizer.this, e, getParent()));
                 }
-            } catch (NumberFormatException e) {
-                
-                displayLabel = "Error Clase: " + node.label; 
             }
-        } else {
-            
-            displayLabel = node.attribute + " \u2264 " + String.format("%.2f", node.threshold); 
-        }
+        };
+        addMouseListener(mouse);
+        addMouseWheelListener(mouse);
+    }
 
-        
-        g.setColor(Color.BLACK);
-        g.drawRect(x - nodeWidth / 2, y, nodeWidth, nodeHeight);
-        
-        FontMetrics fm = g.getFontMetrics();
-        int textWidth = fm.stringWidth(displayLabel);
-        
-        int textY = y + (nodeHeight / 2) + (fm.getAscent() / 2) - fm.getDescent(); 
+    // Preorden iterativo: links[id] = {padre, profundidad}, edges[id] = texto de la arista desde el padre
+    private static void flatten(TreeNode root, List<TreeNode> nodes, List<int[]> links, List<String> edges) {
+        if (root == null) return;
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        Deque<int[]> parents = new ArrayDeque<>(); // {id del padre, profundidad}
+        Deque<String> edgeStack = new ArrayDeque<>();
+        stack.push(root);
+        parents.push(new int[]{-1, 0});
+        edgeStack.push("");
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            int[] parent = parents.pop();
+            int id = nodes.size();
+            nodes.add(node);
+            links.add(parent);
+            edges.add(edgeStack.pop());
 
-        g.drawString(displayLabel, x - textWidth / 2, textY);
+            if (node.isLeaf()) continue;
+            int childDepth = parent[1] + 1;
+            if (node.isCategorical()) {
+                for (int v = node.children.length - 1; v >= 0; v--) {
+                    if (node.children[v] == null) continue;
+                    stack.push(node.children[v]);
+                    parents.push(new int[]{id, childDepth});
+                    edgeStack.push(node.categories[v]);
+                }
+                continue;
+            }
+            if (node.right != null) {
+                stack.push(node.right);
+                parents.push(new int[]{id, childDepth});
+                edgeStack.push("No");
+            }
+            if (node.left != null) {
+                stack.push(node.left);
+                parents.push(new int[]{id, childDepth});
+                edgeStack.push("Sí");
+            }
+        }
+    }
 
+    private static String displayLabel(TreeNode node) {
+        if (node.isCategorical()) {
+            return node.attribute;
+        }
         if (!node.isLeaf()) {
-            int childY = y + nodeHeight + vSpacing; 
-        
-            if (node.left != null) {
-                int leftX = x - offset;
-                g.drawLine(x, y + nodeHeight, leftX, childY); 
-                drawTree(g, node.left, leftX, childY, offset / 2); 
+            return node.attribute + " ≤ " + String.format("%.2f", node.threshold);
+        }
+        if (node.label.equalsIgnoreCase("positivo")) {
+            return "Posible leucemia, realizar estudios";
+        } else if (node.label.equalsIgnoreCase("negativo")) {
+            return "Posiblemente no sea leucemia";
+        }
+        return "Clase: " + node.label;
+    }
+
+    private boolean expanded(int id) {
+        return !collapsed[id];
+    }
+
+    /*
+     * Reingold-Tilford con hilos y sumas de modificadores (Walker, Buchheim): se recorren los nodos
+     * visibles en preorden inverso (hijos antes que el padre) y cada hijo se coloca lo más cerca posible
+     * de los hermanos ya colocados a su izquierda. Para comparar, se baja a la vez por el contorno
+     * derecho de esos hermanos y por el izquierdo del nuevo hijo, nivel a nivel hasta que se acaba uno de
+     * los dos; donde un contorno se acaba antes que el otro, un hilo lo enlaza con el nivel siguiente del
+     * más profundo. Mover un subárbol solo cambia el modificador de su raíz, que suma a todos sus
+     * descendientes. Así cada nivel se compara una vez y el diseño es O(n), sin copiar contornos.
+     */
+    private void layoutTree() {
+        int n = children.length;
+        if (n == 0) {
+            levels = new int[0][];
+            layoutWidth = margin * 2;
+            layoutHeight = margin * 2;
+            setPreferredSize(new Dimension(layoutWidth, layoutHeight));
+            return;
+        }
 
-                
-                g.drawString("Sí", (x + leftX) / 2 - 15, (y + childY) / 2); 
+        int[] order = new int[n];
+        int count = 0;
+        int[] stack = new int[n];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int id = stack[--top];
+            order[count++] = id;
+            if (!expanded(id)) continue;
+            for (int k = children[id].length - 1; k >= 0; k--) stack[top++] = children[id][k];
+        }
+
+        double gap = nodeWidth + hSpacing;
+        double[] prelim = new double[n];  // posición entre los hermanos, antes de los modificadores de arriba
+        double[] mod = new double[n];     // desplazamiento de todos los descendientes
+        int[] thread = new int[n];
+        Arrays.fill(thread, -1);
+        for (int i = count - 1; i >= 0; i--) {
+            int id = order[i];
+            if (!expanded(id) || children[id].length == 0) continue;
+            int[] kids = children[id];
+            move(kids[0], -prelim[kids[0]], prelim, mod);
+            for (int k = 1; k < kids.length; k++) {
+                move(kids[k], prelim[kids[k - 1]] + gap - prelim[kids[k]], prelim, mod);
+                apportion(kids[k], kids[k - 1], kids[0], gap, prelim, mod, thread);
             }
+            prelim[id] = (prelim[kids[0]] + prelim[kids[kids.length - 1]]) / 2;
+        }
 
-            
-            if (node.right != null) {
-                int rightX = x + offset;
-                g.drawLine(x, y + nodeHeight, rightX, childY); 
-                drawTree(g, node.right, rightX, childY, offset / 2); 
+        // Preorden: la posición es prelim más los modificadores de los antecesores
+        double[] modSum = new double[n];
+        int height = 0;
+        double minX = 0;
+        double maxX = 0;
+        for (int i = 0; i < count; i++) {
+            int id = order[i];
+            if (i > 0) modSum[id] = modSum[parent[id]] + mod[parent[id]];
+            x[id] = prelim[id] + modSum[id];
+            minX = Math.min(minX, x[id]);
+            maxX = Math.max(maxX, x[id]);
+            height = Math.max(height, depth[id] + 1);
+        }
+        double shift = margin + nodeWidth / 2.0 - minX;
+        int[] perLevel = new int[height];
+        for (int i = 0; i < count; i++) {
+            x[order[i]] += shift;
+            perLevel[depth[order[i]]]++;
+        }
 
-                
-                g.drawString("No", (x + rightX) / 2 + 15, (y + childY) / 2); 
+        // En preorden los nodos de un mismo nivel aparecen de izquierda a derecha
+        levels = new int[perLevel.length][];
+        for (int d = 0; d < levels.length; d++) levels[d] = new int[perLevel[d]];
+        int[] fill = new int[levels.length];
+        for (int i = 0; i < count; i++) {
+            int id = order[i];
+            levels[depth[id]][fill[depth[id]]++] = id;
+        }
+
+        layoutWidth = (int) Math.ceil(maxX - minX) + nodeWidth + 2 * margin;
+        layoutHeight = levels.length * (nodeHeight + vSpacing) - vSpacing + 2 * margin;
+        updatePreferredSize();
+    }
+
+    // Desplaza el subárbol de id: su posición y, por el modificador, la de todos sus descendientes
+    private static void move(int id, double shift, double[] prelim, double[] mod) {
+        prelim[id] += shift;
+        mod[id] += shift;
+    }
+
+    /*
+     * Separa el subárbol de v, recién colocado a la derecha de su hermano left, de todos los hermanos
+     * anteriores desde first. inner* recorren los contornos enfrentados (el derecho de los de la
+     * izquierda y el izquierdo de v) y outer* los de fuera, que reciben los hilos; las s* son las sumas
+     * de modificadores de cada recorrido.
+     */
+    private void apportion(int v, int left, int first, double gap, double[] prelim, double[] mod, int[] thread) {
+        int innerLeft = left;
+        int innerRight = v;
+        int outerLeft = first;
+        int outerRight = v;
+        double sInnerLeft = mod[innerLeft];
+        double sInnerRight = mod[innerRight];
+        double sOuterLeft = mod[outerLeft];
+        double sOuterRight = mod[outerRight];
+        while (nextRight(innerLeft, thread) >= 0 && nextLeft(innerRight, thread) >= 0) {
+            innerLeft = nextRight(innerLeft, thread);
+            innerRight = nextLeft(innerRight, thread);
+            outerLeft = nextLeft(outerLeft, thread);
+            outerRight = nextRight(outerRight, thread);
+            double shift = prelim[innerLeft] + sInnerLeft + gap - (prelim[innerRight] + sInnerRight);
+            if (shift > 0) {
+                move(v, shift, prelim, mod);
+                sInnerRight += shift;
+                sOuterRight += shift;
             }
+            sInnerLeft += mod[innerLeft];
+            sInnerRight += mod[innerRight];
+            sOuterLeft += mod[outerLeft];
+            sOuterRight += mod[outerRight];
+        }
+        // El modificador del nodo con hilo corrige la suma de quien siga el hilo; no tiene descendientes visibles
+        if (nextRight(innerLeft, thread) >= 0 && nextRight(outerRight, thread) < 0) {
+            thread[outerRight] = nextRight(innerLeft, thread);
+            mod[outerRight] += sInnerLeft - sOuterRight;
+        }
+        if (nextLeft(innerRight, thread) >= 0 && nextLeft(outerLeft, thread) < 0) {
+            thread[outerLeft] = nextLeft(innerRight, thread);
+            mod[outerLeft] += sInnerRight - sOuterLeft;
         }
     }
 
-    public static void mostrar(TreeNode root) {
+    // Siguiente nodo del contorno izquierdo (o derecho) del subárbol: el primer (último) hijo visible o el hilo
+    private int nextLeft(int id, int[] thread) {
+        return expanded(id) && children[id].length > 0 ? children[id][0] : thread[id];
+    }
+
+    private int nextRight(int id, int[] thread) {
+        return expanded(id) && children[id].length > 0 ? children[id][children[id].length - 1] : thread[id];
+    }
+
+    private int levelY(int d) {
+        return margin + d * (nodeHeight + vSpacing);
+    }
+
+    private void updatePreferredSize() {
+        setPreferredSize(new Dimension((int) Math.ceil(layoutWidth * zoom), (int) Math.ceil(layoutHeight * zoom)));
+    }
+
+    // Mantiene fijo el punto bajo el ratón
+    private void zoomAt(double newZoom, Point anchor) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        if (newZoom == zoom) return;
+        double factor = newZoom / zoom;
+        zoom = newZoom;
+        updatePreferredSize();
+        revalidate();
+
+        if (getParent() instanceof JViewport) {
+            JViewport viewport = (JViewport) getParent();
+            Point view = viewport.getViewPosition();
+            int dx = (int) Math.round(anchor.x * factor) - anchor.x;
+            int dy = (int) Math.round(anchor.y * factor) - anchor.y;
+            viewport.setViewPosition(new Point(Math.max(0, view.x + dx), Math.max(0, view.y + dy)));
+        }
+        repaint();
+    }
+
+    // Nodo bajo el punto (en coordenadas del diseño), o -1
+    private int nodeAt(double px, double py) {
+        int d = (int) Math.floor((py - margin) / (nodeHeight + vSpacing));
+        if (d < 0 || d >= levels.length || py > levelY(d) + nodeHeight) return -1;
+        int[] level = levels[d];
+        int i = firstRightOf(level, px - nodeWidth / 2.0);
+        return i < level.length && x[level[i]] - nodeWidth / 2.0 <= px ? level[i] : -1;
+    }
+
+    // Primer índice del nivel con x >= value
+    private int firstRightOf(int[] level, double value) {
+        int lo = 0;
+        int hi = level.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x[level[mid]] < value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (levels.length == 0) return;
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.scale(zoom, zoom);
+        g2.setColor(Color.BLACK);
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, layoutWidth, layoutHeight);
+        FontMetrics fm = g2.getFontMetrics();
+        if (textWidth == null || !fm.getFont().equals(textWidthFont)) {
+            textWidth = new int[labels.length];
+            Arrays.fill(textWidth, -1);
+            textWidthFont = fm.getFont();
+        }
+
+        double minX = clip.x - nodeWidth / 2.0;
+        double maxX = clip.x + clip.width + nodeWidth / 2.0;
+        int firstLevel = Math.max(0, (clip.y - margin) / (nodeHeight + vSpacing) - 1);
+        int lastLevel = Math.min(levels.length - 1, (clip.y + clip.height - margin) / (nodeHeight + vSpacing));
+
+        for (int d = firstLevel; d <= lastLevel; d++) {
+            int[] level = levels[d];
+            int y = levelY(d);
+            for (int i = firstRightOf(level, minX); i < level.length && x[level[i]] <= maxX; i++) {
+                drawNode(g2, fm, level[i], y);
+            }
+            if (d + 1 < levels.length) drawEdges(g2, fm, levels[d + 1], y, clip);
+        }
+        g2.dispose();
+    }
+
+    private void drawNode(Graphics2D g, FontMetrics fm, int id, int y) {
+        int cx = (int) Math.round(x[id]);
+        g.drawRect(cx - nodeWidth / 2, y, nodeWidth, nodeHeight);
+
+        if (textWidth[id] < 0) textWidth[id] = fm.stringWidth(labels[id]);
+        int textY = y + (nodeHeight / 2) + (fm.getAscent() / 2) - fm.getDescent();
+        g.drawString(labels[id], cx - textWidth[id] / 2, textY);
+
+        if (collapsed[id]) {
+            g.drawString("+", cx - fm.charWidth('+') / 2, y + nodeHeight - fm.getDescent() - 2);
+        }
+    }
+
+    /*
+     * Aristas entre un nivel y el siguiente. Dentro de un nivel tanto los hijos como sus padres están
+     * ordenados por x, así que los extremos de las aristas también: basta una búsqueda binaria.
+     */
+    private void drawEdges(Graphics2D g, FontMetrics fm, int[] children, int parentY, Rectangle clip) {
+        int childY = parentY + nodeHeight + vSpacing;
+        if (parentY + nodeHeight > clip.y + clip.height || childY < clip.y) return;
+
+        int lo = 0;
+        int hi = children.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = children[mid];
+            if (Math.max(x[c], x[parent[c]]) < clip.x) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int i = lo; i < children.length; i++) {
+            int c = children[i];
+            int p = parent[c];
+            if (Math.min(x[c], x[p]) > clip.x + clip.width) break;
+
+            int px = (int) Math.round(x[p]);
+            int cx = (int) Math.round(x[c]);
+            g.drawLine(px, parentY + nodeHeight, cx, childY);
+            // El texto va del lado de fuera de la arista
+            int textX = cx < px ? (px + cx) / 2 - 8 - fm.stringWidth(edgeLabels[c]) : (px + cx) / 2 + 8;
+            g.drawString(edgeLabels[c], textX, (parentY + nodeHeight + childY) / 2);
+        }
+    }
+
+    public static JFrame mostrar(TreeNode root) {
         JFrame frame = new JFrame("Árbol de Decisión");
-        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE); 
-        
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+        frame.add(scrollPane(root));
+        frame.setSize(1400, 900);
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        return frame;
+    }
+
+    // Sustituye el árbol de una ventana abierta con mostrar, sin cerrarla
+    public static void actualizar(JFrame frame, TreeNode root) {
+        frame.getContentPane().removeAll();
+        frame.add(scrollPane(root));
+        frame.revalidate();
+        frame.repaint();
+        frame.toFront();
+    }
+
+    private static JScrollPane scrollPane(TreeNode root) {
         JScrollPane scrollPane = new JScrollPane(new TreeVisualizer(root));
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        
-        frame.add(scrollPane);
-        frame.pack();
-        frame.setLocationRelativeTo(null); 
-        frame.setVisible(true);
+        scrollPane.getHorizontalScrollBar().setUnitIncrement(40);
+        scrollPane.getVerticalScrollBar().setUnitIncrement(40);
+        return scrollPane;
     }
 }
\ No newline at end of file